@@ -1,18 +1,17 @@
 package com.mapfort.datacompute.adsUtils;
 
-import jakarta.annotation.PostConstruct;
+import com.mapfort.datacompute.utils.PartitionedExecutor;
+import com.mapfort.datacompute.utils.PgBulkLoader;
+import com.mapfort.datacompute.utils.PgCopyRows;
+import com.mapfort.datacompute.utils.ShadowTables;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
-import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -23,18 +22,22 @@ import java.util.Map;
 public class PickupRecommendationTask {
 
     private final JdbcTemplate jdbcTemplate;
+    private final PgBulkLoader bulkLoader;
+    private final PartitionedExecutor partitionedExecutor;
+    private final ShadowTables shadowTables;
 
-    @PostConstruct
-    @Transactional
     public void run() {
         log.info("DWS -> ADS: PickupRecommendationTask started.");
-        createOrInitTable();
-        List<Map<String, Object>> data = queryPickupRecommendations();
-        batchInsert(data);
-        log.info("DWS -> ADS: PickupRecommendationTask finished. Inserted: {}", data.size());
+        createTable();
+        String shadow = shadowTables.create("ads_recommend_pickup_ways");
+        PgCopyRows rows = queryPickupRecommendations();
+        long inserted = bulkLoader.copy(shadow,
+                "is_workday, stat_hour, way_name, district_name, pickup_count, last_updated", rows);
+        shadowTables.swapIn("ads_recommend_pickup_ways");
+        log.info("DWS -> ADS: PickupRecommendationTask finished. Inserted: {}", inserted);
     }
 
-    private void createOrInitTable() {
+    private void createTable() {
         jdbcTemplate.execute("""
             CREATE TABLE IF NOT EXISTS public.ads_recommend_pickup_ways (
                 is_workday BOOLEAN,
@@ -46,56 +49,60 @@ public class PickupRecommendationTask {
                 PRIMARY KEY (is_workday, stat_hour, way_name, district_name)
             )
         """);
-        jdbcTemplate.execute("TRUNCATE TABLE public.ads_recommend_pickup_ways");
     }
 
-    private List<Map<String, Object>> queryPickupRecommendations() {
-        return jdbcTemplate.queryForList("""
+    /**
+     * 按 tms 分区并行聚合，再合并各分区的部分计数：同一 (工作日, 小时, 道路, 行政区) 可能出现在多个分区中。
+     */
+    private PgCopyRows queryPickupRecommendations() {
+        List<Map<RecommendKey, Long>> partials = partitionedExecutor.map(
+                partitionedExecutor.byRange("public.dwd_pickup_points p", "p.tms"), this::queryPartition);
+        Map<RecommendKey, Long> counts = new HashMap<>(partials.get(0));
+        for (int i = 1; i < partials.size(); i++) {
+            partials.get(i).forEach((key, count) -> counts.merge(key, count, Long::sum));
+        }
+
+        PgCopyRows rows = new PgCopyRows();
+        LocalDateTime now = LocalDateTime.now();
+        counts.forEach((key, count) -> rows.row(6)
+                .bool(key.workday())
+                .int4(key.hour())
+                .text(key.wayName())
+                .text(key.districtName())
+                .int4(Math.toIntExact(count))
+                .timestamp(now));
+        return rows;
+    }
+
+    private Map<RecommendKey, Long> queryPartition(PartitionedExecutor.Partition partition) {
+        Map<RecommendKey, Long> counts = new HashMap<>();
+        jdbcTemplate.query("""
             SELECT
                 EXTRACT(DOW FROM TO_TIMESTAMP(p.tms)) BETWEEN 1 AND 5 AS is_workday,
                 EXTRACT(HOUR FROM TO_TIMESTAMP(p.tms))::INT AS stat_hour,
                 r.tags::jsonb ->> 'name' AS way_name,
-                d."NAME" AS district_name,
+                a.district_name,
                 COUNT(*) AS pickup_count
             FROM
                 dwd_pickup_points p
-            JOIN harbin_districts d
-                ON ST_Within(ST_SetSRID(ST_Point(p.lon, p.lat), 4326), d.geometry)
-            JOIN LATERAL (
-                SELECT *
-                FROM dwd_roads r
-                WHERE r.tags::jsonb ? 'name'
-                  AND ST_DWithin(ST_SetSRID(ST_Point(p.lon, p.lat), 4326), r.geom, 0.0005)
-                ORDER BY ST_Distance(ST_SetSRID(ST_Point(p.lon, p.lat), 4326), r.geom)
-                LIMIT 1
-            ) r ON true
+            JOIN tdm_areas_roads a
+                ON a.node_id = p.traj_id AND a.district_name IS NOT NULL
+            JOIN dws_pickup_point_roads m
+                ON m.traj_id = p.traj_id
+            JOIN dwd_roads r
+                ON r.gid = m.way_id
+            WHERE %s
             GROUP BY is_workday, stat_hour, way_name, district_name
-        """);
+        """.formatted(partition.condition()), rs -> {
+            counts.put(new RecommendKey(
+                    rs.getBoolean("is_workday"),
+                    rs.getInt("stat_hour"),
+                    rs.getString("way_name"),
+                    rs.getString("district_name")), rs.getLong("pickup_count"));
+        }, partition.args());
+        return counts;
     }
 
-    private void batchInsert(List<Map<String, Object>> rows) {
-        String sql = """
-            INSERT INTO public.ads_recommend_pickup_ways
-                (is_workday, stat_hour, way_name, district_name, pickup_count, last_updated)
-            VALUES (?, ?, ?, ?, ?, ?)
-        """;
-
-        jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
-            @Override
-            public void setValues(PreparedStatement ps, int i) throws SQLException {
-                Map<String, Object> row = rows.get(i);
-                ps.setBoolean(1, (Boolean) row.get("is_workday"));
-                ps.setInt(2, ((Number) row.get("stat_hour")).intValue());
-                ps.setString(3, (String) row.get("way_name"));
-                ps.setString(4, (String) row.get("district_name"));
-                ps.setInt(5, ((Number) row.get("pickup_count")).intValue());
-                ps.setTimestamp(6, Timestamp.valueOf(LocalDateTime.now()));
-            }
-
-            @Override
-            public int getBatchSize() {
-                return rows.size();
-            }
-        });
+    private record RecommendKey(boolean workday, int hour, String wayName, String districtName) {
     }
 }
@@ -1,30 +1,60 @@
 package com.mapfort.datacompute.dwsUtils;
 
-import jakarta.annotation.PostConstruct;
-import lombok.RequiredArgsConstructor;
+import com.mapfort.datacompute.utils.CursorReader;
+import com.mapfort.datacompute.utils.DistrictLocator;
+import com.mapfort.datacompute.utils.PartitionedExecutor;
+import com.mapfort.datacompute.utils.PgBulkLoader;
+import com.mapfort.datacompute.utils.PgCopyRows;
+import com.mapfort.datacompute.utils.ShadowTables;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
+
+/**
+ * 上车点所属行政区：行政区多边形载入 {@link DistrictLocator}，上车点按 tms 分区、
+ * 各分区用游标分批读出、并行定位后 COPY 写入。
+ * 不在任何行政区内的点 district_code / district_name 为 NULL（与原 LEFT JOIN ... ST_Within 一致）。
+ */
 @Slf4j
 @Component
-@RequiredArgsConstructor
 public class AreaRoadJoinTask {
 
+    private static final String TABLE = "tdm_areas_roads";
+
     private final JdbcTemplate jdbcTemplate;
+    private final PgBulkLoader bulkLoader;
+    private final CursorReader cursorReader;
+    private final PartitionedExecutor partitionedExecutor;
+    private final ShadowTables shadowTables;
+    private final int batchSize;
+
+    public AreaRoadJoinTask(JdbcTemplate jdbcTemplate,
+                            PgBulkLoader bulkLoader,
+                            CursorReader cursorReader,
+                            PartitionedExecutor partitionedExecutor,
+                            ShadowTables shadowTables,
+                            @Value("${mapfort.pipeline.district-match.batch-size:200000}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.bulkLoader = bulkLoader;
+        this.cursorReader = cursorReader;
+        this.partitionedExecutor = partitionedExecutor;
+        this.shadowTables = shadowTables;
+        this.batchSize = batchSize;
+    }
 
-    // @Scheduled(cron = "0 0 4 * * ?")
-//    @PostConstruct
-//    @Transactional
     public void run() {
         log.info("DWD -> TDM: AreaRoadJoinTask started.");
-        createOrInitTable();
-        insertData();
-        log.info("DWD -> TDM: AreaRoadJoinTask finished.");
+        createTable();
+        DistrictLocator locator = DistrictLocator.load(jdbcTemplate, 0);
+        long inserted = insertData(locator, shadowTables.create(TABLE));
+        shadowTables.swapIn(TABLE);
+        log.info("DWD -> TDM: AreaRoadJoinTask finished. Districts: {}, inserted: {}", locator.districtCount(), inserted);
     }
 
-    private void createOrInitTable() {
+    private void createTable() {
         jdbcTemplate.execute("""
             CREATE TABLE IF NOT EXISTS public.tdm_areas_roads (
                 node_id BIGINT PRIMARY KEY,
@@ -36,25 +66,97 @@ public class AreaRoadJoinTask {
                 way_id BIGINT
             )
         """);
-        jdbcTemplate.execute("TRUNCATE TABLE public.tdm_areas_roads");
-    }
-
-    private void insertData() {
-        String sql = """
-            INSERT INTO public.tdm_areas_roads 
-                (node_id, devid, lon, lat, district_code, district_name, way_id)
-            SELECT 
-                p.traj_id AS node_id,
-                p.devid,
-                p.lon,
-                p.lat,
-                h."PAC" AS district_code,
-                h."NAME" AS district_name,
-                p.way_id
-            FROM public.dwd_pickup_points p
-            LEFT JOIN public.harbin_districts h
-            ON ST_Within(ST_SetSRID(ST_Point(p.lon, p.lat), 4326), h.geometry)
-        """;
-        jdbcTemplate.execute(sql);
+    }
+
+    /** 按 tms 分区，各分区在自己的游标连接上读取、定位并写入，返回写入行数 */
+    private long insertData(DistrictLocator locator, String table) {
+        List<Long> inserted = partitionedExecutor.map(partitionedExecutor.byRange("public.dwd_pickup_points", "tms"),
+                partition -> insertPartition(locator, table, partition));
+        return inserted.stream().mapToLong(Long::longValue).sum();
+    }
+
+    private long insertPartition(DistrictLocator locator, String table, PartitionedExecutor.Partition partition) {
+        PointBatch batch = new PointBatch(batchSize);
+        cursorReader.query("""
+            SELECT traj_id, devid, lon, lat, way_id
+            FROM public.dwd_pickup_points
+            WHERE %s
+        """.formatted(partition.condition()), batchSize, rs -> {
+            int i = batch.size;
+            batch.trajId[i] = rs.getLong(1);
+            batch.devid[i] = rs.getString(2);
+            batch.lon[i] = nullToNaN(rs.getDouble(3), rs.wasNull());
+            batch.lat[i] = nullToNaN(rs.getDouble(4), rs.wasNull());
+            batch.wayId[i] = rs.getLong(5);
+            batch.wayIdNull[i] = rs.wasNull();
+            if (++batch.size == batchSize) {
+                writeBatch(locator, table, batch);
+            }
+        }, partition.args());
+        if (batch.size > 0) {
+            writeBatch(locator, table, batch);
+        }
+        return batch.total;
+    }
+
+    private void writeBatch(DistrictLocator locator, String table, PointBatch batch) {
+        int n = batch.size;
+        locator.locate(batch.lon, batch.lat, n, batch.district);
+
+        PgCopyRows rows = new PgCopyRows();
+        for (int i = 0; i < n; i++) {
+            int d = batch.district[i];
+            rows.row(7)
+                    .int8(batch.trajId[i])
+                    .text(batch.devid[i]);
+            float8OrNull(rows, batch.lon[i]);
+            float8OrNull(rows, batch.lat[i]);
+            rows.text(d < 0 ? null : locator.code(d))
+                    .text(d < 0 ? null : locator.name(d));
+            if (batch.wayIdNull[i]) {
+                rows.nul();
+            } else {
+                rows.int8(batch.wayId[i]);
+            }
+        }
+        batch.total += bulkLoader.copy(table,
+                "node_id, devid, lon, lat, district_code, district_name, way_id", rows);
+        batch.size = 0;
+    }
+
+    /** 坐标为 NULL 时记为 NaN，定位结果为 -1，写回时仍为 NULL */
+    private static double nullToNaN(double value, boolean wasNull) {
+        return wasNull ? Double.NaN : value;
+    }
+
+    private static void float8OrNull(PgCopyRows rows, double value) {
+        if (Double.isNaN(value)) {
+            rows.nul();
+        } else {
+            rows.float8(value);
+        }
+    }
+
+    /** 一批上车点及其所属行政区下标（-1 表示不在任何行政区内） */
+    private static final class PointBatch {
+        final long[] trajId;
+        final String[] devid;
+        final double[] lon;
+        final double[] lat;
+        final long[] wayId;
+        final boolean[] wayIdNull;
+        final int[] district;
+        int size;
+        long total;
+
+        PointBatch(int capacity) {
+            trajId = new long[capacity];
+            devid = new String[capacity];
+            lon = new double[capacity];
+            lat = new double[capacity];
+            wayId = new long[capacity];
+            wayIdNull = new boolean[capacity];
+            district = new int[capacity];
+        }
     }
 }
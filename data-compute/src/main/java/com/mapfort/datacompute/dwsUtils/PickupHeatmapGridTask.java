@@ -1,58 +1,112 @@
 package com.mapfort.datacompute.dwsUtils;
 
-import jakarta.annotation.PostConstruct;
-import lombok.RequiredArgsConstructor;
+import com.mapfort.datacompute.tdmUtils.GridHotspotLabelTask;
+import com.mapfort.datacompute.utils.CoordinateTransformUtil;
+import com.mapfort.datacompute.utils.CursorReader;
+import com.mapfort.datacompute.utils.PgBulkLoader;
+import com.mapfort.datacompute.utils.PgCopyRows;
+import com.mapfort.datacompute.utils.WatermarkStore;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
-import java.sql.Timestamp;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.List;
-import java.util.Map;
 
+/**
+ * DWD -> DWS 上车点栅格聚合。
+ * 增量模式下以 dwd_pickup_points.tms 为高水位，只聚合水位之后的新数据并累加到已有栅格；
+ * 没有水位（首次运行或水位被删除）时全量重建。新数据只会以更大的 tms 到达，迟到数据需删除水位后全量重建。
+ * <p>
+ * 新水位取自聚合语句本身（各组 MAX(tms) 的最大值），与聚合结果出自同一快照：
+ * 运行期间并发写入的上车点要么整体计入本次，要么 tms 大于新水位、留给下次，不会漏算或重复累加。
+ */
 @Slf4j
 @Component
 @EnableScheduling
-@RequiredArgsConstructor
 public class PickupHeatmapGridTask {
 
+    /** etl_watermark 中的名称，值为已聚合的最大 tms */
+    public static final String WATERMARK = "dws_pickup_grid_stat";
+
+    private static final String COLUMNS =
+            "grid_id, lon_center, lat_center, lon_gcj, lat_gcj, pickup_count, stat_hour, stat_date, last_updated";
+
+    private static final int FETCH_SIZE = 50000;
+
     private final JdbcTemplate jdbcTemplate;
+    private final PgBulkLoader bulkLoader;
+    private final CursorReader cursorReader;
+    private final WatermarkStore watermarkStore;
+    private final boolean incremental;
+
+    public PickupHeatmapGridTask(JdbcTemplate jdbcTemplate,
+                                 PgBulkLoader bulkLoader,
+                                 CursorReader cursorReader,
+                                 WatermarkStore watermarkStore,
+                                 @Value("${mapfort.pipeline.pickup-grid.incremental:true}") boolean incremental) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.bulkLoader = bulkLoader;
+        this.cursorReader = cursorReader;
+        this.watermarkStore = watermarkStore;
+        this.incremental = incremental;
+    }
 
     // @Scheduled(cron = "0 0 1 * * ?")
-//    @PostConstruct@PostConstruct
     @Transactional
     public void run() {
         log.info("DWD -> DWS: PickupHeatmapGridTask started.");
-        createOrInitTable();
-        List<Map<String, Object>> rows = queryGridStats();
-        batchInsert(rows);
-        log.info("DWD -> DWS: PickupHeatmapGridTask finished. Inserted: {}", rows.size());
+        createTable();
+        Long from = incremental ? watermarkStore.get(WATERMARK) : null;
+        if (from == null) {
+            // 全量重建先清空，源表为空时也不残留旧栅格；DWS 重建后下游也需全量重建，否则会残留已不存在的栅格
+            jdbcTemplate.execute("TRUNCATE TABLE public.dws_pickup_grid_stat");
+            watermarkStore.reset(GridHotspotLabelTask.WATERMARK);
+        }
+        long[] maxTms = {Long.MIN_VALUE};
+        long written = batchInsert(queryGridStats(from, maxTms), from != null);
+        if (written == 0) {
+            log.info("DWD -> DWS: PickupHeatmapGridTask finished. No pickups after watermark {}.", from);
+            return;
+        }
+        long to = maxTms[0];
+        watermarkStore.set(WATERMARK, to);
+        log.info("DWD -> DWS: PickupHeatmapGridTask finished. Mode: {}, tms: ({}, {}], written: {}",
+                from == null ? "full" : "incremental", from, to, written);
     }
 
-    /** 创建或清空 DWS 表 */
-    private void createOrInitTable() {
+    /** 创建 DWS 表 */
+    private void createTable() {
         jdbcTemplate.execute("""
             CREATE TABLE IF NOT EXISTS public.dws_pickup_grid_stat (
                 grid_id TEXT PRIMARY KEY,
                 lon_center DOUBLE PRECISION,
                 lat_center DOUBLE PRECISION,
+                lon_gcj DOUBLE PRECISION,
+                lat_gcj DOUBLE PRECISION,
                 pickup_count INT,
                 stat_hour INT,
                 stat_date DATE,
                 last_updated TIMESTAMP
             )
         """);
-        jdbcTemplate.execute("TRUNCATE TABLE public.dws_pickup_grid_stat");
+        // 旧表补充 GCJ-02 坐标列
+        jdbcTemplate.execute("""
+            ALTER TABLE public.dws_pickup_grid_stat
+                ADD COLUMN IF NOT EXISTS lon_gcj DOUBLE PRECISION,
+                ADD COLUMN IF NOT EXISTS lat_gcj DOUBLE PRECISION
+        """);
     }
 
-    /** 聚合上车点：按0.001°经纬度栅格划分 */
-    private List<Map<String, Object>> queryGridStats() {
+    /**
+     * 聚合 tms 大于 from 的上车点（from 为 null 表示不设下界）：按0.001°经纬度栅格划分。
+     * 在 COPY 进行中以游标读取（走另一连接），边读边编码发送，同时算出栅格中心的 GCJ-02 坐标，供接口直接读取。
+     * 读到的最大 tms 写入 maxTms[0]，作为新水位。
+     */
+    private PgBulkLoader.RowWriter queryGridStats(Long from, long[] maxTms) {
         String sql = """
             SELECT
               md5(floor(lon / 0.001) || '_' || floor(lat / 0.001) || '_' || to_timestamp(tms)::date || '_' || EXTRACT(HOUR FROM to_timestamp(tms))) AS grid_id,
@@ -60,38 +114,50 @@ public class PickupHeatmapGridTask {
               floor(lat / 0.001) * 0.001 + 0.0005 AS lat_center,
               COUNT(*) AS pickup_count,
               EXTRACT(HOUR FROM to_timestamp(tms)) AS stat_hour,
-              to_timestamp(tms)::date AS stat_date
+              to_timestamp(tms)::date AS stat_date,
+              MAX(tms) AS max_tms
             FROM dwd_pickup_points
+            WHERE tms > ?
             GROUP BY grid_id, lon_center, lat_center, stat_hour, stat_date
         """;
-        return jdbcTemplate.queryForList(sql);
+        return rows -> {
+            LocalDateTime now = LocalDateTime.now();
+            cursorReader.query(sql, FETCH_SIZE, rs -> {
+                appendRow(rows, rs.getString("grid_id"), rs.getDouble("lon_center"), rs.getDouble("lat_center"),
+                        rs.getInt("pickup_count"), rs.getInt("stat_hour"), rs.getDate("stat_date").toLocalDate(), now);
+                maxTms[0] = Math.max(maxTms[0], rs.getLong("max_tms"));
+            }, from == null ? Long.MIN_VALUE : from);
+        };
     }
 
-    /** 批量写入栅格聚合结果 */
-    private void batchInsert(List<Map<String, Object>> rows) {
-        String insertSql = """
-            INSERT INTO public.dws_pickup_grid_stat
-                (grid_id, lon_center, lat_center, pickup_count, stat_hour, stat_date, last_updated)
-            VALUES (?, ?, ?, ?, ?, ?, ?)
-        """;
-
-        jdbcTemplate.batchUpdate(insertSql, new BatchPreparedStatementSetter() {
-            @Override
-            public void setValues(PreparedStatement ps, int i) throws SQLException {
-                Map<String, Object> r = rows.get(i);
-                ps.setString(1, (String) r.get("grid_id"));
-                ps.setDouble(2, ((Number) r.get("lon_center")).doubleValue());
-                ps.setDouble(3, ((Number) r.get("lat_center")).doubleValue());
-                ps.setInt(4, ((Number) r.get("pickup_count")).intValue());
-                ps.setInt(5, ((Number) r.get("stat_hour")).intValue());
-                ps.setDate(6, java.sql.Date.valueOf(r.get("stat_date").toString()));
-                ps.setTimestamp(7, Timestamp.valueOf(LocalDateTime.now()));
-            }
+    /** 按 {@link #COLUMNS} 的顺序编码一行 */
+    static void appendRow(PgCopyRows rows, String gridId, double lon, double lat, int pickupCount,
+                          int statHour, LocalDate statDate, LocalDateTime lastUpdated) {
+        double[] gcj = CoordinateTransformUtil.wgs2gcj(lon, lat);
+        rows.row(9)
+                .text(gridId)
+                .float8(lon)
+                .float8(lat)
+                .float8(gcj[0])
+                .float8(gcj[1])
+                .int4(pickupCount)
+                .int4(statHour)
+                .date(statDate)
+                .timestamp(lastUpdated);
+    }
 
-            @Override
-            public int getBatchSize() {
-                return rows.size();
-            }
-        });
+    /**
+     * 写入栅格聚合结果。全量重建时直接 COPY 到已清空的表；
+     * 增量时栅格已存在则累加 pickup_count 并刷新 last_updated（下游据此找出变化的栅格）。
+     */
+    long batchInsert(PgBulkLoader.RowWriter rows, boolean merge) {
+        if (!merge) {
+            return bulkLoader.copy("public.dws_pickup_grid_stat", COLUMNS, rows);
+        }
+        return bulkLoader.upsert("public.dws_pickup_grid_stat", COLUMNS, """
+            ON CONFLICT (grid_id) DO UPDATE SET
+                pickup_count = dws_pickup_grid_stat.pickup_count + EXCLUDED.pickup_count,
+                last_updated = EXCLUDED.last_updated
+        """, rows);
     }
 }
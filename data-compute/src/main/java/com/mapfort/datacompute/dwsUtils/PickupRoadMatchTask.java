@@ -0,0 +1,219 @@
+package com.mapfort.datacompute.dwsUtils;
+
+import com.mapfort.datacompute.utils.CursorReader;
+import com.mapfort.datacompute.utils.PgBulkLoader;
+import com.mapfort.datacompute.utils.PgCopyRows;
+import com.mapfort.datacompute.utils.RoadSegmentIndex;
+import com.mapfort.datacompute.utils.ShadowTables;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * DWD -> DWS 上车点最近道路匹配：为每个上车点找出 maxDistance（度）以内最近的有名称道路，
+ * 结果写入 dws_pickup_point_roads (traj_id, way_id)，way_id 即 dwd_roads.gid。
+ * <p>
+ * 有名称道路的几何一次性载入内存 {@link RoadSegmentIndex}；上车点用游标分批读出，
+ * 每批在 ForkJoinPool 中并行匹配后以 COPY 写入影子表，全部完成后替换正式表。没有匹配到道路的点不写入。
+ */
+@Slf4j
+@Component
+public class PickupRoadMatchTask {
+
+    private static final String TABLE = "dws_pickup_point_roads";
+    /** 每个 fork-join 子任务至少处理的点数 */
+    private static final int SPLIT_THRESHOLD = 4096;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PgBulkLoader bulkLoader;
+    private final CursorReader cursorReader;
+    private final ShadowTables shadowTables;
+    private final double maxDistance;
+    private final int batchSize;
+    private final ForkJoinPool pool;
+
+    public PickupRoadMatchTask(JdbcTemplate jdbcTemplate,
+                               PgBulkLoader bulkLoader,
+                               CursorReader cursorReader,
+                               ShadowTables shadowTables,
+                               @Value("${mapfort.pipeline.road-match.max-distance:0.0005}") double maxDistance,
+                               @Value("${mapfort.pipeline.road-match.batch-size:200000}") int batchSize,
+                               @Value("${mapfort.pipeline.road-match.parallelism:0}") int parallelism) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.bulkLoader = bulkLoader;
+        this.cursorReader = cursorReader;
+        this.shadowTables = shadowTables;
+        this.maxDistance = maxDistance;
+        this.batchSize = batchSize;
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    public void run() {
+        log.info("DWD -> DWS: PickupRoadMatchTask started.");
+        createTable();
+        long start = System.nanoTime();
+        RoadSegmentIndex index = loadRoads();
+        log.info("Road index built. Roads: {}, segments: {}, in {} ms",
+                index.roadCount(), index.segmentCount(), (System.nanoTime() - start) / 1_000_000);
+
+        String shadow = shadowTables.create(TABLE);
+        long[] counts = matchPoints(index, shadow);
+        shadowTables.swapIn(TABLE);
+        log.info("DWD -> DWS: PickupRoadMatchTask finished. Points: {}, matched: {}, in {} ms",
+                counts[0], counts[1], (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void createTable() {
+        jdbcTemplate.execute("""
+            CREATE TABLE IF NOT EXISTS public.dws_pickup_point_roads (
+                traj_id BIGINT PRIMARY KEY,
+                way_id BIGINT
+            )
+        """);
+    }
+
+    /** 有名称道路的全部节点，按道路、分段、节点顺序读出 */
+    private RoadSegmentIndex loadRoads() {
+        RoadSegmentIndex.Builder builder = RoadSegmentIndex.builder();
+        PartBuffer part = new PartBuffer();
+        jdbcTemplate.query("""
+            SELECT r.gid, d.path[1] AS part, ST_X(p.geom) AS lon, ST_Y(p.geom) AS lat
+            FROM public.dwd_roads r
+            CROSS JOIN LATERAL ST_Dump(r.geom) d
+            CROSS JOIN LATERAL ST_DumpPoints(d.geom) p
+            WHERE r.tags::jsonb ? 'name'
+            ORDER BY r.gid, d.path[1], p.path[1]
+        """, rs -> {
+            long gid = rs.getLong("gid");
+            int partNo = rs.getInt("part");
+            if (part.size > 0 && (part.gid != gid || part.part != partNo)) {
+                builder.add(part.gid, part.lon, part.lat, part.size);
+                part.size = 0;
+            }
+            part.gid = gid;
+            part.part = partNo;
+            part.add(rs.getDouble("lon"), rs.getDouble("lat"));
+        });
+        if (part.size > 0) {
+            builder.add(part.gid, part.lon, part.lat, part.size);
+        }
+        return builder.build();
+    }
+
+    /** 分批读取上车点并匹配，返回 [点数, 匹配数] */
+    private long[] matchPoints(RoadSegmentIndex index, String shadow) {
+        PointBatch batch = new PointBatch(batchSize);
+        cursorReader.query("SELECT traj_id, lon, lat FROM public.dwd_pickup_points", batchSize, rs -> {
+            batch.trajId[batch.size] = rs.getLong(1);
+            batch.lon[batch.size] = rs.getDouble(2);
+            batch.lat[batch.size] = rs.getDouble(3);
+            if (++batch.size == batchSize) {
+                matchBatch(index, shadow, batch);
+            }
+        });
+        if (batch.size > 0) {
+            matchBatch(index, shadow, batch);
+        }
+        return new long[]{batch.total, batch.matched};
+    }
+
+    /** 并行匹配一批点，匹配到的写入影子表 */
+    private void matchBatch(RoadSegmentIndex index, String shadow, PointBatch batch) {
+        int n = batch.size;
+        pool.invoke(new MatchAction(index, batch.lon, batch.lat, batch.road, 0, n, maxDistance));
+
+        PgCopyRows rows = new PgCopyRows();
+        for (int i = 0; i < n; i++) {
+            if (batch.road[i] >= 0) {
+                rows.row(2).int8(batch.trajId[i]).int8(index.roadId(batch.road[i]));
+            }
+        }
+        bulkLoader.copy(shadow, "traj_id, way_id", rows);
+        batch.total += n;
+        batch.matched += rows.rows();
+        batch.size = 0;
+    }
+
+    /** 一批上车点及其匹配结果（道路下标，-1 表示未匹配） */
+    private static final class PointBatch {
+        final long[] trajId;
+        final double[] lon;
+        final double[] lat;
+        final int[] road;
+        int size;
+        long total;
+        long matched;
+
+        PointBatch(int capacity) {
+            trajId = new long[capacity];
+            lon = new double[capacity];
+            lat = new double[capacity];
+            road = new int[capacity];
+        }
+    }
+
+    /** 对 [from, to) 内的点做最近道路查询，区间较大时二分并行 */
+    static final class MatchAction extends RecursiveAction {
+        private final RoadSegmentIndex index;
+        private final double[] lon;
+        private final double[] lat;
+        private final int[] road;
+        private final int from;
+        private final int to;
+        private final double maxDistance;
+
+        MatchAction(RoadSegmentIndex index, double[] lon, double[] lat, int[] road, int from, int to, double maxDistance) {
+            this.index = index;
+            this.lon = lon;
+            this.lat = lat;
+            this.road = road;
+            this.from = from;
+            this.to = to;
+            this.maxDistance = maxDistance;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                int[] stack = index.newStack();
+                for (int i = from; i < to; i++) {
+                    road[i] = index.nearest(lon[i], lat[i], maxDistance, stack);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new MatchAction(index, lon, lat, road, from, mid, maxDistance),
+                    new MatchAction(index, lon, lat, road, mid, to, maxDistance));
+        }
+    }
+
+    /** 按行读出节点时累积当前分段 */
+    private static final class PartBuffer {
+        long gid;
+        int part;
+        double[] lon = new double[256];
+        double[] lat = new double[256];
+        int size;
+
+        void add(double x, double y) {
+            if (size == lon.length) {
+                lon = Arrays.copyOf(lon, size << 1);
+                lat = Arrays.copyOf(lat, size << 1);
+            }
+            lon[size] = x;
+            lat[size] = y;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.mapfort.datacompute.pipeline;
+
+import com.mapfort.datacompute.adsUtils.PickupRecommendationTask;
+import com.mapfort.datacompute.adsUtils.RoadPopularityStatisticsTask;
+import com.mapfort.datacompute.dwsUtils.AreaRoadJoinTask;
+import com.mapfort.datacompute.dwsUtils.PickupHeatmapGridTask;
+import com.mapfort.datacompute.dwsUtils.PickupRoadMatchTask;
+import com.mapfort.datacompute.tdmUtils.DistrictPickupAnalysisTask;
+import com.mapfort.datacompute.tdmUtils.DriverMetricsTask;
+import com.mapfort.datacompute.tdmUtils.GridHotspotLabelTask;
+import com.mapfort.datacompute.tdmUtils.RoadPopularityAnalysisTask;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+/**
+ * DWD → DWS → TDM → ADS 任务依赖声明。任务名取产出表名（产出多张表的任务另取名），依赖按读写的表确定；
+ * 只读 DWD 表的任务互不依赖，可并行执行。
+ */
+@Configuration
+public class PipelineConfig {
+
+    @Bean
+    public PipelineDefinition pipelineDefinition(PickupHeatmapGridTask pickupHeatmapGridTask,
+                                                 GridHotspotLabelTask gridHotspotLabelTask,
+                                                 PickupRoadMatchTask pickupRoadMatchTask,
+                                                 PickupRecommendationTask pickupRecommendationTask,
+                                                 RoadPopularityStatisticsTask roadPopularityStatisticsTask,
+                                                 RoadPopularityAnalysisTask roadPopularityAnalysisTask,
+                                                 AreaRoadJoinTask areaRoadJoinTask,
+                                                 DistrictPickupAnalysisTask districtPickupAnalysisTask,
+                                                 DriverMetricsTask driverMetricsTask) {
+        return new PipelineDefinition(List.of(
+                // dwd_pickup_points -> dws_pickup_grid_stat -> tdm_hot_grids
+                PipelineTask.of("dws_pickup_grid_stat", pickupHeatmapGridTask::run),
+                PipelineTask.of("tdm_hot_grids", gridHotspotLabelTask::run, "dws_pickup_grid_stat"),
+                // dwd_pickup_points + dwd_roads -> dws_pickup_point_roads
+                PipelineTask.of("dws_pickup_point_roads", pickupRoadMatchTask::run),
+                // dwd_trip_roads + dwd_roads -> ads_road_popularity_statistics / tdm_road_popularity_test
+                PipelineTask.of("ads_road_popularity_statistics", roadPopularityStatisticsTask::run),
+                PipelineTask.of("tdm_road_popularity_test", roadPopularityAnalysisTask::run),
+                // dwd_pickup_points + harbin_districts
+                PipelineTask.of("tdm_areas_roads", areaRoadJoinTask::run),
+                PipelineTask.of("tdm_district_pickup_analysis_test", districtPickupAnalysisTask::run),
+                // 上车点的最近道路与所属行政区 -> ads_recommend_pickup_ways
+                PipelineTask.of("ads_recommend_pickup_ways", pickupRecommendationTask::run,
+                        "dws_pickup_point_roads", "tdm_areas_roads"),
+                // dwd_trip_info -> tdm_driver_behavior_analysis + tdm_driver_trip_profile（一次扫描同时产出两张表）
+                PipelineTask.of("tdm_driver_metrics", driverMetricsTask::run)
+        ));
+    }
+}
@@ -0,0 +1,72 @@
+package com.mapfort.datacompute.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 任务 DAG：构建时校验依赖存在且无环，并预先算好每个任务的下游。
+ */
+public class PipelineDefinition {
+
+    private final Map<String, PipelineTask> tasks = new LinkedHashMap<>();
+    private final Map<String, List<String>> downstream = new HashMap<>();
+
+    public PipelineDefinition(List<PipelineTask> taskList) {
+        for (PipelineTask task : taskList) {
+            if (tasks.putIfAbsent(task.name(), task) != null) {
+                throw new IllegalArgumentException("Duplicate pipeline task: " + task.name());
+            }
+            downstream.put(task.name(), new ArrayList<>());
+        }
+        for (PipelineTask task : taskList) {
+            for (String upstream : task.dependsOn()) {
+                if (!tasks.containsKey(upstream)) {
+                    throw new IllegalArgumentException("Task " + task.name() + " depends on unknown task " + upstream);
+                }
+                downstream.get(upstream).add(task.name());
+            }
+        }
+        checkAcyclic();
+    }
+
+    public Collection<PipelineTask> tasks() {
+        return tasks.values();
+    }
+
+    public PipelineTask task(String name) {
+        return tasks.get(name);
+    }
+
+    public List<String> downstreamOf(String name) {
+        return downstream.get(name);
+    }
+
+    /** Kahn 拓扑排序，排不完即有环 */
+    private void checkAcyclic() {
+        Map<String, Integer> inDegree = new HashMap<>();
+        List<String> ready = new ArrayList<>();
+        for (PipelineTask task : tasks.values()) {
+            inDegree.put(task.name(), task.dependsOn().size());
+            if (task.dependsOn().isEmpty()) {
+                ready.add(task.name());
+            }
+        }
+        int visited = 0;
+        while (!ready.isEmpty()) {
+            String name = ready.remove(ready.size() - 1);
+            visited++;
+            for (String next : downstream.get(name)) {
+                if (inDegree.merge(next, -1, Integer::sum) == 0) {
+                    ready.add(next);
+                }
+            }
+        }
+        if (visited != tasks.size()) {
+            throw new IllegalArgumentException("Pipeline task dependencies contain a cycle");
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.mapfort.datacompute.pipeline;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 流水线运行状态持久化：etl_pipeline_run 记录每次运行，etl_task_run 记录每次运行中各任务的状态，
+ * 重启后据此跳过上次未完成运行中已成功的任务。
+ */
+@Component
+@RequiredArgsConstructor
+public class PipelineRunStore {
+
+    public static final String RUNNING = "RUNNING";
+    public static final String SUCCEEDED = "SUCCEEDED";
+    public static final String FAILED = "FAILED";
+    /** 上游失败，本次运行未执行 */
+    public static final String BLOCKED = "BLOCKED";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public void init() {
+        jdbcTemplate.execute("""
+            CREATE TABLE IF NOT EXISTS public.etl_pipeline_run (
+                run_id BIGSERIAL PRIMARY KEY,
+                status VARCHAR(16) NOT NULL,
+                started_at TIMESTAMP NOT NULL,
+                finished_at TIMESTAMP
+            )
+        """);
+        jdbcTemplate.execute("""
+            CREATE TABLE IF NOT EXISTS public.etl_task_run (
+                run_id BIGINT NOT NULL,
+                task_name VARCHAR(64) NOT NULL,
+                status VARCHAR(16) NOT NULL,
+                started_at TIMESTAMP,
+                finished_at TIMESTAMP,
+                error TEXT,
+                PRIMARY KEY (run_id, task_name)
+            )
+        """);
+    }
+
+    /** 最近一次运行若未成功结束（失败或进程中断），返回其 run_id，否则返回 null */
+    public Long latestUnfinishedRun() {
+        List<Long> ids = jdbcTemplate.queryForList("""
+            SELECT run_id FROM public.etl_pipeline_run
+            WHERE run_id = (SELECT MAX(run_id) FROM public.etl_pipeline_run)
+              AND status <> 'SUCCEEDED'
+        """, Long.class);
+        return ids.isEmpty() ? null : ids.get(0);
+    }
+
+    public Set<String> succeededTasks(long runId) {
+        return new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT task_name FROM public.etl_task_run WHERE run_id = ? AND status = 'SUCCEEDED'",
+                String.class, runId));
+    }
+
+    public long startRun() {
+        return jdbcTemplate.queryForObject(
+                "INSERT INTO public.etl_pipeline_run (status, started_at) VALUES ('RUNNING', now()) RETURNING run_id",
+                Long.class);
+    }
+
+    /** 续跑上次运行 */
+    public void resumeRun(long runId) {
+        jdbcTemplate.update(
+                "UPDATE public.etl_pipeline_run SET status = 'RUNNING', finished_at = NULL WHERE run_id = ?", runId);
+    }
+
+    public void finishRun(long runId, String status) {
+        jdbcTemplate.update(
+                "UPDATE public.etl_pipeline_run SET status = ?, finished_at = now() WHERE run_id = ?", status, runId);
+    }
+
+    public void taskStarted(long runId, String task) {
+        jdbcTemplate.update("""
+            INSERT INTO public.etl_task_run (run_id, task_name, status, started_at)
+            VALUES (?, ?, 'RUNNING', now())
+            ON CONFLICT (run_id, task_name)
+            DO UPDATE SET status = 'RUNNING', started_at = now(), finished_at = NULL, error = NULL
+        """, runId, task);
+    }
+
+    public void taskFinished(long runId, String task, String status, String error) {
+        jdbcTemplate.update("""
+            INSERT INTO public.etl_task_run (run_id, task_name, status, finished_at, error)
+            VALUES (?, ?, ?, now(), ?)
+            ON CONFLICT (run_id, task_name)
+            DO UPDATE SET status = EXCLUDED.status, finished_at = now(), error = EXCLUDED.error
+        """, runId, task, status, error);
+    }
+}
@@ -0,0 +1,227 @@
+package com.mapfort.datacompute.pipeline;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按依赖关系执行 {@link PipelineDefinition}：上游全部成功后才提交下游，互不依赖的任务在有界线程池中并行。
+ * 某任务失败时其全部下游标记为 BLOCKED，其余分支照常执行。
+ * 启动即运行需显式开启（mapfort.pipeline.run-on-startup=true，如 --mapfort.pipeline.run-on-startup=true），
+ * 开启后在应用启动完成后于后台触发，不阻塞启动；若最近一次运行未成功结束，则续跑该运行，跳过其中已成功的任务。
+ */
+@Slf4j
+@Component
+public class PipelineRunner {
+
+    private final PipelineDefinition definition;
+    private final PipelineRunStore store;
+    private final ExecutorService executor;
+    private final boolean runOnStartup;
+    private final boolean resume;
+    private final Set<String> disabledTasks;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public PipelineRunner(PipelineDefinition definition,
+                          PipelineRunStore store,
+                          @Value("${mapfort.pipeline.parallelism:3}") int parallelism,
+                          @Value("${mapfort.pipeline.run-on-startup:false}") boolean runOnStartup,
+                          @Value("${mapfort.pipeline.resume:true}") boolean resume,
+                          @Value("${mapfort.pipeline.disabled-tasks:}") List<String> disabledTasks) {
+        this.definition = definition;
+        this.store = store;
+        this.executor = Executors.newFixedThreadPool(parallelism, new CustomizableThreadFactory("pipeline-"));
+        this.runOnStartup = runOnStartup;
+        this.resume = resume;
+        this.disabledTasks = new HashSet<>(disabledTasks);
+        for (String name : this.disabledTasks) {
+            if (definition.task(name) == null) {
+                throw new IllegalArgumentException("Unknown pipeline task in disabled-tasks: " + name);
+            }
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (runOnStartup) {
+            start();
+        }
+    }
+
+    /**
+     * 触发一次运行，返回的 future 在全部任务结束后完成（值为是否全部成功）。
+     * 已有运行在进行时直接返回 false。
+     */
+    public CompletableFuture<Boolean> start() {
+        if (!running.compareAndSet(false, true)) {
+            log.warn("Pipeline is already running.");
+            return CompletableFuture.completedFuture(false);
+        }
+        try {
+            store.init();
+            Long unfinished = resume ? store.latestUnfinishedRun() : null;
+            Set<String> skip = new HashSet<>(disabledTasks);
+            long runId;
+            if (unfinished != null) {
+                runId = unfinished;
+                Set<String> succeeded = store.succeededTasks(runId);
+                skip.addAll(succeeded);
+                store.resumeRun(runId);
+                log.info("Pipeline run {} resumed, skipping succeeded tasks: {}", runId, succeeded);
+            } else {
+                runId = store.startRun();
+                log.info("Pipeline run {} started.", runId);
+            }
+            Run run = new Run(runId, skip);
+            run.begin();
+            return run.done;
+        } catch (RuntimeException e) {
+            running.set(false);
+            log.error("Pipeline failed to start.", e);
+            return CompletableFuture.completedFuture(false);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /** 一次运行的调度状态 */
+    private final class Run {
+        final long runId;
+        final Set<String> skip;
+        /** 各任务尚未完成的上游数 */
+        final Map<String, AtomicInteger> waiting = new ConcurrentHashMap<>();
+        /** 已成功、失败、被阻塞或跳过的任务 */
+        final Set<String> settled = ConcurrentHashMap.newKeySet();
+        final AtomicInteger unsettled;
+        final AtomicBoolean failed = new AtomicBoolean();
+        final CompletableFuture<Boolean> done = new CompletableFuture<>();
+        final long startNanos = System.nanoTime();
+
+        Run(long runId, Set<String> skip) {
+            this.runId = runId;
+            this.skip = skip;
+            for (PipelineTask task : definition.tasks()) {
+                waiting.put(task.name(), new AtomicInteger(task.dependsOn().size()));
+            }
+            this.unsettled = new AtomicInteger(waiting.size());
+        }
+
+        void begin() {
+            if (waiting.isEmpty()) {
+                finish();
+                return;
+            }
+            for (PipelineTask task : definition.tasks()) {
+                if (task.dependsOn().isEmpty()) {
+                    release(task.name());
+                }
+            }
+        }
+
+        /** 上游已全部成功：跳过列表中的任务直接视为成功，否则提交执行 */
+        void release(String name) {
+            if (skip.contains(name)) {
+                succeeded(name);
+                return;
+            }
+            executor.execute(() -> execute(definition.task(name)));
+        }
+
+        void execute(PipelineTask task) {
+            long start = System.nanoTime();
+            try {
+                store.taskStarted(runId, task.name());
+                task.action().run();
+                store.taskFinished(runId, task.name(), PipelineRunStore.SUCCEEDED, null);
+            } catch (Throwable e) {
+                // 含 OutOfMemoryError 等 Error：任务必须结算，否则本次运行永远不会结束，后续 start() 都被拒绝
+                log.error("Pipeline task {} failed.", task.name(), e);
+                try {
+                    store.taskFinished(runId, task.name(), PipelineRunStore.FAILED, String.valueOf(e));
+                } catch (Throwable storeError) {
+                    log.warn("Failed to record failure of task {}.", task.name(), storeError);
+                }
+                failed(task.name());
+                return;
+            }
+            log.info("Pipeline task {} succeeded in {} ms.", task.name(), (System.nanoTime() - start) / 1_000_000);
+            succeeded(task.name());
+        }
+
+        void succeeded(String name) {
+            if (!settle(name)) {
+                return;
+            }
+            for (String next : definition.downstreamOf(name)) {
+                if (waiting.get(next).decrementAndGet() == 0) {
+                    release(next);
+                }
+            }
+        }
+
+        void failed(String name) {
+            failed.set(true);
+            if (settle(name)) {
+                for (String next : definition.downstreamOf(name)) {
+                    block(next);
+                }
+            }
+        }
+
+        /** 上游失败，下游（递归）本次不再执行 */
+        void block(String name) {
+            if (!settle(name)) {
+                return;
+            }
+            try {
+                store.taskFinished(runId, name, PipelineRunStore.BLOCKED, null);
+            } catch (Exception e) {
+                log.warn("Failed to record blocked task {}.", name, e);
+            }
+            for (String next : definition.downstreamOf(name)) {
+                block(next);
+            }
+        }
+
+        /** 标记任务已结束，返回是否为首次标记 */
+        boolean settle(String name) {
+            if (!settled.add(name)) {
+                return false;
+            }
+            if (unsettled.decrementAndGet() == 0) {
+                finish();
+            }
+            return true;
+        }
+
+        void finish() {
+            String status = failed.get() ? PipelineRunStore.FAILED : PipelineRunStore.SUCCEEDED;
+            try {
+                store.finishRun(runId, status);
+            } catch (Exception e) {
+                log.warn("Failed to record pipeline run {} status.", runId, e);
+            }
+            log.info("Pipeline run {} {} in {} ms.", runId, status, (System.nanoTime() - startNanos) / 1_000_000);
+            running.set(false);
+            done.complete(!failed.get());
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.mapfort.datacompute.pipeline;
+
+import java.util.List;
+
+/**
+ * 流水线中的一个任务节点。
+ *
+ * @param name      任务名，取其产出的表名，同时作为运行状态表中的主键
+ * @param dependsOn 上游任务名，全部成功后才会执行
+ * @param action    任务体，通常是各 *Task 的 run()（经 Spring 代理调用，@Transactional 照常生效）
+ */
+public record PipelineTask(String name, List<String> dependsOn, Runnable action) {
+
+    public static PipelineTask of(String name, Runnable action, String... dependsOn) {
+        return new PipelineTask(name, List.of(dependsOn), action);
+    }
+}
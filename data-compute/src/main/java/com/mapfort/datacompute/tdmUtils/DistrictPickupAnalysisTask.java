@@ -1,37 +1,51 @@
 package com.mapfort.datacompute.tdmUtils;
 
-import jakarta.annotation.PostConstruct;
-import lombok.RequiredArgsConstructor;
+import com.mapfort.datacompute.utils.CursorReader;
+import com.mapfort.datacompute.utils.DistrictLocator;
+import com.mapfort.datacompute.utils.ShadowTables;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 
+import java.sql.PreparedStatement;
 import java.util.Map;
 
+/**
+ * 各行政区上车点数：点到行政区边界 0.001 度以内即计入该区（与原 ST_DWithin 一致，边界附近的点可计入多个区）。
+ * 定位由 {@link DistrictLocator} 在内存中完成，上车点用游标分批读出、并行定位后按区累加。
+ */
 @Slf4j
 @Component
-@RequiredArgsConstructor
 public class DistrictPickupAnalysisTask {
 
+    /** 点到行政区的距离阈值（度） */
+    private static final double TOLERANCE = 0.001;
+
     private final JdbcTemplate jdbcTemplate;
+    private final CursorReader cursorReader;
+    private final ShadowTables shadowTables;
+    private final int batchSize;
+
+    public DistrictPickupAnalysisTask(JdbcTemplate jdbcTemplate,
+                                      CursorReader cursorReader,
+                                      ShadowTables shadowTables,
+                                      @Value("${mapfort.pipeline.district-match.batch-size:200000}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.cursorReader = cursorReader;
+        this.shadowTables = shadowTables;
+        this.batchSize = batchSize;
+    }
 
-//    @PostConstruct
     public void run() {
         log.info(">>> 区域上车点热度分析启动");
-        createSpatialIndex();
         checkDataValidity();
         createAnalysisTable();
-        analyzePickupByDistrict();
+        analyzePickupByDistrict(shadowTables.create("tdm_district_pickup_analysis_test"));
+        shadowTables.swapIn("tdm_district_pickup_analysis_test");
         log.info("<<< 分析流程结束");
     }
 
-    private void createSpatialIndex() {
-        jdbcTemplate.execute("""
-            CREATE INDEX IF NOT EXISTS idx_harbin_districts_geometry 
-            ON public.harbin_districts USING GIST(geometry)
-        """);
-    }
-
     private void checkDataValidity() {
         Map<String, Object> pickupStats = jdbcTemplate.queryForMap("""
             SELECT 
@@ -61,34 +75,92 @@ public class DistrictPickupAnalysisTask {
                 pickup_count BIGINT
             )
         """);
-        jdbcTemplate.execute("TRUNCATE TABLE public.tdm_district_pickup_analysis_test");
     }
 
-    private void analyzePickupByDistrict() {
-        jdbcTemplate.execute("""
-            INSERT INTO public.tdm_district_pickup_analysis_test (pac, district_name, city, province, pickup_count)
-            SELECT 
-                d."PAC" AS pac,
-                d."NAME" AS district_name,
-                d."市" AS city,
-                d."省" AS province,
-                COUNT(p.traj_id) AS pickup_count
-            FROM 
-                public.harbin_districts d
-            LEFT JOIN 
-                public.dwd_pickup_points p
-            ON 
-                ST_DWithin(ST_SetSRID(ST_Point(p.lon, p.lat), 4326), d.geometry, 0.001)
-            GROUP BY 
-                d."PAC", d."NAME", d."市", d."省"
-        """);
+    private void analyzePickupByDistrict(String table) {
+        DistrictLocator locator = DistrictLocator.load(jdbcTemplate, TOLERANCE);
+        long[] pickupCounts = new long[locator.districtCount()];
+        long unmatched = countPickups(locator, pickupCounts);
 
-        Integer unmatched = jdbcTemplate.queryForObject("""
-            SELECT COUNT(*) FROM public.dwd_pickup_points p
-            WHERE NOT EXISTS (
-                SELECT 1 FROM public.harbin_districts d
-                WHERE ST_DWithin(ST_SetSRID(ST_Point(p.lon, p.lat), 4326), d.geometry, 0.001)
-            )
-        """, Integer.class);
+        String[] pacs = new String[pickupCounts.length];
+        Long[] counts = new Long[pickupCounts.length];
+        for (int d = 0; d < pacs.length; d++) {
+            pacs[d] = locator.code(d);
+            counts[d] = pickupCounts[d];
+        }
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement("""
+                INSERT INTO %s (pac, district_name, city, province, pickup_count)
+                SELECT
+                    d."PAC" AS pac,
+                    d."NAME" AS district_name,
+                    d."市" AS city,
+                    d."省" AS province,
+                    COALESCE(c.pickup_count, 0) AS pickup_count
+                FROM
+                    public.harbin_districts d
+                LEFT JOIN
+                    UNNEST(?::text[], ?::bigint[]) AS c(pac, pickup_count)
+                ON
+                    c.pac = d."PAC"::text
+            """.formatted(table));
+            ps.setArray(1, con.createArrayOf("text", pacs));
+            ps.setArray(2, con.createArrayOf("int8", counts));
+            return ps;
+        });
+        log.info("不在任何行政区 {} 度范围内的上车点: {}", TOLERANCE, unmatched);
+    }
+
+    /** 逐批定位上车点并按区累加到 pickupCounts，返回未落入任何行政区的点数 */
+    private long countPickups(DistrictLocator locator, long[] pickupCounts) {
+        PickupCounter counter = new PickupCounter(locator, pickupCounts, batchSize);
+        cursorReader.query("SELECT lon, lat FROM public.dwd_pickup_points", batchSize, rs -> {
+            double lon = rs.getDouble(1);
+            boolean lonNull = rs.wasNull();
+            double lat = rs.getDouble(2);
+            // 坐标为 NULL 的点不落入任何行政区
+            counter.add(lonNull || rs.wasNull() ? Double.NaN : lon, lat);
+        });
+        counter.flush();
+        return counter.unmatched;
+    }
+
+    private static final class PickupCounter {
+        private final DistrictLocator locator;
+        private final long[] pickupCounts;
+        private final double[] lon;
+        private final double[] lat;
+        private final long[] masks;
+        private int size;
+        long unmatched;
+
+        PickupCounter(DistrictLocator locator, long[] pickupCounts, int batchSize) {
+            this.locator = locator;
+            this.pickupCounts = pickupCounts;
+            lon = new double[batchSize];
+            lat = new double[batchSize];
+            masks = new long[batchSize];
+        }
+
+        void add(double x, double y) {
+            lon[size] = x;
+            lat[size] = y;
+            if (++size == lon.length) {
+                flush();
+            }
+        }
+
+        void flush() {
+            locator.matches(lon, lat, size, masks);
+            for (int i = 0; i < size; i++) {
+                if (masks[i] == 0) {
+                    unmatched++;
+                }
+                for (long m = masks[i]; m != 0; m &= m - 1) {
+                    pickupCounts[Long.numberOfTrailingZeros(m)]++;
+                }
+            }
+            size = 0;
+        }
     }
 }
@@ -0,0 +1,255 @@
+package com.mapfort.datacompute.tdmUtils;
+
+import com.mapfort.datacompute.utils.CursorReader;
+import com.mapfort.datacompute.utils.PgBulkLoader;
+import com.mapfort.datacompute.utils.PgCopyRows;
+import com.mapfort.datacompute.utils.ShadowTables;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * DWD -> TDM 司机指标：只扫描一遍 dwd_trip_info，按司机累加行程数、时长与各时段行程数，
+ * 同时产出 tdm_driver_behavior_analysis 与 tdm_driver_trip_profile（原先两个任务各扫描一遍）。
+ * <p>
+ * 统计口径与原 SQL 一致：行程数为 COUNT(*)，时长的平均/最大/最小/合计忽略 NULL；
+ * 时段按 begin_time 在会话时区（PgJDBC 取 JVM 默认时区）下的小时划分：
+ * 早 5–11、午 12–17、晚 18–21、夜 22–4。
+ */
+@Slf4j
+@Component
+public class DriverMetricsTask {
+
+    private static final String BEHAVIOR_TABLE = "tdm_driver_behavior_analysis";
+    private static final String PROFILE_TABLE = "tdm_driver_trip_profile";
+
+    private static final int MORNING = 0;
+    private static final int AFTERNOON = 1;
+    private static final int EVENING = 2;
+    private static final int NIGHT = 3;
+    /** 一天 24 小时对应的时段 */
+    private static final int[] HOUR_BUCKET = new int[24];
+
+    static {
+        for (int hour = 0; hour < 24; hour++) {
+            HOUR_BUCKET[hour] = hour >= 5 && hour <= 11 ? MORNING
+                    : hour >= 12 && hour <= 17 ? AFTERNOON
+                    : hour >= 18 && hour <= 21 ? EVENING
+                    : NIGHT;
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PgBulkLoader bulkLoader;
+    private final CursorReader cursorReader;
+    private final ShadowTables shadowTables;
+    private final int fetchSize;
+
+    public DriverMetricsTask(JdbcTemplate jdbcTemplate,
+                             PgBulkLoader bulkLoader,
+                             CursorReader cursorReader,
+                             ShadowTables shadowTables,
+                             @Value("${mapfort.pipeline.driver-metrics.fetch-size:50000}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.bulkLoader = bulkLoader;
+        this.cursorReader = cursorReader;
+        this.shadowTables = shadowTables;
+        this.fetchSize = fetchSize;
+    }
+
+    public void run() {
+        log.info("DWD -> TDM: DriverMetricsTask started.");
+        createTables();
+        DriverStats stats = aggregate();
+
+        LocalDateTime now = LocalDateTime.now();
+        String behaviorShadow = shadowTables.create(BEHAVIOR_TABLE);
+        long behaviorRows = bulkLoader.copy(behaviorShadow, """
+                driver_id, total_trips, avg_trip_duration, max_trip_duration,
+                min_trip_duration, total_driving_time, morning_trips,
+                afternoon_trips, evening_trips, night_trips, last_updated""", rows -> stats.behaviorRows(rows, now));
+        String profileShadow = shadowTables.create(PROFILE_TABLE);
+        long profileRows = bulkLoader.copy(profileShadow,
+                "devid, trip_count, avg_travel_time, max_travel_time, min_travel_time, total_travel_time",
+                stats::profileRows);
+        shadowTables.swapIn(BEHAVIOR_TABLE);
+        shadowTables.swapIn(PROFILE_TABLE);
+        log.info("DWD -> TDM: DriverMetricsTask finished. Trips: {}, {}: {}, {}: {}",
+                stats.trips, BEHAVIOR_TABLE, behaviorRows, PROFILE_TABLE, profileRows);
+    }
+
+    /** 创建（若不存在）两张结果表，作为影子表的结构模板 */
+    private void createTables() {
+        jdbcTemplate.execute("""
+            CREATE TABLE IF NOT EXISTS public.tdm_driver_behavior_analysis(
+                driver_id TEXT PRIMARY KEY,
+                total_trips INTEGER,
+                avg_trip_duration INTEGER,
+                max_trip_duration INTEGER,
+                min_trip_duration INTEGER,
+                total_driving_time INTEGER,
+                morning_trips INTEGER,
+                afternoon_trips INTEGER,
+                evening_trips INTEGER,
+                night_trips INTEGER,
+                last_updated TIMESTAMP
+            )
+            """);
+        jdbcTemplate.execute("""
+            CREATE TABLE IF NOT EXISTS public.tdm_driver_trip_profile (
+                devid TEXT,
+                trip_count INT,
+                avg_travel_time FLOAT,
+                max_travel_time INT,
+                min_travel_time INT,
+                total_travel_time BIGINT
+            )
+        """);
+    }
+
+    private DriverStats aggregate() {
+        DriverStats stats = new DriverStats(ZoneId.systemDefault());
+        cursorReader.query("SELECT devid, travel_time, begin_time FROM public.dwd_trip_info", fetchSize, rs -> {
+            int driver = stats.driver(rs.getString(1));
+            long travelTime = rs.getLong(2);
+            if (!rs.wasNull()) {
+                stats.addTravelTime(driver, travelTime);
+            }
+            double beginTime = rs.getDouble(3);
+            if (!rs.wasNull()) {
+                stats.addBucket(driver, stats.hour(beginTime));
+            }
+            stats.addTrip(driver);
+        });
+        return stats;
+    }
+
+    /** 按司机下标存放的基本类型累加器 */
+    static final class DriverStats {
+        private final Map<String, Integer> index = new HashMap<>();
+        private final ZoneRules zoneRules;
+        /** 固定时差的时区（如 Asia/Shanghai）直接按秒数换算小时，否则为 null */
+        private final Integer fixedOffsetSeconds;
+
+        private String[] devids = new String[1024];
+        private long[] tripCount = new long[1024];
+        /** 时长非 NULL 的行程数与时长合计、最大、最小 */
+        private long[] travelCount = new long[1024];
+        private long[] travelSum = new long[1024];
+        private long[] travelMax = new long[1024];
+        private long[] travelMin = new long[1024];
+        private int[][] buckets = new int[4][1024];
+        private int drivers;
+        long trips;
+
+        DriverStats(ZoneId zone) {
+            zoneRules = zone.getRules();
+            fixedOffsetSeconds = zoneRules.isFixedOffset() ? zoneRules.getOffset(Instant.EPOCH).getTotalSeconds() : null;
+        }
+
+        int driver(String devid) {
+            Integer d = index.get(devid);
+            if (d != null) {
+                return d;
+            }
+            if (drivers == devids.length) {
+                int capacity = drivers << 1;
+                devids = Arrays.copyOf(devids, capacity);
+                tripCount = Arrays.copyOf(tripCount, capacity);
+                travelCount = Arrays.copyOf(travelCount, capacity);
+                travelSum = Arrays.copyOf(travelSum, capacity);
+                travelMax = Arrays.copyOf(travelMax, capacity);
+                travelMin = Arrays.copyOf(travelMin, capacity);
+                for (int b = 0; b < buckets.length; b++) {
+                    buckets[b] = Arrays.copyOf(buckets[b], capacity);
+                }
+            }
+            devids[drivers] = devid;
+            travelMax[drivers] = Long.MIN_VALUE;
+            travelMin[drivers] = Long.MAX_VALUE;
+            index.put(devid, drivers);
+            return drivers++;
+        }
+
+        void addTrip(int d) {
+            tripCount[d]++;
+            trips++;
+        }
+
+        void addTravelTime(int d, long travelTime) {
+            travelCount[d]++;
+            travelSum[d] += travelTime;
+            travelMax[d] = Math.max(travelMax[d], travelTime);
+            travelMin[d] = Math.min(travelMin[d], travelTime);
+        }
+
+        void addBucket(int d, int hour) {
+            buckets[HOUR_BUCKET[hour]][d]++;
+        }
+
+        /** begin_time（Unix 秒）在会话时区下的小时 */
+        int hour(double epochSeconds) {
+            long seconds = (long) Math.floor(epochSeconds);
+            int offset = fixedOffsetSeconds != null
+                    ? fixedOffsetSeconds
+                    : zoneRules.getOffset(Instant.ofEpochSecond(seconds)).getTotalSeconds();
+            return (int) (Math.floorMod(seconds + offset, 86400L) / 3600);
+        }
+
+        /**
+         * 与原 SQL 经 getInt 读出一致：无非 NULL 时长时写 0，平均值截断取整。
+         * 各列为 INTEGER，超出范围的值（如累计时长）取 int 上下限，不中断整次运行。
+         */
+        void behaviorRows(PgCopyRows rows, LocalDateTime now) {
+            for (int d = 0; d < drivers; d++) {
+                boolean hasTravel = travelCount[d] > 0;
+                rows.row(11)
+                        .text(devids[d])
+                        .int4(saturatedInt(tripCount[d]))
+                        .int4(hasTravel ? saturatedInt(travelSum[d] / travelCount[d]) : 0)
+                        .int4(hasTravel ? saturatedInt(travelMax[d]) : 0)
+                        .int4(hasTravel ? saturatedInt(travelMin[d]) : 0)
+                        .int4(hasTravel ? saturatedInt(travelSum[d]) : 0)
+                        .int4(buckets[MORNING][d])
+                        .int4(buckets[AFTERNOON][d])
+                        .int4(buckets[EVENING][d])
+                        .int4(buckets[NIGHT][d])
+                        .timestamp(now);
+            }
+        }
+
+        /**
+         * 与原 INSERT ... SELECT 一致：无非 NULL 时长时平均/最大/最小/合计为 NULL。
+         * total_travel_time 为 BIGINT 按原值写入，其余 INT 列超出范围时取 int 上下限。
+         */
+        void profileRows(PgCopyRows rows) {
+            for (int d = 0; d < drivers; d++) {
+                rows.row(6)
+                        .text(devids[d])
+                        .int4(saturatedInt(tripCount[d]));
+                if (travelCount[d] > 0) {
+                    rows.float8((double) travelSum[d] / travelCount[d])
+                            .int4(saturatedInt(travelMax[d]))
+                            .int4(saturatedInt(travelMin[d]))
+                            .int8(travelSum[d]);
+                } else {
+                    rows.nul().nul().nul().nul();
+                }
+            }
+        }
+
+        /** long 收窄为 int，超出范围时取 Integer.MIN_VALUE / MAX_VALUE */
+        static int saturatedInt(long value) {
+            return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value));
+        }
+    }
+}
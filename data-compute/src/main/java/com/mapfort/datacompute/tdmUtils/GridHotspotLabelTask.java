@@ -1,40 +1,106 @@
 package com.mapfort.datacompute.tdmUtils;
 
-import jakarta.annotation.PostConstruct;
-import lombok.RequiredArgsConstructor;
+import com.mapfort.datacompute.utils.CoordinateTransformUtil;
+import com.mapfort.datacompute.utils.CursorReader;
+import com.mapfort.datacompute.utils.KllSketch;
+import com.mapfort.datacompute.utils.PartitionedExecutor;
+import com.mapfort.datacompute.utils.PgBulkLoader;
+import com.mapfort.datacompute.utils.PgCopyRows;
+import com.mapfort.datacompute.utils.ShadowTables;
+import com.mapfort.datacompute.utils.WatermarkStore;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
-import java.sql.Timestamp;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Map;
 
+/**
+ * DWS -> TDM 栅格热度分级：按 dws_pickup_grid_stat 全表 pickup_count 的 75%/50% 分位数（KLL 草图近似）分为高/中/低。
+ * 增量模式下以 dws 行的 last_updated 为高水位，只写入上次运行后变化的栅格，
+ * 再按新的分位数就地修正已有栅格中等级发生变化的行；没有水位时在影子表中全量重建后替换。
+ */
 @Slf4j
 @Component
 @EnableScheduling
-@RequiredArgsConstructor
 public class GridHotspotLabelTask {
 
+    /** etl_watermark 中的名称，值为已处理的 dws last_updated 最大值（epoch 微秒） */
+    public static final String WATERMARK = "tdm_hot_grids";
+
+    private static final String TABLE = "tdm_hot_grids";
+
+    private static final byte[] HIGH = "高".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] MEDIUM = "中".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] LOW = "低".getBytes(StandardCharsets.UTF_8);
+
+    private static final int FETCH_SIZE = 50000;
+
+    private static final String COLUMNS =
+            "grid_id, heat_level, pickup_count, lon_center, lat_center, lon_gcj, lat_gcj, stat_hour, is_workday, last_updated";
+
     private final JdbcTemplate jdbcTemplate;
+    private final PgBulkLoader bulkLoader;
+    private final CursorReader cursorReader;
+    private final PartitionedExecutor partitionedExecutor;
+    private final ShadowTables shadowTables;
+    private final WatermarkStore watermarkStore;
+    private final boolean incremental;
 
-//    @PostConstruct
-//    @Transactional
+    public GridHotspotLabelTask(JdbcTemplate jdbcTemplate,
+                                PgBulkLoader bulkLoader,
+                                CursorReader cursorReader,
+                                PartitionedExecutor partitionedExecutor,
+                                ShadowTables shadowTables,
+                                WatermarkStore watermarkStore,
+                                @Value("${mapfort.pipeline.pickup-grid.incremental:true}") boolean incremental) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.bulkLoader = bulkLoader;
+        this.cursorReader = cursorReader;
+        this.partitionedExecutor = partitionedExecutor;
+        this.shadowTables = shadowTables;
+        this.watermarkStore = watermarkStore;
+        this.incremental = incremental;
+    }
+
+    /**
+     * 增量的各步骤均可重复执行（写入的是 dws 中的绝对值），中途失败时水位未推进，下次从原水位重做即可，
+     * 因此不放在同一个事务中。
+     */
     public void run() {
         log.info("DWS -> TDM: GridHotspotLabelTask started.");
-        createOrInitTable();
-        List<Map<String, Object>> rows = queryWithQuantiles();
-        batchInsert(rows);
-        log.info("DWS -> TDM: GridHotspotLabelTask finished. Inserted: {}", rows.size());
+        createTable();
+        Long from = incremental ? watermarkStore.get(WATERMARK) : null;
+        Long to = jdbcTemplate.queryForObject("""
+            SELECT (EXTRACT(EPOCH FROM MAX(last_updated)) * 1000000)::BIGINT FROM public.dws_pickup_grid_stat
+        """, Long.class);
+        if (from == null) {
+            // 全量：写入影子表后替换，重建期间接口仍读旧表
+            String shadow = shadowTables.create(TABLE);
+            long written = to == null ? 0 : bulkLoader.copy(shadow, COLUMNS, queryChanged(queryQuantiles(), null, to));
+            shadowTables.swapIn(TABLE);
+            if (to != null) {
+                watermarkStore.set(WATERMARK, to);
+            }
+            log.info("DWS -> TDM: GridHotspotLabelTask finished. Mode: full, written: {}", written);
+            return;
+        }
+        if (to == null) {
+            log.info("DWS -> TDM: GridHotspotLabelTask finished. dws_pickup_grid_stat is empty.");
+            return;
+        }
+        double[] q = queryQuantiles();
+        long written = merge(queryChanged(q, from, to));
+        int relabeled = relabel(q);
+        watermarkStore.set(WATERMARK, to);
+        log.info("DWS -> TDM: GridHotspotLabelTask finished. Mode: incremental, written: {}, relabeled: {}",
+                written, relabeled);
     }
 
-    private void createOrInitTable() {
+    private void createTable() {
         jdbcTemplate.execute("""
             CREATE TABLE IF NOT EXISTS public.tdm_hot_grids (
                 grid_id TEXT,
@@ -42,63 +108,120 @@ public class GridHotspotLabelTask {
                 pickup_count INT,
                 lon_center DOUBLE PRECISION,
                 lat_center DOUBLE PRECISION,
+                lon_gcj DOUBLE PRECISION,
+                lat_gcj DOUBLE PRECISION,
                 stat_hour INT,
                 is_workday BOOLEAN,
                 last_updated TIMESTAMP,
                 PRIMARY KEY (grid_id, stat_hour, is_workday)
             )
         """);
-        jdbcTemplate.execute("TRUNCATE TABLE public.tdm_hot_grids");
+        // 旧表补充 GCJ-02 坐标列
+        jdbcTemplate.execute("""
+            ALTER TABLE public.tdm_hot_grids
+                ADD COLUMN IF NOT EXISTS lon_gcj DOUBLE PRECISION,
+                ADD COLUMN IF NOT EXISTS lat_gcj DOUBLE PRECISION
+        """);
     }
 
-    private List<Map<String, Object>> queryWithQuantiles() {
-        return jdbcTemplate.queryForList("""
-        WITH q AS (
-          SELECT 
-            percentile_cont(0.75) WITHIN GROUP (ORDER BY pickup_count) AS q75,
-            percentile_cont(0.5)  WITHIN GROUP (ORDER BY pickup_count) AS q50
-          FROM public.dws_pickup_grid_stat
-        )
-        SELECT 
-          g.grid_id,
-          g.pickup_count,
-          g.lon_center,
-          g.lat_center,
-          g.stat_hour,
-          -- 判断是否工作日：周一~周五为 TRUE，周六日为 FALSE
-          (EXTRACT(DOW FROM g.stat_date)::INT BETWEEN 1 AND 5) AS is_workday,
-          CASE 
-            WHEN g.pickup_count >= q.q75 THEN '高'
-            WHEN g.pickup_count >= q.q50 THEN '中'
-            ELSE '低'
-          END AS heat_level
-        FROM public.dws_pickup_grid_stat g, q
-    """);
+    /**
+     * 全表 pickup_count 的 75%/50% 分位数（percentile_cont 口径）。按 grid_id 哈希分区，
+     * 各分区流式读入自己的 {@link KllSketch} 后合并，内存与栅格数无关。
+     */
+    private double[] queryQuantiles() {
+        List<KllSketch> sketches = partitionedExecutor.map(partitionedExecutor.byHash("grid_id"), partition -> {
+            KllSketch sketch = new KllSketch();
+            cursorReader.query("SELECT pickup_count FROM public.dws_pickup_grid_stat WHERE " + partition.condition(),
+                    FETCH_SIZE, rs -> {
+                        int pickupCount = rs.getInt(1);
+                        if (!rs.wasNull()) {
+                            sketch.update(pickupCount);
+                        }
+                    }, partition.args());
+            return sketch;
+        });
+        KllSketch merged = new KllSketch();
+        sketches.forEach(merged::merge);
+        return new double[]{merged.percentileCont(0.75), merged.percentileCont(0.5)};
     }
 
-    private void batchInsert(List<Map<String, Object>> rows) {
-        String sql = """
-            INSERT INTO public.tdm_hot_grids
-                (grid_id, heat_level, pickup_count, lon_center, lat_center, stat_hour, is_workday, last_updated)
-            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
-        """;
-
-        jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
-            public void setValues(PreparedStatement ps, int i) throws SQLException {
-                Map<String, Object> row = rows.get(i);
-                ps.setString(1, (String) row.get("grid_id"));
-                ps.setString(2, (String) row.get("heat_level"));
-                ps.setInt(3, ((Number) row.get("pickup_count")).intValue());
-                ps.setDouble(4, ((Number) row.get("lon_center")).doubleValue());
-                ps.setDouble(5, ((Number) row.get("lat_center")).doubleValue());
-                ps.setInt(6, ((Number) row.get("stat_hour")).intValue());
-                ps.setBoolean(7, (Boolean) row.get("is_workday"));
-                ps.setTimestamp(8, Timestamp.valueOf(LocalDateTime.now()));
-            }
+    /**
+     * last_updated（epoch 微秒）在 (from, to] 内的 dws 栅格及其等级，from 为 null 表示不设下界。
+     * 在 COPY 进行中以游标读取（走另一连接），边读边编码发送。
+     */
+    private PgBulkLoader.RowWriter queryChanged(double[] q, Long from, long to) {
+        return rows -> {
+            LocalDateTime now = LocalDateTime.now();
+            cursorReader.query("""
+            SELECT
+              g.grid_id,
+              g.pickup_count,
+              g.lon_center,
+              g.lat_center,
+              g.lon_gcj,
+              g.lat_gcj,
+              g.stat_hour,
+              -- 判断是否工作日：周一~周五为 TRUE，周六日为 FALSE
+              (EXTRACT(DOW FROM g.stat_date)::INT BETWEEN 1 AND 5) AS is_workday
+            FROM public.dws_pickup_grid_stat g
+            WHERE (EXTRACT(EPOCH FROM g.last_updated) * 1000000)::BIGINT > ?
+              AND (EXTRACT(EPOCH FROM g.last_updated) * 1000000)::BIGINT <= ?
+            """, FETCH_SIZE, rs -> {
+                double lon = rs.getDouble("lon_center");
+                double lat = rs.getDouble("lat_center");
+                // 上游尚未回填 GCJ-02 坐标时在此补算
+                double lonGcj = rs.getDouble("lon_gcj");
+                boolean hasGcj = !rs.wasNull();
+                double latGcj = rs.getDouble("lat_gcj");
+                hasGcj &= !rs.wasNull();
+                double[] gcj = hasGcj ? new double[]{lonGcj, latGcj} : CoordinateTransformUtil.wgs2gcj(lon, lat);
+                int pickupCount = rs.getInt("pickup_count");
+                appendRow(rows, rs.getString("grid_id"), level(pickupCount, q), pickupCount,
+                        lon, lat, gcj[0], gcj[1], rs.getInt("stat_hour"), rs.getBoolean("is_workday"), now);
+            }, from == null ? Long.MIN_VALUE : from, to);
+        };
+    }
 
-            public int getBatchSize() {
-                return rows.size();
-            }
-        });
+    /** pickup_count ≥ q75 为高，≥ q50 为中，否则为低；返回等级的 UTF-8 编码，避免逐行编码中文 */
+    static byte[] level(int pickupCount, double[] q) {
+        return pickupCount >= q[0] ? HIGH : pickupCount >= q[1] ? MEDIUM : LOW;
+    }
+
+    /** 分位数随新数据变化后，修正未变化栅格中等级不再匹配的行，只改写等级确有变化的行 */
+    private int relabel(double[] q) {
+        return jdbcTemplate.update("""
+            UPDATE public.tdm_hot_grids
+            SET heat_level = CASE WHEN pickup_count >= ? THEN '高' WHEN pickup_count >= ? THEN '中' ELSE '低' END,
+                last_updated = now()
+            WHERE heat_level IS DISTINCT FROM
+                  CASE WHEN pickup_count >= ? THEN '高' WHEN pickup_count >= ? THEN '中' ELSE '低' END
+        """, q[0], q[1], q[0], q[1]);
+    }
+
+    /** 按 {@link #COLUMNS} 的顺序编码一行 */
+    static void appendRow(PgCopyRows rows, String gridId, byte[] heatLevel, int pickupCount,
+                          double lon, double lat, double lonGcj, double latGcj,
+                          int statHour, boolean workday, LocalDateTime lastUpdated) {
+        rows.row(10)
+                .text(gridId)
+                .text(heatLevel)
+                .int4(pickupCount)
+                .float8(lon)
+                .float8(lat)
+                .float8(lonGcj)
+                .float8(latGcj)
+                .int4(statHour)
+                .bool(workday)
+                .timestamp(lastUpdated);
+    }
+
+    /** 增量写入栅格等级，已存在的栅格以 dws 中的最新计数覆盖 */
+    private long merge(PgBulkLoader.RowWriter rows) {
+        return bulkLoader.upsert("public." + TABLE, COLUMNS, """
+            ON CONFLICT (grid_id, stat_hour, is_workday) DO UPDATE SET
+                heat_level = EXCLUDED.heat_level,
+                pickup_count = EXCLUDED.pickup_count,
+                last_updated = EXCLUDED.last_updated
+        """, rows);
     }
 }
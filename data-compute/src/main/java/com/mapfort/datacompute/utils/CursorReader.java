@@ -0,0 +1,49 @@
+package com.mapfort.datacompute.utils;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Objects;
+
+/**
+ * 以服务端游标流式读取大表（如 dwd_pickup_points），每次只拉取 fetchSize 行到内存。
+ * <p>
+ * PgJDBC 只有在事务中才会按 fetchSize 分批拉取，因此使用独立连接、关闭自动提交，读完回滚。
+ * 回调中可以继续通过 JdbcTemplate / {@link PgBulkLoader} 写入，写入走连接池的另一连接，
+ * 调用方需保证连接池大小足够。
+ */
+@Component
+@RequiredArgsConstructor
+public class CursorReader {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public void query(String sql, int fetchSize, RowCallbackHandler handler, Object... args) {
+        DataSource dataSource = Objects.requireNonNull(jdbcTemplate.getDataSource());
+        try (Connection con = dataSource.getConnection()) {
+            con.setAutoCommit(false);
+            try (PreparedStatement ps = con.prepareStatement(sql)) {
+                ps.setFetchSize(fetchSize);
+                for (int i = 0; i < args.length; i++) {
+                    ps.setObject(i + 1, args[i]);
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        handler.processRow(rs);
+                    }
+                }
+            } finally {
+                con.rollback();
+            }
+        } catch (SQLException e) {
+            throw Objects.requireNonNull(jdbcTemplate.getExceptionTranslator().translate("CursorReader", sql, e));
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package com.mapfort.datacompute.utils;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * 行政区点定位：判断点落在哪些行政区多边形内（或 tolerance 度以内），代替逐点的 ST_Within / ST_DWithin。
+ * <p>
+ * 多边形载入后在外包矩形上铺 {@value #GRID_CELLS} 格的网格。每个格子对每个行政区预先分类：
+ * 格子（外扩 tolerance）与该区边界不相交时，整格要么都在区内、要么都在区外，查询直接得到结果；
+ * 只有与边界相交的格子才做精确判断，且只检查与该格所在行相交的边。
+ * 行政区数量很少（哈尔滨不足 20 个），按位存放在 long 中，最多支持 64 个。
+ * <p>
+ * 点在多边形内按奇偶规则判断，距离按经纬度平面度数计算，与 PostGIS 在 EPSG:4326 下一致；
+ * 恰好落在边界上的点两者可能不同，影响可以忽略。构建后只读，可多线程并发查询。
+ */
+public final class DistrictLocator {
+
+    /** 网格长边的格数 */
+    static final int GRID_CELLS = 512;
+    static final int MAX_DISTRICTS = Long.SIZE;
+
+    private final String[] codes;
+    private final String[] names;
+    private final double tolerance;
+
+    /** 边界的全部边 */
+    private final double[] x1, y1, x2, y2;
+
+    /** 网格原点、格宽与行列数 */
+    private final double gridX, gridY, cell;
+    private final int cols, rows;
+    /** [格子] 完全在区内的行政区 / 需要精确判断的行政区 */
+    private final long[] inside, boundary;
+    /** [行政区 * rows + 行] 在 rowEdges 中的起止位置，行内是与该行（外扩 tolerance）相交的边 */
+    private final int[] rowEdgeStart;
+    private final int[] rowEdges;
+
+    private DistrictLocator(Builder b) {
+        int districts = b.districts;
+        codes = Arrays.copyOf(b.codes, districts);
+        names = Arrays.copyOf(b.names, districts);
+        tolerance = b.tolerance;
+        x1 = Arrays.copyOf(b.x1, b.edges);
+        y1 = Arrays.copyOf(b.y1, b.edges);
+        x2 = Arrays.copyOf(b.x2, b.edges);
+        y2 = Arrays.copyOf(b.y2, b.edges);
+        int[] edgeDistrict = b.edgeDistrict;
+        int edges = b.edges;
+
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int e = 0; e < edges; e++) {
+            minX = Math.min(minX, Math.min(x1[e], x2[e]));
+            minY = Math.min(minY, Math.min(y1[e], y2[e]));
+            maxX = Math.max(maxX, Math.max(x1[e], x2[e]));
+            maxY = Math.max(maxY, Math.max(y1[e], y2[e]));
+        }
+        if (edges == 0) {
+            minX = minY = maxX = maxY = 0;
+        }
+        gridX = minX - tolerance;
+        gridY = minY - tolerance;
+        double width = maxX - minX + 2 * tolerance;
+        double height = maxY - minY + 2 * tolerance;
+        cell = Math.max(Math.max(width, height) / GRID_CELLS, 1e-9);
+        cols = Math.max(1, (int) Math.ceil(width / cell));
+        rows = Math.max(1, (int) Math.ceil(height / cell));
+
+        // 每行涉及的边：先计数再填充
+        rowEdgeStart = new int[districts * rows + 1];
+        for (int e = 0; e < edges; e++) {
+            int base = edgeDistrict[e] * rows;
+            for (int r = row(Math.min(y1[e], y2[e]) - tolerance), end = row(Math.max(y1[e], y2[e]) + tolerance); r <= end; r++) {
+                rowEdgeStart[base + r + 1]++;
+            }
+        }
+        for (int i = 0; i < rowEdgeStart.length - 1; i++) {
+            rowEdgeStart[i + 1] += rowEdgeStart[i];
+        }
+        rowEdges = new int[rowEdgeStart[rowEdgeStart.length - 1]];
+        int[] fill = Arrays.copyOf(rowEdgeStart, rowEdgeStart.length - 1);
+        for (int e = 0; e < edges; e++) {
+            int base = edgeDistrict[e] * rows;
+            for (int r = row(Math.min(y1[e], y2[e]) - tolerance), end = row(Math.max(y1[e], y2[e]) + tolerance); r <= end; r++) {
+                rowEdges[fill[base + r]++] = e;
+            }
+        }
+
+        inside = new long[cols * rows];
+        boundary = new long[cols * rows];
+        markBoundary(edgeDistrict, edges);
+        fillInside(districts);
+    }
+
+    /** 边经过（外扩 tolerance 后）的格子标记为该区的边界格。长边切成不超过格宽的小段，按小段的外包矩形标记 */
+    private void markBoundary(int[] edgeDistrict, int edges) {
+        for (int e = 0; e < edges; e++) {
+            long bit = 1L << edgeDistrict[e];
+            double dx = x2[e] - x1[e];
+            double dy = y2[e] - y1[e];
+            int pieces = Math.max(1, (int) Math.ceil(Math.max(Math.abs(dx), Math.abs(dy)) / cell));
+            for (int k = 0; k < pieces; k++) {
+                double ax = x1[e] + dx * k / pieces, bx = x1[e] + dx * (k + 1) / pieces;
+                double ay = y1[e] + dy * k / pieces, by = y1[e] + dy * (k + 1) / pieces;
+                int c0 = col(Math.min(ax, bx) - tolerance), c1 = col(Math.max(ax, bx) + tolerance);
+                int r0 = row(Math.min(ay, by) - tolerance), r1 = row(Math.max(ay, by) + tolerance);
+                for (int r = r0; r <= r1; r++) {
+                    for (int c = c0; c <= c1; c++) {
+                        boundary[r * cols + c] |= bit;
+                    }
+                }
+            }
+        }
+    }
+
+    /** 非边界格整格同侧，逐行用格子中心线与边界的交点（扫描线）判断哪些格子在区内 */
+    private void fillInside(int districts) {
+        double[] crossings = new double[16];
+        for (int d = 0; d < districts; d++) {
+            long bit = 1L << d;
+            for (int r = 0; r < rows; r++) {
+                double cy = gridY + (r + 0.5) * cell;
+                int n = 0;
+                for (int i = rowEdgeStart[d * rows + r], end = rowEdgeStart[d * rows + r + 1]; i < end; i++) {
+                    int e = rowEdges[i];
+                    if ((y1[e] > cy) != (y2[e] > cy)) {
+                        if (n == crossings.length) {
+                            crossings = Arrays.copyOf(crossings, n << 1);
+                        }
+                        crossings[n++] = x1[e] + (cy - y1[e]) * (x2[e] - x1[e]) / (y2[e] - y1[e]);
+                    }
+                }
+                Arrays.sort(crossings, 0, n);
+                for (int k = 0; k + 1 < n; k += 2) {
+                    int c0 = Math.max(0, (int) Math.ceil((crossings[k] - gridX) / cell - 0.5));
+                    int c1 = Math.min(cols - 1, (int) Math.floor((crossings[k + 1] - gridX) / cell - 0.5));
+                    for (int c = c0; c <= c1; c++) {
+                        inside[r * cols + c] |= bit;
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < inside.length; i++) {
+            inside[i] &= ~boundary[i];
+        }
+    }
+
+    public static Builder builder(double tolerance) {
+        return new Builder(tolerance);
+    }
+
+    /**
+     * 从 harbin_districts 载入全部行政区，按 PAC 区分。
+     *
+     * @param tolerance 0 对应 ST_Within；大于 0 时对应 ST_DWithin(point, geometry, tolerance)
+     */
+    public static DistrictLocator load(JdbcTemplate jdbcTemplate, double tolerance) {
+        Builder builder = builder(tolerance);
+        RingBuffer ring = new RingBuffer();
+        jdbcTemplate.query("""
+            SELECT d."PAC"::text AS pac, d."NAME" AS name,
+                   COALESCE(g.path[1], 1) AS part, p.path[1] AS ring,
+                   ST_X(p.geom) AS lon, ST_Y(p.geom) AS lat
+            FROM public.harbin_districts d
+            CROSS JOIN LATERAL ST_Dump(d.geometry) g
+            CROSS JOIN LATERAL ST_DumpPoints(g.geom) p
+            ORDER BY d."PAC", part, p.path[1], p.path[2]
+        """, rs -> {
+            String pac = rs.getString("pac");
+            int part = rs.getInt("part");
+            int ringNo = rs.getInt("ring");
+            if (ring.size > 0 && !(pac.equals(ring.code) && part == ring.part && ringNo == ring.ring)) {
+                builder.addRing(ring.code, ring.name, ring.lon, ring.lat, ring.size);
+                ring.size = 0;
+            }
+            ring.code = pac;
+            ring.name = rs.getString("name");
+            ring.part = part;
+            ring.ring = ringNo;
+            ring.add(rs.getDouble("lon"), rs.getDouble("lat"));
+        });
+        if (ring.size > 0) {
+            builder.addRing(ring.code, ring.name, ring.lon, ring.lat, ring.size);
+        }
+        return builder.build();
+    }
+
+    public int districtCount() {
+        return codes.length;
+    }
+
+    /** 行政区代码（PAC） */
+    public String code(int district) {
+        return codes[district];
+    }
+
+    public String name(int district) {
+        return names[district];
+    }
+
+    /** 包含 (x, y) 的全部行政区，第 i 位对应行政区下标 i */
+    public long matches(double x, double y) {
+        // NaN 也在这里返回
+        if (!(x >= gridX && y >= gridY)) {
+            return 0;
+        }
+        int c = (int) ((x - gridX) / cell);
+        int r = (int) ((y - gridY) / cell);
+        if (c >= cols || r >= rows) {
+            return 0;
+        }
+        int i = r * cols + c;
+        long result = inside[i];
+        for (long pending = boundary[i]; pending != 0; pending &= pending - 1) {
+            int d = Long.numberOfTrailingZeros(pending);
+            if (contains(d, r, x, y)) {
+                result |= 1L << d;
+            }
+        }
+        return result;
+    }
+
+    /** 包含 (x, y) 的行政区下标，没有时返回 -1；行政区重叠时取下标最小的 */
+    public int locate(double x, double y) {
+        long m = matches(x, y);
+        return m == 0 ? -1 : Long.numberOfTrailingZeros(m);
+    }
+
+    /** 并行定位 n 个点，结果写入 district */
+    public void locate(double[] lon, double[] lat, int n, int[] district) {
+        IntStream.range(0, n).parallel().forEach(i -> district[i] = locate(lon[i], lat[i]));
+    }
+
+    /** 并行计算 n 个点的 {@link #matches(double, double)}，结果写入 masks */
+    public void matches(double[] lon, double[] lat, int n, long[] masks) {
+        IntStream.range(0, n).parallel().forEach(i -> masks[i] = matches(lon[i], lat[i]));
+    }
+
+    /** 精确判断：奇偶规则在区内，或 tolerance > 0 时到边界的距离不超过 tolerance */
+    private boolean contains(int d, int r, double x, double y) {
+        boolean in = false;
+        double tol2 = tolerance * tolerance;
+        for (int i = rowEdgeStart[d * rows + r], end = rowEdgeStart[d * rows + r + 1]; i < end; i++) {
+            int e = rowEdges[i];
+            if ((y1[e] > y) != (y2[e] > y)
+                    && x < x1[e] + (y - y1[e]) * (x2[e] - x1[e]) / (y2[e] - y1[e])) {
+                in = !in;
+            }
+            if (tolerance > 0 && segmentDistance2(e, x, y) <= tol2) {
+                return true;
+            }
+        }
+        return in;
+    }
+
+    private double segmentDistance2(int e, double x, double y) {
+        double dx = x2[e] - x1[e];
+        double dy = y2[e] - y1[e];
+        double len2 = dx * dx + dy * dy;
+        double t = len2 == 0 ? 0 : Math.max(0, Math.min(1, ((x - x1[e]) * dx + (y - y1[e]) * dy) / len2));
+        double ex = x1[e] + t * dx - x;
+        double ey = y1[e] + t * dy - y;
+        return ex * ex + ey * ey;
+    }
+
+    private int col(double x) {
+        return Math.max(0, Math.min(cols - 1, (int) Math.floor((x - gridX) / cell)));
+    }
+
+    private int row(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((y - gridY) / cell)));
+    }
+
+    /** 逐个添加行政区的环（外环与内环均可，按奇偶规则处理），同一行政区的环须连续添加 */
+    public static final class Builder {
+        private final double tolerance;
+        private String[] codes = new String[16];
+        private String[] names = new String[16];
+        private int districts;
+        private double[] x1 = new double[4096], y1 = new double[4096], x2 = new double[4096], y2 = new double[4096];
+        private int[] edgeDistrict = new int[4096];
+        private int edges;
+
+        private Builder(double tolerance) {
+            this.tolerance = tolerance;
+        }
+
+        /** 添加行政区 code 的一个环的前 n 个节点，首尾不闭合时自动闭合 */
+        public Builder addRing(String code, String name, double[] lon, double[] lat, int n) {
+            if (districts == 0 || !codes[districts - 1].equals(code)) {
+                if (districts == MAX_DISTRICTS) {
+                    throw new IllegalArgumentException("行政区数量超过 " + MAX_DISTRICTS);
+                }
+                if (districts == codes.length) {
+                    codes = Arrays.copyOf(codes, districts << 1);
+                    names = Arrays.copyOf(names, districts << 1);
+                }
+                codes[districts] = code;
+                names[districts] = name;
+                districts++;
+            }
+            for (int i = 0; i < n; i++) {
+                int j = i + 1 == n ? 0 : i + 1;
+                if (lon[i] == lon[j] && lat[i] == lat[j]) {
+                    continue;
+                }
+                if (edges == x1.length) {
+                    int capacity = edges << 1;
+                    x1 = Arrays.copyOf(x1, capacity);
+                    y1 = Arrays.copyOf(y1, capacity);
+                    x2 = Arrays.copyOf(x2, capacity);
+                    y2 = Arrays.copyOf(y2, capacity);
+                    edgeDistrict = Arrays.copyOf(edgeDistrict, capacity);
+                }
+                x1[edges] = lon[i];
+                y1[edges] = lat[i];
+                x2[edges] = lon[j];
+                y2[edges] = lat[j];
+                edgeDistrict[edges] = districts - 1;
+                edges++;
+            }
+            return this;
+        }
+
+        public DistrictLocator build() {
+            return new DistrictLocator(this);
+        }
+    }
+
+    /** 按行读出节点时累积当前环 */
+    private static final class RingBuffer {
+        String code;
+        String name;
+        int part;
+        int ring;
+        double[] lon = new double[1024];
+        double[] lat = new double[1024];
+        int size;
+
+        void add(double x, double y) {
+            if (size == lon.length) {
+                lon = Arrays.copyOf(lon, size << 1);
+                lat = Arrays.copyOf(lat, size << 1);
+            }
+            lon[size] = x;
+            lat[size] = y;
+            size++;
+        }
+    }
+}
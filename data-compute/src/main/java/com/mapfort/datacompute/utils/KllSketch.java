@@ -0,0 +1,197 @@
+package com.mapfort.datacompute.utils;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * KLL 分位数草图：单遍流式读入，内存只与 k 和层数（约 log(n/k)）有关，与数据量无关；
+ * 多个草图可以合并，适合按分区/分片各自统计后汇总。
+ * <p>
+ * 第 h 层的每个值代表 2^h 个原始值。某层超出容量时排序后随机取奇数位或偶数位的一半晋升到上一层，
+ * 各层容量自顶向下按 2/3 递减。k = 200 时单个分位数的归一化秩误差（|估计秩 - 真实秩| / n）
+ * 约 1.65%，该界以约 99% 的概率成立（与 Apache DataSketches KLL 在 k = 200 时的经验界一致）；
+ * 需要更小误差时增大 k，误差约与 1/k 成正比。合并后的草图误差界不变。
+ * 数据量少于 k 时不会压缩，结果与精确计算完全一致。
+ * <p>
+ * 分位数口径与 PostgreSQL 一致：{@link #percentileDisc} 对应 percentile_disc，{@link #percentileCont} 对应 percentile_cont。
+ * 非线程安全。
+ */
+public final class KllSketch {
+
+    public static final int DEFAULT_K = 200;
+
+    private static final int MIN_WIDTH = 8;
+    private static final double DECAY = 2.0 / 3.0;
+    /** 固定种子，相同输入顺序得到相同结果 */
+    private static final long SEED = 0x5EEDL;
+
+    private final int k;
+    private final SplittableRandom random = new SplittableRandom(SEED);
+    private double[][] levels = new double[1][];
+    private int[] sizes = new int[1];
+    private int levelCount = 1;
+    /** 各层容量之和，层数变化时重新计算 */
+    private int capacity;
+    private int retained;
+    private long n;
+
+    public KllSketch() {
+        this(DEFAULT_K);
+    }
+
+    public KllSketch(int k) {
+        if (k < MIN_WIDTH) {
+            throw new IllegalArgumentException("k must be at least " + MIN_WIDTH);
+        }
+        this.k = k;
+        levels[0] = new double[k];
+        capacity = levelCapacity(0);
+    }
+
+    public void update(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        append(0, value);
+        n++;
+        if (retained >= capacity) {
+            compress();
+        }
+    }
+
+    /** 把 other 的内容并入本草图，other 不变 */
+    public void merge(KllSketch other) {
+        for (int h = 0; h < other.levelCount; h++) {
+            ensureLevels(h + 1);
+            for (int i = 0; i < other.sizes[h]; i++) {
+                append(h, other.levels[h][i]);
+            }
+        }
+        n += other.n;
+        if (retained >= capacity) {
+            compress();
+        }
+    }
+
+    /** 已读入的值个数 */
+    public long count() {
+        return n;
+    }
+
+    /** 累计分布首次达到 p 的值，对应 percentile_disc(p)；没有数据时返回 NaN */
+    public double percentileDisc(double p) {
+        if (n == 0) {
+            return Double.NaN;
+        }
+        Sorted sorted = sorted();
+        // 秩从 1 开始：第 ceil(p * n) 个值
+        long rank = Math.max(1, (long) Math.ceil(p * n));
+        return sorted.valueAt(rank - 1);
+    }
+
+    /** 按位置 p * (n - 1) 在相邻两值之间线性插值，对应 percentile_cont(p)；没有数据时返回 NaN */
+    public double percentileCont(double p) {
+        if (n == 0) {
+            return Double.NaN;
+        }
+        Sorted sorted = sorted();
+        double position = p * (n - 1);
+        long lower = (long) Math.floor(position);
+        double fraction = position - lower;
+        double low = sorted.valueAt(lower);
+        return fraction == 0 ? low : low + fraction * (sorted.valueAt(lower + 1) - low);
+    }
+
+    private void append(int h, double value) {
+        if (sizes[h] == levels[h].length) {
+            levels[h] = Arrays.copyOf(levels[h], sizes[h] << 1);
+        }
+        levels[h][sizes[h]++] = value;
+        retained++;
+    }
+
+    /** 自底向上找到第一个超出容量的层，压缩一半晋升到上一层，直到总量回到容量以内 */
+    private void compress() {
+        while (retained >= capacity) {
+            int h = 0;
+            while (sizes[h] < levelCapacity(h)) {
+                h++;
+            }
+            ensureLevels(h + 2);
+            double[] level = levels[h];
+            int size = sizes[h];
+            Arrays.sort(level, 0, size);
+            // 奇数个时最大的值留在本层
+            int paired = size & ~1;
+            int offset = random.nextInt(2);
+            for (int i = offset; i < paired; i += 2) {
+                append(h + 1, level[i]);
+            }
+            if (paired < size) {
+                level[0] = level[size - 1];
+            }
+            sizes[h] = size - paired;
+            retained -= paired;
+        }
+    }
+
+    private void ensureLevels(int count) {
+        if (count <= levelCount) {
+            return;
+        }
+        if (count > levels.length) {
+            levels = Arrays.copyOf(levels, count);
+            sizes = Arrays.copyOf(sizes, count);
+        }
+        for (int h = levelCount; h < count; h++) {
+            levels[h] = new double[MIN_WIDTH];
+        }
+        levelCount = count;
+        capacity = 0;
+        for (int h = 0; h < levelCount; h++) {
+            capacity += levelCapacity(h);
+        }
+    }
+
+    /** 顶层容量为 k，往下每层乘以 2/3，最小为 MIN_WIDTH */
+    private int levelCapacity(int h) {
+        int depth = levelCount - 1 - h;
+        return Math.max(MIN_WIDTH, (int) Math.ceil(k * Math.pow(DECAY, depth)));
+    }
+
+    /** 全部保留值按值排序及其累计权重：各层分别排序后多路归并 */
+    private Sorted sorted() {
+        int[] heads = new int[levelCount];
+        for (int h = 0; h < levelCount; h++) {
+            Arrays.sort(levels[h], 0, sizes[h]);
+        }
+        double[] values = new double[retained];
+        long[] cumulative = new long[retained];
+        long total = 0;
+        for (int i = 0; i < retained; i++) {
+            int best = -1;
+            for (int h = 0; h < levelCount; h++) {
+                if (heads[h] < sizes[h] && (best < 0 || levels[h][heads[h]] < levels[best][heads[best]])) {
+                    best = h;
+                }
+            }
+            values[i] = levels[best][heads[best]++];
+            total += 1L << best;
+            cumulative[i] = total;
+        }
+        return new Sorted(values, cumulative);
+    }
+
+    /** cumulative[i] 为前 i + 1 个值的权重和 */
+    private record Sorted(double[] values, long[] cumulative) {
+
+        /** 展开成原始序列后下标为 index（从 0 开始）的值 */
+        double valueAt(long index) {
+            int i = Arrays.binarySearch(cumulative, index + 1);
+            if (i < 0) {
+                i = -i - 1;
+            }
+            return values[Math.min(i, values.length - 1)];
+        }
+    }
+}
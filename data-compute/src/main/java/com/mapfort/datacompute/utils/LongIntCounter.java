@@ -0,0 +1,137 @@
+package com.mapfort.datacompute.utils;
+
+/**
+ * long -> int 计数表：开放寻址、线性探测，键与计数分别存放在基本类型数组中，
+ * 计数过程中不为每个键创建对象，适合对数十亿个数组元素（如 road_list 中的路段 id）计数。
+ * <p>
+ * 键 0 用作空槽标记，其计数单独存放。负载因子超过 1/2 时容量翻倍。非线程安全。
+ */
+public final class LongIntCounter {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private int[] counts;
+    private int mask;
+    private int size;
+    /** 键 0 是否出现过及其计数；与其他键一样，add(0, 0) 也算出现 */
+    private boolean hasZero;
+    private int zeroCount;
+
+    public LongIntCounter() {
+        this(MIN_CAPACITY);
+    }
+
+    /** expectedKeys 为预计的不同键个数 */
+    public LongIntCounter(int expectedKeys) {
+        int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, expectedKeys * 2 - 1)) << 1;
+        keys = new long[capacity];
+        counts = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    /** key 的计数加一 */
+    public void increment(long key) {
+        add(key, 1);
+    }
+
+    /** key 的计数加 delta */
+    public void add(long key, int delta) {
+        if (key == 0) {
+            if (!hasZero) {
+                hasZero = true;
+                size++;
+            }
+            zeroCount += delta;
+            return;
+        }
+        int slot = slot(key);
+        if (keys[slot] == key) {
+            counts[slot] += delta;
+            return;
+        }
+        keys[slot] = key;
+        counts[slot] = delta;
+        if (++size * 2 > keys.length) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    /** key 的计数，未出现时为 0 */
+    public int get(long key) {
+        if (key == 0) {
+            return zeroCount;
+        }
+        int slot = slot(key);
+        return keys[slot] == key ? counts[slot] : 0;
+    }
+
+    /** 不同键的个数 */
+    public int size() {
+        return size;
+    }
+
+    /** 所有键，与 {@link #counts()} 按下标一一对应 */
+    public long[] keys() {
+        long[] result = new long[size];
+        int n = 0;
+        if (hasZero) {
+            result[n++] = 0;
+        }
+        for (long key : keys) {
+            if (key != 0) {
+                result[n++] = key;
+            }
+        }
+        return result;
+    }
+
+    /** 所有计数，与 {@link #keys()} 按下标一一对应 */
+    public int[] counts() {
+        int[] result = new int[size];
+        int n = 0;
+        if (hasZero) {
+            result[n++] = zeroCount;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                result[n++] = counts[i];
+            }
+        }
+        return result;
+    }
+
+    /** key 所在的槽，或探测到的第一个空槽 */
+    private int slot(long key) {
+        int slot = mix(key) & mask;
+        while (keys[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new long[capacity];
+        counts = new int[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    /** 打散连续的路段 id，避免线性探测时聚集（MurmurHash3 fmix64） */
+    private static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb93e185a87cbL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
@@ -0,0 +1,114 @@
+package com.mapfort.datacompute.utils;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * 把大表按键拆成互不相交的分区，在各自的连接上并行执行同一查询，由调用方合并各分区结果。
+ * 单条大 SQL 只能用到一个数据库后端进程，分区后可同时用满 RDS 的多个核。
+ * <p>
+ * 分区条件为 {@link Partition#condition()}（带 ? 参数），调用方拼进自己的 WHERE 子句并传入 {@link Partition#args()}。
+ * 线程池由所有任务共用，分区数与线程数均为 mapfort.pipeline.partitions；
+ * 每个分区在执行期间至少占用一个连接，连接池大小需相应放大。
+ */
+@Component
+public class PartitionedExecutor {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ExecutorService executor;
+    private final int partitions;
+
+    public PartitionedExecutor(JdbcTemplate jdbcTemplate,
+                               @Value("${mapfort.pipeline.partitions:4}") int partitions) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.partitions = Math.max(1, partitions);
+        this.executor = Executors.newFixedThreadPool(this.partitions, new CustomizableThreadFactory("partition-"));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /** 一个分区：WHERE 条件片段及其参数 */
+    public record Partition(int index, String condition, Object[] args) {
+    }
+
+    /**
+     * 按 column 的取值范围等宽切分 table，首尾分区不设下界/上界，column 为 NULL 的行归入 0 号分区，
+     * 各分区合起来恰好覆盖全表。适合分布较均匀的整数键（如 tms）。
+     */
+    public List<Partition> byRange(String table, String column) {
+        Map<String, Object> bounds = jdbcTemplate.queryForMap(
+                "SELECT MIN(" + column + ") AS lo, MAX(" + column + ") AS hi FROM " + table);
+        if (bounds.get("lo") == null || partitions == 1) {
+            return List.of(new Partition(0, "TRUE", new Object[0]));
+        }
+        long lo = ((Number) bounds.get("lo")).longValue();
+        long hi = ((Number) bounds.get("hi")).longValue();
+        int n = (int) Math.min(partitions, hi - lo + 1);
+        if (n == 1) {
+            return List.of(new Partition(0, "TRUE", new Object[0]));
+        }
+        long width = Math.floorDiv(hi - lo, n) + 1;
+        List<Partition> result = new ArrayList<>(n);
+        result.add(new Partition(0, "(" + column + " < ? OR " + column + " IS NULL)", new Object[]{lo + width}));
+        for (int i = 1; i < n - 1; i++) {
+            long from = lo + width * i;
+            result.add(new Partition(i, column + " >= ? AND " + column + " < ?", new Object[]{from, from + width}));
+        }
+        result.add(new Partition(n - 1, column + " >= ?", new Object[]{lo + width * (n - 1)}));
+        return result;
+    }
+
+    /** 按 column 的哈希（hashtext）取模切分，适合没有有序键的文本列（如 devid）；NULL 归入 0 号分区 */
+    public List<Partition> byHash(String column) {
+        List<Partition> result = new ArrayList<>(partitions);
+        for (int i = 0; i < partitions; i++) {
+            result.add(new Partition(i,
+                    "(COALESCE(hashtext(" + column + "::text), 0) & 2147483647) % " + partitions + " = ?",
+                    new Object[]{i}));
+        }
+        return result;
+    }
+
+    /**
+     * 并行执行各分区并按分区顺序返回结果。任一分区失败时取消其余分区并抛出其异常。
+     * 不要在 work 中再次调用本方法，否则可能因线程池耗尽而互相等待。
+     */
+    public <T> List<T> map(List<Partition> parts, Function<Partition, T> work) {
+        List<Future<T>> futures = new ArrayList<>(parts.size());
+        for (Partition part : parts) {
+            futures.add(executor.submit(() -> work.apply(part)));
+        }
+        List<T> results = new ArrayList<>(parts.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for partitions", e);
+        } catch (ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return results;
+    }
+}
@@ -0,0 +1,94 @@
+package com.mapfort.datacompute.utils;
+
+import lombok.RequiredArgsConstructor;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * 以 COPY FROM STDIN (FORMAT BINARY) 批量写入 {@link PgCopyRows}。
+ * 通过 JdbcTemplate 取连接，处于事务中时与任务的其他语句使用同一连接、一同提交或回滚。
+ * <p>
+ * 结果集很大时使用 {@link RowWriter} 重载：先开始 COPY，再由调用方边读边写，编码满一个分块即发送。
+ * COPY 进行期间该连接不能执行其他语句，数据源须走另一连接（如 {@link CursorReader}）。
+ */
+@Component
+@RequiredArgsConstructor
+public class PgBulkLoader {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /** 在 COPY 进行中向 rows 写入各行 */
+    @FunctionalInterface
+    public interface RowWriter {
+        void write(PgCopyRows rows);
+    }
+
+    /**
+     * 直接 COPY 到目标表，返回写入行数。
+     *
+     * @param columns 逗号分隔的列名，顺序与 rows 中的字段一致
+     */
+    public long copy(String table, String columns, PgCopyRows rows) {
+        return jdbcTemplate.execute((ConnectionCallback<Long>) con -> copyIn(con, table, columns, rows::writeTo));
+    }
+
+    /** 同 {@link #copy(String, String, PgCopyRows)}，但边编码边发送，内存中只保留一个分块 */
+    public long copy(String table, String columns, RowWriter writer) {
+        return jdbcTemplate.execute((ConnectionCallback<Long>) con ->
+                copyIn(con, table, columns, copyIn -> PgCopyRows.stream(copyIn, writer)));
+    }
+
+    /**
+     * COPY 不支持 ON CONFLICT：先 COPY 到同结构的临时表，再 INSERT ... SELECT 合并到目标表，返回合并行数。
+     *
+     * @param onConflict 追加在 INSERT ... SELECT 之后的 ON CONFLICT 子句
+     */
+    public long upsert(String table, String columns, String onConflict, PgCopyRows rows) {
+        return upsertVia(table, columns, onConflict, rows::writeTo);
+    }
+
+    /** 同 {@link #upsert(String, String, String, PgCopyRows)}，但边编码边发送，内存中只保留一个分块 */
+    public long upsert(String table, String columns, String onConflict, RowWriter writer) {
+        return upsertVia(table, columns, onConflict, copyIn -> PgCopyRows.stream(copyIn, writer));
+    }
+
+    private long upsertVia(String table, String columns, String onConflict, CopyBody body) {
+        String stage = "copy_stage_" + table.substring(table.lastIndexOf('.') + 1);
+        return jdbcTemplate.execute((ConnectionCallback<Long>) con -> {
+            try (Statement statement = con.createStatement()) {
+                statement.execute("DROP TABLE IF EXISTS " + stage);
+                statement.execute("CREATE TEMP TABLE " + stage + " (LIKE " + table + " INCLUDING DEFAULTS)");
+                copyIn(con, stage, columns, body);
+                long merged = statement.executeUpdate(
+                        "INSERT INTO " + table + " (" + columns + ") SELECT " + columns + " FROM " + stage + " " + onConflict);
+                statement.execute("DROP TABLE " + stage);
+                return merged;
+            }
+        });
+    }
+
+    private static long copyIn(Connection con, String table, String columns, CopyBody body) throws SQLException {
+        CopyIn copyIn = con.unwrap(PGConnection.class).getCopyAPI()
+                .copyIn("COPY " + table + " (" + columns + ") FROM STDIN (FORMAT BINARY)");
+        try {
+            body.write(copyIn);
+            return copyIn.endCopy();
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+    }
+
+    /** 向已开始的 COPY 发送全部数据及结束标记 */
+    private interface CopyBody {
+        void write(CopyIn copyIn) throws SQLException;
+    }
+}
@@ -0,0 +1,241 @@
+package com.mapfort.datacompute.utils;
+
+import org.postgresql.copy.CopyIn;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按 PostgreSQL COPY 二进制格式逐行编码的结果集，供 {@link PgBulkLoader} 写入目标表。
+ * 数据按 1MB 分块编码，每个字段只占其二进制长度，不为每行创建对象。
+ * 两种用法：{@code new PgCopyRows()} 把全部分块留在内存中，之后再整体发送（适合批量大小有上限的场景）；
+ * {@link PgBulkLoader#copy(String, String, PgBulkLoader.RowWriter)} 在 COPY 开始后交给调用方的实例，
+ * 每写满一个分块即发给数据库并复用该分块，内存中只保留一个分块。
+ * 字段类型须与目标列一致：int4 ↔ INT、int8 ↔ BIGINT、float8 ↔ DOUBLE PRECISION、
+ * text ↔ TEXT/VARCHAR、bool ↔ BOOLEAN、date ↔ DATE、timestamp ↔ TIMESTAMP。
+ */
+public final class PgCopyRows {
+
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    /** 文件头：签名 + 标志位 + 扩展区长度 */
+    private static final byte[] HEADER = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xff, '\r', '\n', 0, 0, 0, 0, 0, 0, 0, 0, 0};
+
+    /** PostgreSQL 日期时间的纪元 2000-01-01 与 Unix 纪元之差 */
+    private static final int PG_EPOCH_DAYS = 10957;
+    private static final long PG_EPOCH_SECONDS = PG_EPOCH_DAYS * 86400L;
+
+    private static final byte[] TRAILER = {(byte) 0xff, (byte) 0xff};
+
+    private final List<byte[]> chunks = new ArrayList<>();
+    private final List<Integer> lengths = new ArrayList<>();
+    /** 边编码边发送时的 COPY，为 null 表示全部留在内存中 */
+    private final CopyIn copyIn;
+    private byte[] chunk = new byte[CHUNK_SIZE];
+    private int pos;
+    /** 已发给 copyIn 的字节数 */
+    private long sent;
+    private long rows;
+
+    public PgCopyRows() {
+        this(null);
+    }
+
+    private PgCopyRows(CopyIn copyIn) {
+        this.copyIn = copyIn;
+        System.arraycopy(HEADER, 0, chunk, 0, HEADER.length);
+        pos = HEADER.length;
+    }
+
+    /** 边编码边发送：writer 写入的数据每满一个分块即发给 copyIn，最后发送结束标记，不结束 COPY 本身 */
+    static void stream(CopyIn copyIn, PgBulkLoader.RowWriter writer) throws SQLException {
+        PgCopyRows rows = new PgCopyRows(copyIn);
+        try {
+            writer.write(rows);
+            rows.send(rows.chunk, rows.pos);
+            rows.send(TRAILER, TRAILER.length);
+        } catch (CopyFailedException e) {
+            throw e.getCause();
+        }
+    }
+
+    /** 开始新的一行，随后须写入 fields 个字段 */
+    public PgCopyRows row(int fields) {
+        ensure(2);
+        putShort(fields);
+        rows++;
+        return this;
+    }
+
+    public PgCopyRows int4(int value) {
+        ensure(8);
+        putInt(4);
+        putInt(value);
+        return this;
+    }
+
+    public PgCopyRows int8(long value) {
+        ensure(12);
+        putInt(8);
+        putLong(value);
+        return this;
+    }
+
+    public PgCopyRows float8(double value) {
+        ensure(12);
+        putInt(8);
+        putLong(Double.doubleToRawLongBits(value));
+        return this;
+    }
+
+    public PgCopyRows bool(boolean value) {
+        ensure(5);
+        putInt(1);
+        chunk[pos++] = (byte) (value ? 1 : 0);
+        return this;
+    }
+
+    /** 文本按 UTF-8 编码，null 写为 NULL */
+    public PgCopyRows text(String value) {
+        if (value == null) {
+            return nul();
+        }
+        int n = value.length();
+        boolean ascii = true;
+        for (int i = 0; i < n && ascii; i++) {
+            ascii = value.charAt(i) < 0x80;
+        }
+        if (ascii) {
+            ensure(4 + n);
+            putInt(n);
+            for (int i = 0; i < n; i++) {
+                chunk[pos++] = (byte) value.charAt(i);
+            }
+            return this;
+        }
+        return text(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** 已按 UTF-8 编码的文本，适合取值固定的列预先编码一次 */
+    public PgCopyRows text(byte[] utf8) {
+        ensure(4 + utf8.length);
+        putInt(utf8.length);
+        System.arraycopy(utf8, 0, chunk, pos, utf8.length);
+        pos += utf8.length;
+        return this;
+    }
+
+    public PgCopyRows date(LocalDate value) {
+        if (value == null) {
+            return nul();
+        }
+        ensure(8);
+        putInt(4);
+        putInt((int) (value.toEpochDay() - PG_EPOCH_DAYS));
+        return this;
+    }
+
+    /** TIMESTAMP（不带时区），按本地时间原样写入 */
+    public PgCopyRows timestamp(LocalDateTime value) {
+        if (value == null) {
+            return nul();
+        }
+        ensure(12);
+        putInt(8);
+        putLong((value.toEpochSecond(ZoneOffset.UTC) - PG_EPOCH_SECONDS) * 1_000_000L + value.getNano() / 1000);
+        return this;
+    }
+
+    public PgCopyRows nul() {
+        ensure(4);
+        putInt(-1);
+        return this;
+    }
+
+    /** 已写入的行数 */
+    public long rows() {
+        return rows;
+    }
+
+    /** 已编码的字节数（不含结束标记） */
+    public long bytes() {
+        long total = sent + pos;
+        for (int length : lengths) {
+            total += length;
+        }
+        return total;
+    }
+
+    /** 发送内存中的全部数据及结束标记，不结束 COPY 本身 */
+    void writeTo(CopyIn target) throws SQLException {
+        for (int i = 0; i < chunks.size(); i++) {
+            target.writeToCopy(chunks.get(i), 0, lengths.get(i));
+        }
+        target.writeToCopy(chunk, 0, pos);
+        target.writeToCopy(TRAILER, 0, TRAILER.length);
+    }
+
+    /**
+     * 当前分块剩余空间不足 n 字节时：边编码边发送时发出当前分块并复用，否则把它留在内存中换新分块。
+     * 超长字段单独占一块。
+     */
+    private void ensure(int n) {
+        if (chunk.length - pos >= n) {
+            return;
+        }
+        if (copyIn != null) {
+            send(chunk, pos);
+            sent += pos;
+            if (chunk.length < n) {
+                chunk = new byte[n];
+            }
+        } else {
+            chunks.add(chunk);
+            lengths.add(pos);
+            chunk = new byte[Math.max(CHUNK_SIZE, n)];
+        }
+        pos = 0;
+    }
+
+    private void send(byte[] data, int length) {
+        try {
+            copyIn.writeToCopy(data, 0, length);
+        } catch (SQLException e) {
+            throw new CopyFailedException(e);
+        }
+    }
+
+    private void putShort(int v) {
+        chunk[pos++] = (byte) (v >>> 8);
+        chunk[pos++] = (byte) v;
+    }
+
+    private void putInt(int v) {
+        chunk[pos++] = (byte) (v >>> 24);
+        chunk[pos++] = (byte) (v >>> 16);
+        chunk[pos++] = (byte) (v >>> 8);
+        chunk[pos++] = (byte) v;
+    }
+
+    private void putLong(long v) {
+        putInt((int) (v >>> 32));
+        putInt((int) v);
+    }
+
+    /** 编码过程中向数据库发送失败，由 {@link #stream} 还原为 SQLException 交给 JdbcTemplate 转换 */
+    private static final class CopyFailedException extends RuntimeException {
+        CopyFailedException(SQLException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized SQLException getCause() {
+            return (SQLException) super.getCause();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.mapfort.datacompute.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 路段热度标签：ads_road_popularity_statistics 与 tdm_road_popularity_test 共用的分级口径。
+ * <p>
+ * 阈值为访问频率的 percentile_disc(0.75/0.5/0.25)，由 {@link KllSketch} 计算，路段很多时为草图近似值；
+ * 频率不低于各阈值的路段依次标为极热门、热门、普通，其余为冷门。
+ */
+public final class PopularityTagger {
+
+    /** 热度标签，按热度从高到低 */
+    private static final String[] TAGS = {"极热门路段", "热门路段", "普通路段", "冷门路段"};
+    private static final byte[][] TAG_BYTES = Arrays.stream(TAGS)
+            .map(tag -> tag.getBytes(StandardCharsets.UTF_8))
+            .toArray(byte[][]::new);
+
+    private PopularityTagger() {
+    }
+
+    /** 为每个路段分配热度标签，返回标签下标，与 frequencies 按下标一一对应 */
+    public static byte[] assign(int[] frequencies) {
+        KllSketch sketch = new KllSketch();
+        for (int f : frequencies) {
+            sketch.update(f);
+        }
+        double q1 = sketch.percentileDisc(0.75);
+        double q2 = sketch.percentileDisc(0.5);
+        double q3 = sketch.percentileDisc(0.25);
+
+        byte[] tags = new byte[frequencies.length];
+        for (int i = 0; i < frequencies.length; i++) {
+            int f = frequencies[i];
+            if (f >= q1) tags[i] = 0;
+            else if (f >= q2) tags[i] = 1;
+            else if (f >= q3) tags[i] = 2;
+            else tags[i] = 3;
+        }
+        return tags;
+    }
+
+    /** 标签名的 UTF-8 编码，供 COPY 直接写入，不必每行重新编码 */
+    public static byte[] utf8(byte tag) {
+        return TAG_BYTES[tag];
+    }
+}
@@ -0,0 +1,245 @@
+package com.mapfort.datacompute.utils;
+
+import java.util.Arrays;
+
+/**
+ * 道路线段的静态 R 树，用于点到最近道路的匹配。
+ * <p>
+ * 每条道路拆成线段作为叶子条目，叶层按 STR（Sort-Tile-Recursive）排序：先按中心经度分成 √(n/M) 个竖条，
+ * 条内再按中心纬度排序，每 {@value #NODE_CAPACITY} 条线段装入一个节点；上层按顺序每 {@value #NODE_CAPACITY} 个节点打包。
+ * 子节点在下一层连续存放，节点只需外包矩形，全部为基本类型数组，构建后只读、可多线程并发查询。
+ * <p>
+ * 距离按经纬度平面度数计算，与 PostGIS 在 EPSG:4326 下的 ST_Distance / ST_DWithin 一致。
+ */
+public final class RoadSegmentIndex {
+
+    static final int NODE_CAPACITY = 16;
+
+    private final long[] roadIds;
+    /** 线段端点与所属道路（roadIds 下标），按 STR 顺序排列 */
+    private final double[] x1, y1, x2, y2;
+    private final int[] road;
+    /** [层][节点] 外包矩形，第 0 层的节点直接包含线段 */
+    private final double[][] minX, minY, maxX, maxY;
+
+    private RoadSegmentIndex(long[] roadIds, double[] x1, double[] y1, double[] x2, double[] y2, int[] road) {
+        this.roadIds = roadIds;
+        this.x1 = x1;
+        this.y1 = y1;
+        this.x2 = x2;
+        this.y2 = y2;
+        this.road = road;
+
+        int levels = 0;
+        for (int n = x1.length; n > NODE_CAPACITY; n = ceilDiv(n, NODE_CAPACITY)) {
+            levels++;
+        }
+        levels = Math.max(levels, 1);
+        minX = new double[levels][];
+        minY = new double[levels][];
+        maxX = new double[levels][];
+        maxY = new double[levels][];
+        for (int level = 0; level < levels; level++) {
+            int children = level == 0 ? x1.length : minX[level - 1].length;
+            int nodes = ceilDiv(children, NODE_CAPACITY);
+            minX[level] = new double[nodes];
+            minY[level] = new double[nodes];
+            maxX[level] = new double[nodes];
+            maxY[level] = new double[nodes];
+            for (int node = 0; node < nodes; node++) {
+                double ax = Double.POSITIVE_INFINITY, ay = Double.POSITIVE_INFINITY;
+                double bx = Double.NEGATIVE_INFINITY, by = Double.NEGATIVE_INFINITY;
+                int end = Math.min(children, (node + 1) * NODE_CAPACITY);
+                for (int c = node * NODE_CAPACITY; c < end; c++) {
+                    if (level == 0) {
+                        ax = Math.min(ax, Math.min(x1[c], x2[c]));
+                        ay = Math.min(ay, Math.min(y1[c], y2[c]));
+                        bx = Math.max(bx, Math.max(x1[c], x2[c]));
+                        by = Math.max(by, Math.max(y1[c], y2[c]));
+                    } else {
+                        ax = Math.min(ax, minX[level - 1][c]);
+                        ay = Math.min(ay, minY[level - 1][c]);
+                        bx = Math.max(bx, maxX[level - 1][c]);
+                        by = Math.max(by, maxY[level - 1][c]);
+                    }
+                }
+                minX[level][node] = ax;
+                minY[level][node] = ay;
+                maxX[level][node] = bx;
+                maxY[level][node] = by;
+            }
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int roadCount() {
+        return roadIds.length;
+    }
+
+    public int segmentCount() {
+        return x1.length;
+    }
+
+    /** 道路下标对应的道路 ID */
+    public long roadId(int roadIndex) {
+        return roadIds[roadIndex];
+    }
+
+    /** 查询用的栈，每个线程各用一个 */
+    public int[] newStack() {
+        return new int[2 * (NODE_CAPACITY * minX.length + minX[minX.length - 1].length)];
+    }
+
+    /**
+     * 距 (x, y) 不超过 maxDistance 的最近道路下标，没有时返回 -1。
+     * 深度优先遍历，外包矩形距离超过当前最近距离的子树直接跳过。
+     */
+    public int nearest(double x, double y, double maxDistance, int[] stack) {
+        if (x1.length == 0) {
+            return -1;
+        }
+        double best = maxDistance * maxDistance;
+        int bestRoad = -1;
+        int top = 0;
+        int rootLevel = minX.length - 1;
+        for (int node = minX[rootLevel].length - 1; node >= 0; node--) {
+            stack[top++] = rootLevel;
+            stack[top++] = node;
+        }
+        while (top > 0) {
+            int node = stack[--top];
+            int level = stack[--top];
+            if (boxDistance2(level, node, x, y) > best) {
+                continue;
+            }
+            if (level == 0) {
+                int end = Math.min(x1.length, (node + 1) * NODE_CAPACITY);
+                for (int s = node * NODE_CAPACITY; s < end; s++) {
+                    double d2 = segmentDistance2(s, x, y);
+                    if (d2 <= best) {
+                        best = d2;
+                        bestRoad = road[s];
+                    }
+                }
+            } else {
+                int end = Math.min(minX[level - 1].length, (node + 1) * NODE_CAPACITY);
+                for (int c = end - 1; c >= node * NODE_CAPACITY; c--) {
+                    stack[top++] = level - 1;
+                    stack[top++] = c;
+                }
+            }
+        }
+        return bestRoad;
+    }
+
+    private double boxDistance2(int level, int node, double x, double y) {
+        double dx = Math.max(Math.max(minX[level][node] - x, 0), x - maxX[level][node]);
+        double dy = Math.max(Math.max(minY[level][node] - y, 0), y - maxY[level][node]);
+        return dx * dx + dy * dy;
+    }
+
+    private double segmentDistance2(int s, double x, double y) {
+        double dx = x2[s] - x1[s];
+        double dy = y2[s] - y1[s];
+        double len2 = dx * dx + dy * dy;
+        double t = len2 == 0 ? 0 : Math.max(0, Math.min(1, ((x - x1[s]) * dx + (y - y1[s]) * dy) / len2));
+        double ex = x1[s] + t * dx - x;
+        double ey = y1[s] + t * dy - y;
+        return ex * ex + ey * ey;
+    }
+
+    private static int ceilDiv(int a, int b) {
+        return (a + b - 1) / b;
+    }
+
+    /** 逐条添加道路折线，build() 时完成 STR 排序 */
+    public static final class Builder {
+        private long[] roadIds = new long[1024];
+        private int roads;
+        private double[] x1 = new double[4096], y1 = new double[4096], x2 = new double[4096], y2 = new double[4096];
+        private int[] road = new int[4096];
+        private int segments;
+
+        /** 添加一条道路（或多段线中的一段）的前 n 个节点；同一道路可多次添加，共用一个道路下标 */
+        public Builder add(long roadId, double[] lon, double[] lat, int n) {
+            if (roads == 0 || roadIds[roads - 1] != roadId) {
+                if (roads == roadIds.length) {
+                    roadIds = Arrays.copyOf(roadIds, roads << 1);
+                }
+                roadIds[roads++] = roadId;
+            }
+            for (int i = 1; i < n; i++) {
+                if (segments == x1.length) {
+                    int capacity = segments << 1;
+                    x1 = Arrays.copyOf(x1, capacity);
+                    y1 = Arrays.copyOf(y1, capacity);
+                    x2 = Arrays.copyOf(x2, capacity);
+                    y2 = Arrays.copyOf(y2, capacity);
+                    road = Arrays.copyOf(road, capacity);
+                }
+                x1[segments] = lon[i - 1];
+                y1[segments] = lat[i - 1];
+                x2[segments] = lon[i];
+                y2[segments] = lat[i];
+                road[segments] = roads - 1;
+                segments++;
+            }
+            return this;
+        }
+
+        public RoadSegmentIndex build() {
+            int n = segments;
+            // 按中心经度排序后切成竖条，条内按中心纬度排序
+            int[] order = sortByCenter(identity(n), 0, n, true);
+            int slices = (int) Math.ceil(Math.sqrt(ceilDiv(n, NODE_CAPACITY)));
+            int sliceSize = Math.max(1, slices) * NODE_CAPACITY;
+            for (int from = 0; from < n; from += sliceSize) {
+                sortByCenter(order, from, Math.min(n, from + sliceSize), false);
+            }
+
+            double[] sx1 = new double[n], sy1 = new double[n], sx2 = new double[n], sy2 = new double[n];
+            int[] sroad = new int[n];
+            for (int i = 0; i < n; i++) {
+                int s = order[i];
+                sx1[i] = x1[s];
+                sy1[i] = y1[s];
+                sx2[i] = x2[s];
+                sy2[i] = y2[s];
+                sroad[i] = road[s];
+            }
+            return new RoadSegmentIndex(Arrays.copyOf(roadIds, roads), sx1, sy1, sx2, sy2, sroad);
+        }
+
+        private static int[] identity(int n) {
+            int[] order = new int[n];
+            for (int i = 0; i < n; i++) {
+                order[i] = i;
+            }
+            return order;
+        }
+
+        /**
+         * 对 order[from, to) 按线段中心坐标排序。坐标取 float 精度与下标拼成 long 后用基本类型排序，
+         * 避免装箱比较器；float 精度（约 1e-5°）对分块质量没有影响。
+         */
+        private int[] sortByCenter(int[] order, int from, int to, boolean byX) {
+            long[] keys = new long[to - from];
+            for (int i = from; i < to; i++) {
+                int s = order[i];
+                float center = (float) (byX ? (x1[s] + x2[s]) * 0.5 : (y1[s] + y2[s]) * 0.5);
+                int bits = Float.floatToIntBits(center);
+                // 使负数也按数值顺序排列
+                bits ^= (bits >> 31) & 0x7fffffff;
+                keys[i - from] = ((long) bits << 32) | s;
+            }
+            Arrays.sort(keys);
+            for (int i = from; i < to; i++) {
+                order[i] = (int) keys[i - from];
+            }
+            return order;
+        }
+    }
+}
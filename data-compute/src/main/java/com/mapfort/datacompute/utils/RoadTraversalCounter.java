@@ -0,0 +1,57 @@
+package com.mapfort.datacompute.utils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 统计 dwd_trip_roads.road_list 中每个路段 id 被经过的次数，口径同
+ * SELECT way_id, COUNT(*) FROM (SELECT UNNEST(road_list) AS way_id ...) GROUP BY way_id（忽略 NULL 元素）。
+ * <p>
+ * 以游标流式读取每行数组的文本形式（如 {1,2,NULL}）并直接解析出 long，计入 {@link LongIntCounter}，
+ * 数组元素不经过 Long/Object[] 装箱，内存只与不同路段数有关。
+ */
+@Component
+public class RoadTraversalCounter {
+
+    private final CursorReader cursorReader;
+    private final int fetchSize;
+
+    public RoadTraversalCounter(CursorReader cursorReader,
+                                @Value("${mapfort.pipeline.road-popularity.fetch-size:10000}") int fetchSize) {
+        this.cursorReader = cursorReader;
+        this.fetchSize = fetchSize;
+    }
+
+    public LongIntCounter count() {
+        LongIntCounter counter = new LongIntCounter(1 << 16);
+        cursorReader.query("SELECT road_list::text FROM public.dwd_trip_roads WHERE road_list IS NOT NULL",
+                fetchSize, rs -> addArrayText(counter, rs.getString(1)));
+        return counter;
+    }
+
+    /** 解析一维整数数组的文本形式（可带 [m:n]= 下标前缀），逐个元素计数，NULL 元素跳过 */
+    static void addArrayText(LongIntCounter counter, String text) {
+        int i = text.indexOf('{') + 1;
+        int end = text.lastIndexOf('}');
+        while (i < end) {
+            char c = text.charAt(i);
+            if (c == 'N') {
+                // NULL
+                i += 4;
+            } else {
+                boolean negative = c == '-';
+                if (negative) {
+                    i++;
+                }
+                long value = 0;
+                while (i < end && (c = text.charAt(i)) >= '0' && c <= '9') {
+                    value = value * 10 + (c - '0');
+                    i++;
+                }
+                counter.increment(negative ? -value : value);
+            }
+            // 跳过分隔符 ,
+            i++;
+        }
+    }
+}
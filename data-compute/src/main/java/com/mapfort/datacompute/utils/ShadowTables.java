@@ -0,0 +1,167 @@
+package com.mapfort.datacompute.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 影子表重建：结果先写入 public.&lt;表名&gt;__next，建好索引、ANALYZE 之后，
+ * 在一个只含两条 RENAME 的短事务里替换正式表。
+ * 重建期间接口一直读旧表，不会被 TRUNCATE 的排他锁阻塞，也不会读到空表。
+ * <p>
+ * 正式表仍由任务自行 CREATE TABLE IF NOT EXISTS（含补列），作为影子表的结构模板；
+ * 正式表上的索引与主键/唯一约束在数据写完后按原定义在影子表上重建，表权限一并复制。
+ * RENAME 需要短暂的排他锁，设置 lock_timeout 避免排在长查询之后阻塞其他读请求，超时后重试。
+ */
+@Slf4j
+@Component
+public class ShadowTables {
+
+    private static final String SHADOW_SUFFIX = "__next";
+    private static final String RETIRED_SUFFIX = "__old";
+    /** PostgreSQL 标识符最大长度 */
+    private static final int MAX_IDENTIFIER = 63;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate swapTransaction;
+    private final long lockTimeoutMs;
+    private final int maxAttempts;
+
+    public ShadowTables(JdbcTemplate jdbcTemplate,
+                        PlatformTransactionManager transactionManager,
+                        @Value("${mapfort.pipeline.swap.lock-timeout-ms:2000}") long lockTimeoutMs,
+                        @Value("${mapfort.pipeline.swap.max-attempts:5}") int maxAttempts) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.swapTransaction = new TransactionTemplate(transactionManager);
+        // 调用方即使处于长事务中，替换也单独提交，排他锁只持有两条 RENAME 的时间
+        this.swapTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.lockTimeoutMs = lockTimeoutMs;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * 按正式表结构创建空的影子表（不含索引与约束，写入更快），返回其限定名。
+     * 上次运行残留的影子表会先被删除。
+     */
+    public String create(String table) {
+        String shadow = table + SHADOW_SUFFIX;
+        jdbcTemplate.execute("DROP TABLE IF EXISTS public." + shadow);
+        jdbcTemplate.execute("CREATE TABLE public." + shadow + " (LIKE public." + table + " INCLUDING DEFAULTS)");
+        return "public." + shadow;
+    }
+
+    /** 在影子表上重建索引、收集统计信息，然后替换正式表 */
+    public void swapIn(String table) {
+        String shadow = table + SHADOW_SUFFIX;
+        // 上次运行若在 RENAME 提交后、删除旧表前中断，旧表仍占着索引原名，
+        // 必须先删除，copyIndexes 才能把正式表上残留的 X__next 索引改回原名
+        jdbcTemplate.execute("DROP TABLE IF EXISTS public." + table + RETIRED_SUFFIX);
+        List<String[]> renames = copyIndexes(table, shadow);
+        copyGrants(table, shadow);
+        jdbcTemplate.execute("ANALYZE public." + shadow);
+
+        renameWithRetry(table, shadow);
+        jdbcTemplate.execute("DROP TABLE public." + table + RETIRED_SUFFIX);
+        // 旧表删除后索引名空出，改回原名（索引改名不阻塞读）
+        for (String[] rename : renames) {
+            jdbcTemplate.execute("ALTER INDEX public." + quote(rename[0]) + " RENAME TO " + quote(rename[1]));
+        }
+        log.info("Shadow table {} swapped in.", table);
+    }
+
+    private void renameWithRetry(String table, String shadow) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                swapTransaction.executeWithoutResult(status -> {
+                    jdbcTemplate.execute("SET LOCAL lock_timeout = '" + lockTimeoutMs + "ms'");
+                    jdbcTemplate.execute("ALTER TABLE public." + table + " RENAME TO " + table + RETIRED_SUFFIX);
+                    jdbcTemplate.execute("ALTER TABLE public." + shadow + " RENAME TO " + table);
+                });
+                return;
+            } catch (DataAccessException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                log.warn("Swapping {} failed (attempt {}/{}), retrying: {}", table, attempt, maxAttempts, e.getMessage());
+                try {
+                    Thread.sleep(lockTimeoutMs);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * 按正式表的索引定义在影子表上建索引，主键/唯一约束以约束形式添加。
+     * 影子表上的索引先用临时名，返回 [临时名, 原名] 供替换后改回。
+     */
+    private List<String[]> copyIndexes(String table, String shadow) {
+        List<Map<String, Object>> indexes = jdbcTemplate.queryForList("""
+            SELECT i.relname AS index_name,
+                   pg_get_indexdef(x.indexrelid) AS index_def,
+                   pg_get_constraintdef(c.oid) AS constraint_def
+            FROM pg_index x
+            JOIN pg_class i ON i.oid = x.indexrelid
+            LEFT JOIN pg_constraint c ON c.conindid = x.indexrelid AND c.contype IN ('p', 'u')
+            WHERE x.indrelid = to_regclass(?)
+        """, "public." + table);
+
+        List<String[]> renames = new ArrayList<>(indexes.size());
+        for (Map<String, Object> index : indexes) {
+            String name = (String) index.get("index_name");
+            if (name.endsWith(SHADOW_SUFFIX)) {
+                // 上次运行在索引改回原名前中断
+                String original = name.substring(0, name.length() - SHADOW_SUFFIX.length());
+                jdbcTemplate.execute("ALTER INDEX public." + quote(name) + " RENAME TO " + quote(original));
+                name = original;
+            }
+            String staged = truncate(name, MAX_IDENTIFIER - SHADOW_SUFFIX.length()) + SHADOW_SUFFIX;
+            String constraintDef = (String) index.get("constraint_def");
+            if (constraintDef != null) {
+                jdbcTemplate.execute("ALTER TABLE public." + shadow
+                        + " ADD CONSTRAINT " + quote(staged) + " " + constraintDef);
+            } else {
+                // CREATE [UNIQUE] INDEX name ON public.table USING ...
+                String def = (String) index.get("index_def");
+                String unique = def.startsWith("CREATE UNIQUE ") ? "UNIQUE " : "";
+                jdbcTemplate.execute("CREATE " + unique + "INDEX " + quote(staged) + " ON public." + shadow
+                        + def.substring(def.indexOf(" USING ")));
+            }
+            renames.add(new String[]{staged, name});
+        }
+        return renames;
+    }
+
+    /** 复制正式表上授予其他角色的权限（如接口服务的只读账号） */
+    private void copyGrants(String table, String shadow) {
+        List<Map<String, Object>> grants = jdbcTemplate.queryForList("""
+            SELECT grantee, privilege_type
+            FROM information_schema.role_table_grants
+            WHERE table_schema = 'public' AND table_name = ? AND grantee <> current_user
+        """, table);
+        for (Map<String, Object> grant : grants) {
+            String grantee = (String) grant.get("grantee");
+            jdbcTemplate.execute("GRANT " + grant.get("privilege_type") + " ON public." + shadow + " TO "
+                    + ("PUBLIC".equals(grantee) ? grantee : quote(grantee)));
+        }
+    }
+
+    private static String truncate(String name, int length) {
+        return name.length() <= length ? name : name.substring(0, length);
+    }
+
+    private static String quote(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+}
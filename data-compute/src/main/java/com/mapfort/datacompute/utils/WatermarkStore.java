@@ -0,0 +1,51 @@
+package com.mapfort.datacompute.utils;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 增量任务的高水位（etl_watermark）：每个名称对应一个已处理到的上界，含义由任务自定
+ * （如 dwd_pickup_points.tms 秒数、dws 行的 last_updated 微秒数）。
+ * 与任务的写入在同一事务内更新时，失败回滚后下次会从旧水位重新处理。
+ */
+@Component
+@RequiredArgsConstructor
+public class WatermarkStore {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private void createTable() {
+        jdbcTemplate.execute("""
+            CREATE TABLE IF NOT EXISTS public.etl_watermark (
+                name VARCHAR(64) PRIMARY KEY,
+                high_value BIGINT NOT NULL,
+                updated_at TIMESTAMP NOT NULL
+            )
+        """);
+    }
+
+    /** 读取水位，不存在时返回 null（需要全量处理） */
+    public Long get(String name) {
+        createTable();
+        List<Long> values = jdbcTemplate.queryForList(
+                "SELECT high_value FROM public.etl_watermark WHERE name = ?", Long.class, name);
+        return values.isEmpty() ? null : values.get(0);
+    }
+
+    public void set(String name, long value) {
+        createTable();
+        jdbcTemplate.update("""
+            INSERT INTO public.etl_watermark (name, high_value, updated_at) VALUES (?, ?, now())
+            ON CONFLICT (name) DO UPDATE SET high_value = EXCLUDED.high_value, updated_at = now()
+        """, name, value);
+    }
+
+    /** 删除水位，下次运行将全量重建 */
+    public void reset(String name) {
+        createTable();
+        jdbcTemplate.update("DELETE FROM public.etl_watermark WHERE name = ?", name);
+    }
+}
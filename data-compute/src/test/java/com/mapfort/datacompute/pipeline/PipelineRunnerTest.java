@@ -0,0 +1,50 @@
+package com.mapfort.datacompute.pipeline;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/** 任务抛出 Error（如 OutOfMemoryError）时照常记为失败、阻塞下游并结束本次运行，之后可以再次启动 */
+class PipelineRunnerTest {
+
+    @Test
+    void errorInTaskFailsTheRunAndReleasesTheRunner() throws Exception {
+        AtomicInteger downstreamRuns = new AtomicInteger();
+        AtomicInteger attempts = new AtomicInteger();
+        PipelineDefinition definition = new PipelineDefinition(List.of(
+                PipelineTask.of("a", () -> {
+                    if (attempts.getAndIncrement() == 0) {
+                        throw new OutOfMemoryError("simulated");
+                    }
+                }),
+                PipelineTask.of("b", downstreamRuns::incrementAndGet, "a")));
+        PipelineRunStore store = mock(PipelineRunStore.class);
+        when(store.startRun()).thenReturn(1L, 2L);
+        PipelineRunner runner = new PipelineRunner(definition, store, 2, false, false, List.of());
+        try {
+            assertFalse(runner.start().get(10, TimeUnit.SECONDS));
+            assertEquals(0, downstreamRuns.get());
+            verify(store).taskFinished(eq(1L), eq("a"), eq(PipelineRunStore.FAILED), anyString());
+            verify(store).taskFinished(1L, "b", PipelineRunStore.BLOCKED, null);
+            verify(store).finishRun(1L, PipelineRunStore.FAILED);
+
+            // 上次运行已结束，不会报 already running
+            assertTrue(runner.start().get(10, TimeUnit.SECONDS));
+            assertEquals(1, downstreamRuns.get());
+            verify(store).finishRun(2L, PipelineRunStore.SUCCEEDED);
+        } finally {
+            runner.shutdown();
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.mapfort.datacompute.tdmUtils;
+
+import com.mapfort.datacompute.utils.PgCopyDecoder;
+import com.mapfort.datacompute.utils.PgCopyRows;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 解码两张表的 COPY 行，与原 SQL（GROUP BY devid 的 COUNT/AVG/MAX/MIN/SUM 与按 EXTRACT(HOUR) 的 CASE 分段）
+ * 逐列比对：平均值截断取整、INTEGER 列超出范围取上下限、BIGINT 合计按原值、无时长的司机写 NULL 或 0，
+ * 以及时段边界（夜间 22:00–4:59）。
+ */
+class DriverMetricsTaskTest {
+
+    private static final ZoneId SHANGHAI = ZoneId.of("Asia/Shanghai");
+    private static final LocalDateTime NOW = LocalDateTime.of(2025, 5, 1, 0, 0, 0, 123_456_000);
+
+    /** dwd_trip_info 的一行，travelTime/beginTime 可为 NULL */
+    private record Trip(String devid, Long travelTime, Double beginTime) {
+    }
+
+    @Test
+    void saturatedIntClampsToIntRange() {
+        assertEquals(0, DriverMetricsTask.DriverStats.saturatedInt(0));
+        assertEquals(-5, DriverMetricsTask.DriverStats.saturatedInt(-5));
+        assertEquals(Integer.MAX_VALUE, DriverMetricsTask.DriverStats.saturatedInt(Integer.MAX_VALUE));
+        assertEquals(Integer.MAX_VALUE, DriverMetricsTask.DriverStats.saturatedInt(Integer.MAX_VALUE + 1L));
+        assertEquals(Integer.MAX_VALUE, DriverMetricsTask.DriverStats.saturatedInt(Long.MAX_VALUE));
+        assertEquals(Integer.MIN_VALUE, DriverMetricsTask.DriverStats.saturatedInt(Long.MIN_VALUE));
+    }
+
+    @Test
+    void hourFollowsTheSessionZone() {
+        DriverMetricsTask.DriverStats stats = new DriverMetricsTask.DriverStats(SHANGHAI);
+        assertEquals(22, stats.hour(epoch(2025, 5, 1, 22, 0, 0)));
+        assertEquals(4, stats.hour(epoch(2025, 5, 2, 4, 59, 0)));
+        assertEquals(4, stats.hour(epoch(2025, 5, 2, 4, 59, 59) + 0.999));
+        assertEquals(5, stats.hour(epoch(2025, 5, 2, 5, 0, 0)));
+        assertEquals(0, stats.hour(epoch(2025, 5, 2, 0, 0, 0)));
+        assertEquals(23, stats.hour(epoch(2025, 5, 1, 23, 59, 59)));
+        // 1970 年之前的负秒数向下取整
+        assertEquals(7, stats.hour(-0.5));
+        assertEquals(23, stats.hour(epoch(1969, 12, 31, 23, 30, 0)));
+
+        // 有夏令时的时区按当时的偏移换算
+        ZoneId newYork = ZoneId.of("America/New_York");
+        DriverMetricsTask.DriverStats dst = new DriverMetricsTask.DriverStats(newYork);
+        assertEquals(1, dst.hour(LocalDateTime.of(2025, 3, 9, 1, 30).atZone(newYork).toEpochSecond()));
+        assertEquals(3, dst.hour(LocalDateTime.of(2025, 3, 9, 3, 30).atZone(newYork).toEpochSecond()));
+        assertEquals(22, dst.hour(LocalDateTime.of(2025, 7, 1, 22, 0).atZone(newYork).toEpochSecond()));
+    }
+
+    @Test
+    void rowsMatchTheBaselineQueries() throws SQLException {
+        List<Trip> trips = new ArrayList<>();
+        double day = epoch(2025, 5, 1, 0, 0, 0);
+        // 累计时长超出 int：INTEGER 列取上限，BIGINT 合计按原值
+        for (int i = 0; i < 3; i++) {
+            trips.add(new Trip("busy", 1_500_000_000L, day + 9 * 3600));
+        }
+        trips.add(new Trip("busy", 5_000_000_000L, day + 13 * 3600));
+        // 平均 45 / 4 = 11.25 截断为 11，NULL 时长的行程只计入行程数
+        for (long t : new long[]{10, 11, 12, 12}) {
+            trips.add(new Trip("trunc", t, day + 19 * 3600));
+        }
+        trips.add(new Trip("trunc", null, day + 19 * 3600));
+        // 平均 -4.5 向零截断为 -4
+        trips.add(new Trip("negative", -7L, day + 3600));
+        trips.add(new Trip("negative", -2L, day + 2 * 3600));
+        // 时长与开始时间均为 NULL
+        trips.add(new Trip("idle", null, null));
+        // 各时段边界
+        int[][] clock = {{22, 0, 0}, {4, 59, 0}, {4, 59, 59}, {5, 0, 0}, {11, 59, 59}, {12, 0, 0},
+                {17, 59, 59}, {18, 0, 0}, {21, 59, 59}, {23, 59, 59}, {0, 0, 0}};
+        for (int[] t : clock) {
+            trips.add(new Trip("clock", 60L, epoch(2025, 5, 2, t[0], t[1], t[2]) + 0.5));
+        }
+
+        DriverMetricsTask.DriverStats stats = aggregate(trips);
+        assertEquals(trips.size(), stats.trips);
+
+        PgCopyRows behaviorRows = new PgCopyRows();
+        stats.behaviorRows(behaviorRows, NOW);
+        Map<String, PgCopyDecoder.Row> behavior = byDevid(PgCopyDecoder.decode(behaviorRows));
+        PgCopyRows profileRows = new PgCopyRows();
+        stats.profileRows(profileRows);
+        Map<String, PgCopyDecoder.Row> profile = byDevid(PgCopyDecoder.decode(profileRows));
+        assertEquals(List.of("busy", "trunc", "negative", "idle", "clock"), new ArrayList<>(behavior.keySet()));
+        assertEquals(behavior.keySet(), profile.keySet());
+
+        Map<String, List<Trip>> groups = new LinkedHashMap<>();
+        trips.forEach(t -> groups.computeIfAbsent(t.devid(), k -> new ArrayList<>()).add(t));
+        for (Map.Entry<String, List<Trip>> group : groups.entrySet()) {
+            assertBehavior(group.getValue(), behavior.get(group.getKey()));
+            assertProfile(group.getValue(), profile.get(group.getKey()));
+        }
+
+        // 与上面的参照实现独立的显式取值
+        PgCopyDecoder.Row busy = behavior.get("busy");
+        assertEquals(4, busy.int4(1));
+        assertEquals(Integer.MAX_VALUE, busy.int4(2));
+        assertEquals(Integer.MAX_VALUE, busy.int4(3));
+        assertEquals(1_500_000_000, busy.int4(4));
+        assertEquals(Integer.MAX_VALUE, busy.int4(5));
+        assertEquals(2_375_000_000d, profile.get("busy").float8(2));
+        assertEquals(Integer.MAX_VALUE, profile.get("busy").int4(3));
+        assertEquals(9_500_000_000L, profile.get("busy").int8(5));
+
+        assertEquals(5, behavior.get("trunc").int4(1));
+        assertEquals(11, behavior.get("trunc").int4(2));
+        assertEquals(11.25, profile.get("trunc").float8(2));
+        assertEquals(-4, behavior.get("negative").int4(2));
+        assertEquals(-4.5, profile.get("negative").float8(2));
+
+        PgCopyDecoder.Row idle = behavior.get("idle");
+        for (int i = 2; i <= 9; i++) {
+            assertEquals(0, idle.int4(i));
+        }
+        for (int i = 2; i <= 5; i++) {
+            assertTrue(profile.get("idle").isNull(i));
+        }
+
+        // 早 05:00、11:59；午 12:00、17:59；晚 18:00、21:59；夜 22:00、04:59、04:59:59、23:59、00:00
+        PgCopyDecoder.Row buckets = behavior.get("clock");
+        assertEquals(2, buckets.int4(6));
+        assertEquals(2, buckets.int4(7));
+        assertEquals(2, buckets.int4(8));
+        assertEquals(5, buckets.int4(9));
+    }
+
+    /** 与 DriverMetricsTask.aggregate() 逐行累加的方式相同 */
+    private static DriverMetricsTask.DriverStats aggregate(List<Trip> trips) {
+        DriverMetricsTask.DriverStats stats = new DriverMetricsTask.DriverStats(SHANGHAI);
+        for (Trip trip : trips) {
+            int driver = stats.driver(trip.devid());
+            if (trip.travelTime() != null) {
+                stats.addTravelTime(driver, trip.travelTime());
+            }
+            if (trip.beginTime() != null) {
+                stats.addBucket(driver, stats.hour(trip.beginTime()));
+            }
+            stats.addTrip(driver);
+        }
+        return stats;
+    }
+
+    /**
+     * 原 DriverBehaviorAnalysisTask：COUNT/AVG/MAX/MIN/SUM 经 getInt 读出（NULL 为 0，NUMERIC 向零截断，
+     * 超出 int 的值现取上下限），时段为 EXTRACT(HOUR FROM to_timestamp(begin_time)) 的 BETWEEN 分段
+     */
+    private static void assertBehavior(List<Trip> trips, PgCopyDecoder.Row row) {
+        List<Long> times = travelTimes(trips);
+        int[] buckets = new int[4];
+        for (Trip trip : trips) {
+            if (trip.beginTime() != null) {
+                int hour = Instant.ofEpochSecond((long) Math.floor(trip.beginTime())).atZone(SHANGHAI).getHour();
+                buckets[hour >= 5 && hour <= 11 ? 0 : hour >= 12 && hour <= 17 ? 1 : hour >= 18 && hour <= 21 ? 2 : 3]++;
+            }
+        }
+        String devid = trips.get(0).devid();
+        assertEquals(11, row.size());
+        assertEquals(devid, row.text(0));
+        assertEquals(trips.size(), row.int4(1), devid);
+        assertEquals(times.isEmpty() ? 0 : clamp(avg(times).toBigInteger().longValueExact()), row.int4(2), devid);
+        assertEquals(times.isEmpty() ? 0 : clamp(times.stream().mapToLong(Long::longValue).max().getAsLong()), row.int4(3), devid);
+        assertEquals(times.isEmpty() ? 0 : clamp(times.stream().mapToLong(Long::longValue).min().getAsLong()), row.int4(4), devid);
+        assertEquals(times.isEmpty() ? 0 : clamp(sum(times)), row.int4(5), devid);
+        for (int b = 0; b < 4; b++) {
+            assertEquals(buckets[b], row.int4(6 + b), devid + " bucket " + b);
+        }
+        assertEquals(NOW, row.timestamp(10));
+    }
+
+    /** 原 DriverTripProfileAnalysisTask：INSERT ... SELECT，无非 NULL 时长时 AVG/MAX/MIN/SUM 为 NULL */
+    private static void assertProfile(List<Trip> trips, PgCopyDecoder.Row row) {
+        List<Long> times = travelTimes(trips);
+        String devid = trips.get(0).devid();
+        assertEquals(6, row.size());
+        assertEquals(devid, row.text(0));
+        assertEquals(trips.size(), row.int4(1), devid);
+        if (times.isEmpty()) {
+            for (int i = 2; i < 6; i++) {
+                assertTrue(row.isNull(i), devid + " column " + i);
+            }
+            return;
+        }
+        assertEquals(avg(times).doubleValue(), row.float8(2), devid);
+        assertEquals(clamp(times.stream().mapToLong(Long::longValue).max().getAsLong()), row.int4(3), devid);
+        assertEquals(clamp(times.stream().mapToLong(Long::longValue).min().getAsLong()), row.int4(4), devid);
+        assertEquals(sum(times), row.int8(5), devid);
+    }
+
+    private static List<Long> travelTimes(List<Trip> trips) {
+        return trips.stream().map(Trip::travelTime).filter(t -> t != null).toList();
+    }
+
+    private static long sum(List<Long> times) {
+        return times.stream().mapToLong(Long::longValue).sum();
+    }
+
+    private static BigDecimal avg(List<Long> times) {
+        return BigDecimal.valueOf(sum(times)).divide(BigDecimal.valueOf(times.size()), MathContext.DECIMAL128);
+    }
+
+    private static int clamp(long value) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value));
+    }
+
+    private static Map<String, PgCopyDecoder.Row> byDevid(List<PgCopyDecoder.Row> rows) {
+        Map<String, PgCopyDecoder.Row> map = new LinkedHashMap<>();
+        for (PgCopyDecoder.Row row : rows) {
+            assertEquals(null, map.put(row.text(0), row), "duplicate devid " + row.text(0));
+        }
+        return map;
+    }
+
+    private static double epoch(int year, int month, int day, int hour, int minute, int second) {
+        return LocalDateTime.of(year, month, day, hour, minute, second).atZone(SHANGHAI).toEpochSecond();
+    }
+}
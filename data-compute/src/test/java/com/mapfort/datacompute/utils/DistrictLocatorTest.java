@@ -0,0 +1,197 @@
+package com.mapfort.datacompute.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 与逐边的奇偶规则 + 点到线段距离比对行政区定位：带洞的多边形、多部件的多边形、负坐标、
+ * 相互重叠的行政区、边界外 tolerance 以内的点，以及 NaN 和网格外的点。
+ */
+class DistrictLocatorTest {
+
+    private static final double TOLERANCE = 0.05;
+
+    /** [行政区] 该区全部环的边，每条 {x1, y1, x2, y2} */
+    private final List<List<double[]>> districtEdges = new ArrayList<>();
+    private String lastCode;
+
+    @Test
+    void matchesBruteForceOnRandomPoints() {
+        for (double tolerance : new double[]{0, TOLERANCE}) {
+            districtEdges.clear();
+            DistrictLocator locator = sampleDistricts(tolerance);
+            assertEquals(4, locator.districtCount());
+            SplittableRandom random = new SplittableRandom(11);
+            for (int q = 0; q < 200_000; q++) {
+                double x, y;
+                if (q % 2 == 0) {
+                    // 覆盖网格内外
+                    x = random.nextDouble(-14, 24);
+                    y = random.nextDouble(-14, 14);
+                } else {
+                    // 贴着某条边，落在 tolerance 带内外
+                    List<double[]> edges = districtEdges.get(random.nextInt(districtEdges.size()));
+                    double[] e = edges.get(random.nextInt(edges.size()));
+                    double t = random.nextDouble(-0.1, 1.1);
+                    double len = Math.hypot(e[2] - e[0], e[3] - e[1]);
+                    double offset = random.nextDouble(-2 * TOLERANCE, 2 * TOLERANCE);
+                    x = e[0] + t * (e[2] - e[0]) - offset * (e[3] - e[1]) / len;
+                    y = e[1] + t * (e[3] - e[1]) + offset * (e[2] - e[0]) / len;
+                }
+                assertEquals(bruteForce(x, y, tolerance), locator.matches(x, y),
+                        "tolerance=" + tolerance + " point=(" + x + ", " + y + ")");
+            }
+        }
+    }
+
+    @Test
+    void holeMultipolygonAndTolerance() {
+        DistrictLocator exact = sampleDistricts(0);
+        districtEdges.clear();
+        DistrictLocator near = sampleDistricts(TOLERANCE);
+        int square = 0, parts = 1;
+
+        // 外环内、洞外
+        assertEquals(square, exact.locate(1, 1));
+        // 洞内：不属于任何区，除非在洞边 tolerance 以内
+        assertEquals(-1, exact.locate(5, 5));
+        assertEquals(-1, near.locate(5, 5));
+        assertEquals(-1, exact.locate(3.04, 5));
+        assertEquals(square, near.locate(3.04, 5));
+
+        // 外环外 tolerance 以内
+        assertEquals(-1, exact.locate(10.04, 5));
+        assertEquals(square, near.locate(10.04, 5));
+        assertEquals(-1, near.locate(10.06, 5));
+        // 角外：按到顶点的距离，而不是外扩的矩形
+        assertEquals(square, near.locate(-0.03, -0.03));
+        assertEquals(-1, near.locate(-0.04, -0.04));
+
+        // 两个部件都属于同一区，部件之间的空隙不属于
+        assertEquals(parts, exact.locate(13, 1));
+        assertEquals(parts, exact.locate(19, 1));
+        assertEquals(-1, exact.locate(16, 1));
+        assertEquals("P", exact.code(parts));
+    }
+
+    @Test
+    void overlappingDistrictsSetEveryBit() {
+        DistrictLocator locator = sampleDistricts(0);
+        // 第 4 个区与带洞的正方形在 (8..9, 8..9) 重叠
+        assertEquals(0b1001L, locator.matches(8.5, 8.5));
+        assertEquals(0, locator.locate(8.5, 8.5));
+    }
+
+    @Test
+    void nanAndOutOfGridPointsMatchNothing() {
+        DistrictLocator locator = sampleDistricts(TOLERANCE);
+        assertEquals(0, locator.matches(Double.NaN, 1));
+        assertEquals(0, locator.matches(1, Double.NaN));
+        assertEquals(0, locator.matches(1000, 1));
+        assertEquals(0, locator.matches(1, 1000));
+        assertEquals(0, locator.matches(-1000, 1));
+        assertEquals(0, locator.matches(1, -1000));
+        assertEquals(0, locator.matches(Double.POSITIVE_INFINITY, 1));
+        assertEquals(0, locator.matches(1, Double.NEGATIVE_INFINITY));
+        assertEquals(-1, locator.locate(Double.NaN, Double.NaN));
+
+        double[] lon = {1, Double.NaN, 1000, 5};
+        double[] lat = {1, 1, 1, 5};
+        long[] masks = new long[lon.length];
+        locator.matches(lon, lat, lon.length, masks);
+        for (int i = 0; i < lon.length; i++) {
+            assertEquals(locator.matches(lon[i], lat[i]), masks[i]);
+        }
+        int[] district = new int[lon.length];
+        locator.locate(lon, lat, lon.length, district);
+        for (int i = 0; i < lon.length; i++) {
+            assertEquals(locator.locate(lon[i], lat[i]), district[i]);
+        }
+    }
+
+    @Test
+    void emptyLocatorMatchesNothing() {
+        DistrictLocator locator = DistrictLocator.builder(TOLERANCE).build();
+        assertEquals(0, locator.districtCount());
+        assertEquals(0, locator.matches(0, 0));
+        assertEquals(-1, locator.locate(1, 1));
+    }
+
+    /**
+     * 0: 带方形洞的正方形 (0..10)，洞为 (3..7)；1: 两个不相连的凹多边形部件；
+     * 2: 负坐标上的凹多边形；3: 与 0 部分重叠的正方形
+     */
+    private DistrictLocator sampleDistricts(double tolerance) {
+        DistrictLocator.Builder builder = DistrictLocator.builder(tolerance);
+        addRing(builder, "S", new double[]{0, 10, 10, 0}, new double[]{0, 0, 10, 10});
+        addRing(builder, "S", new double[]{3, 3, 7, 7, 3}, new double[]{3, 7, 7, 3, 3});
+        SplittableRandom random = new SplittableRandom(3);
+        addStar(builder, "P", 13, 1, 1.5, random);
+        addStar(builder, "P", 19, 1, 1.5, random);
+        addStar(builder, "N", -6, -6, 5, random);
+        addRing(builder, "O", new double[]{8, 12, 12, 8}, new double[]{8, 8, 9, 9});
+        return builder.build();
+    }
+
+    /** 以 (cx, cy) 为中心、半径在 [r/3, r] 间随机的星形凹多边形 */
+    private void addStar(DistrictLocator.Builder builder, String code, double cx, double cy, double r,
+                         SplittableRandom random) {
+        int n = 40;
+        double[] lon = new double[n];
+        double[] lat = new double[n];
+        for (int i = 0; i < n; i++) {
+            double angle = 2 * Math.PI * i / n;
+            double radius = random.nextDouble(r / 3, r);
+            lon[i] = cx + radius * Math.cos(angle);
+            lat[i] = cy + radius * Math.sin(angle);
+        }
+        addRing(builder, code, lon, lat);
+    }
+
+    private void addRing(DistrictLocator.Builder builder, String code, double[] lon, double[] lat) {
+        builder.addRing(code, code + "区", lon, lat, lon.length);
+        if (districtEdges.isEmpty() || !code.equals(lastCode)) {
+            districtEdges.add(new ArrayList<>());
+            lastCode = code;
+        }
+        List<double[]> edges = districtEdges.get(districtEdges.size() - 1);
+        for (int i = 0; i < lon.length; i++) {
+            int j = (i + 1) % lon.length;
+            if (lon[i] != lon[j] || lat[i] != lat[j]) {
+                edges.add(new double[]{lon[i], lat[i], lon[j], lat[j]});
+            }
+        }
+    }
+
+    private long bruteForce(double x, double y, double tolerance) {
+        long mask = 0;
+        for (int d = 0; d < districtEdges.size(); d++) {
+            boolean in = false;
+            boolean near = false;
+            for (double[] e : districtEdges.get(d)) {
+                if ((e[1] > y) != (e[3] > y) && x < e[0] + (y - e[1]) * (e[2] - e[0]) / (e[3] - e[1])) {
+                    in = !in;
+                }
+                if (tolerance > 0 && segmentDistance(e, x, y) <= tolerance) {
+                    near = true;
+                }
+            }
+            if (in || near) {
+                mask |= 1L << d;
+            }
+        }
+        return mask;
+    }
+
+    private static double segmentDistance(double[] e, double x, double y) {
+        double dx = e[2] - e[0];
+        double dy = e[3] - e[1];
+        double t = Math.max(0, Math.min(1, ((x - e[0]) * dx + (y - e[1]) * dy) / (dx * dx + dy * dy)));
+        return Math.hypot(e[0] + t * dx - x, e[1] + t * dy - y);
+    }
+}
@@ -0,0 +1,130 @@
+package com.mapfort.datacompute.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 数据量少于 k 时与 PostgreSQL 的 percentile_disc / percentile_cont 逐值一致；
+ * 数据量远大于 k 时（含按分区各自统计再合并），归一化秩误差不超过 k = 200 的 1.65% 误差界。
+ */
+class KllSketchTest {
+
+    private static final double RANK_ERROR = 0.0165;
+    private static final int N = 1_000_000;
+
+    /** percentile_disc(p)：排序后第 ceil(p * n) 个值（p = 0 时取第 1 个） */
+    @Test
+    void percentileDiscMatchesPostgresOnSmallInput() {
+        KllSketch sketch = sketchOf(7, 3, 10, 1, 9, 2, 8, 4, 6, 5);
+        assertEquals(1, sketch.percentileDisc(0));
+        assertEquals(1, sketch.percentileDisc(0.05));
+        assertEquals(3, sketch.percentileDisc(0.25));
+        assertEquals(5, sketch.percentileDisc(0.5));
+        assertEquals(6, sketch.percentileDisc(0.51));
+        assertEquals(8, sketch.percentileDisc(0.75));
+        assertEquals(10, sketch.percentileDisc(1));
+    }
+
+    /** percentile_cont(p)：位置 p * (n - 1) 处在相邻两值之间线性插值 */
+    @Test
+    void percentileContMatchesPostgresOnSmallInput() {
+        KllSketch sketch = sketchOf(7, 3, 10, 1, 9, 2, 8, 4, 6, 5);
+        assertEquals(1, sketch.percentileCont(0));
+        assertEquals(3.25, sketch.percentileCont(0.25), 1e-12);
+        assertEquals(5.5, sketch.percentileCont(0.5), 1e-12);
+        assertEquals(7.75, sketch.percentileCont(0.75), 1e-12);
+        assertEquals(10, sketch.percentileCont(1));
+    }
+
+    @Test
+    void duplicatesAndSingleValue() {
+        KllSketch duplicates = sketchOf(2, 2, 2, 5, 5, 9);
+        assertEquals(2, duplicates.percentileDisc(0.5));
+        assertEquals(5, duplicates.percentileDisc(0.51));
+        assertEquals(3.5, duplicates.percentileCont(0.5), 1e-12);
+
+        KllSketch single = sketchOf(42);
+        assertEquals(42, single.percentileDisc(0.3));
+        assertEquals(42, single.percentileCont(0.3));
+    }
+
+    @Test
+    void emptySketchReturnsNaN() {
+        KllSketch sketch = new KllSketch();
+        sketch.update(Double.NaN);
+        assertEquals(0, sketch.count());
+        assertTrue(Double.isNaN(sketch.percentileDisc(0.5)));
+        assertTrue(Double.isNaN(sketch.percentileCont(0.5)));
+    }
+
+    /** 0 .. N-1 乱序读入，值即其 0 起的秩，误差可直接由返回值算出 */
+    @Test
+    void rankErrorWithinBoundOnLargeInput() {
+        KllSketch sketch = new KllSketch();
+        for (int value : shuffled(N, 1)) {
+            sketch.update(value);
+        }
+        assertEquals(N, sketch.count());
+        assertWithinBound(sketch);
+    }
+
+    /** 按分区各自统计（分区内数据分布各不相同）再合并，误差界与单个草图相同 */
+    @Test
+    void mergedPartitionSketchesStayWithinBound() {
+        int partitions = 8;
+        KllSketch[] sketches = new KllSketch[partitions];
+        for (int i = 0; i < partitions; i++) {
+            sketches[i] = new KllSketch();
+        }
+        int[] values = shuffled(N, 2);
+        for (int i = 0; i < N; i++) {
+            // 一半分区取连续的值段，一半轮流取值，合并时各层都会有来自多个草图的值
+            int partition = i < N / 2 ? values[i] * (partitions / 2) / N : partitions / 2 + i % (partitions / 2);
+            sketches[partition].update(values[i]);
+        }
+        KllSketch merged = new KllSketch();
+        for (KllSketch sketch : sketches) {
+            merged.merge(sketch);
+        }
+        assertEquals(N, merged.count());
+        assertWithinBound(merged);
+    }
+
+    private static void assertWithinBound(KllSketch sketch) {
+        for (int i = 1; i < 100; i++) {
+            double p = i / 100.0;
+            // 精确 percentile_disc 的 0 起秩为 ceil(p * N) - 1，percentile_cont 的位置为 p * (N - 1)
+            double discError = Math.abs(sketch.percentileDisc(p) - (Math.ceil(p * N) - 1)) / N;
+            double contError = Math.abs(sketch.percentileCont(p) - p * (N - 1)) / N;
+            assertTrue(discError <= RANK_ERROR, "percentileDisc(" + p + ") rank error " + discError);
+            assertTrue(contError <= RANK_ERROR, "percentileCont(" + p + ") rank error " + contError);
+        }
+    }
+
+    private static KllSketch sketchOf(double... values) {
+        KllSketch sketch = new KllSketch();
+        for (double value : values) {
+            sketch.update(value);
+        }
+        return sketch;
+    }
+
+    private static int[] shuffled(int n, long seed) {
+        int[] values = new int[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = i;
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = values[i];
+            values[i] = values[j];
+            values[j] = tmp;
+        }
+        return values;
+    }
+}
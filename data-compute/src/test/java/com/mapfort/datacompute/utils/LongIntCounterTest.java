@@ -0,0 +1,103 @@
+package com.mapfort.datacompute.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 与 HashMap 比对计数：键 0（空槽标记）、扩容前后、负键，以及 keys()/counts() 的长度与对应关系。
+ */
+class LongIntCounterTest {
+
+    @Test
+    void matchesHashMapAcrossRehashes() {
+        SplittableRandom random = new SplittableRandom(5);
+        LongIntCounter counter = new LongIntCounter();
+        Map<Long, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            // 连续 id、负 id、0 与极值混合，从默认容量开始多次翻倍
+            long key = switch (random.nextInt(5)) {
+                case 0 -> random.nextLong(100_000);
+                case 1 -> -random.nextLong(100_000);
+                case 2 -> random.nextLong();
+                case 3 -> random.nextInt(8) == 0 ? 0 : 1_000_000_000L + random.nextInt(1000);
+                default -> random.nextBoolean() ? Long.MIN_VALUE : Long.MAX_VALUE;
+            };
+            int delta = random.nextInt(3);
+            counter.add(key, delta);
+            expected.merge(key, delta, Integer::sum);
+        }
+        assertMatches(expected, counter);
+    }
+
+    @Test
+    void zeroKeyIsCountedSeparately() {
+        LongIntCounter counter = new LongIntCounter();
+        assertEquals(0, counter.get(0));
+        counter.increment(0);
+        counter.increment(0);
+        counter.increment(-1);
+        assertEquals(2, counter.size());
+        assertEquals(2, counter.get(0));
+        assertEquals(1, counter.get(-1));
+        assertEquals(Map.of(0L, 2, -1L, 1), toMap(counter));
+    }
+
+    @Test
+    void addingZeroRegistersTheKeyLikeAnyOther() {
+        LongIntCounter counter = new LongIntCounter();
+        counter.add(0, 0);
+        counter.add(0, 0);
+        counter.add(7, 0);
+        assertEquals(2, counter.size());
+        assertEquals(2, counter.keys().length);
+        assertEquals(2, counter.counts().length);
+        assertEquals(Map.of(0L, 0, 7L, 0), toMap(counter));
+
+        // 计数减回 0 后仍保留键，keys()/counts() 长度与 size() 一致
+        LongIntCounter back = new LongIntCounter();
+        back.add(0, 3);
+        back.add(0, -3);
+        assertEquals(1, back.size());
+        assertEquals(Map.of(0L, 0), toMap(back));
+    }
+
+    @Test
+    void presizedCounterDoesNotLoseKeys() {
+        LongIntCounter counter = new LongIntCounter(3);
+        Map<Long, Integer> expected = new HashMap<>();
+        for (long key = -5000; key <= 5000; key++) {
+            counter.increment(key);
+            counter.increment(key * 31);
+            expected.merge(key, 1, Integer::sum);
+            expected.merge(key * 31, 1, Integer::sum);
+        }
+        assertMatches(expected, counter);
+    }
+
+    private static void assertMatches(Map<Long, Integer> expected, LongIntCounter counter) {
+        assertEquals(expected.size(), counter.size());
+        assertEquals(expected, toMap(counter));
+        for (Map.Entry<Long, Integer> e : expected.entrySet()) {
+            assertEquals(e.getValue(), counter.get(e.getKey()), "key " + e.getKey());
+        }
+        assertEquals(0, counter.get(Long.MIN_VALUE + 1));
+    }
+
+    /** 由 keys()/counts() 还原，同时检查两者长度与 size() 一致、键不重复 */
+    private static Map<Long, Integer> toMap(LongIntCounter counter) {
+        long[] keys = counter.keys();
+        int[] counts = counter.counts();
+        assertEquals(counter.size(), keys.length);
+        assertEquals(counter.size(), counts.length);
+        Map<Long, Integer> map = new HashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(null, map.put(keys[i], counts[i]), "duplicate key " + keys[i]);
+        }
+        return map;
+    }
+}
@@ -0,0 +1,111 @@
+package com.mapfort.datacompute.utils;
+
+import org.postgresql.copy.CopyIn;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 测试用的 COPY 二进制格式解码器：按 PostgreSQL 文档 “COPY — Binary Format” 读出 {@link PgCopyRows}
+ * 编码的每一行，与编码实现互相独立。字段不带类型，由调用方按目标列类型读取。
+ */
+public final class PgCopyDecoder {
+
+    private static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xff, '\r', '\n', 0};
+    private static final LocalDateTime PG_EPOCH = LocalDateTime.of(2000, 1, 1, 0, 0);
+
+    /** 一行中各字段的原始字节，NULL 字段为 null */
+    public record Row(byte[][] fields) {
+
+        public int size() {
+            return fields.length;
+        }
+
+        public boolean isNull(int i) {
+            return fields[i] == null;
+        }
+
+        public int int4(int i) {
+            return value(i, 4).getInt();
+        }
+
+        public long int8(int i) {
+            return value(i, 8).getLong();
+        }
+
+        public double float8(int i) {
+            return value(i, 8).getDouble();
+        }
+
+        public String text(int i) {
+            if (fields[i] == null) {
+                throw new IllegalStateException("field " + i + " is NULL");
+            }
+            return new String(fields[i], StandardCharsets.UTF_8);
+        }
+
+        /** 距 2000-01-01 00:00 的微秒数 */
+        public LocalDateTime timestamp(int i) {
+            long micros = int8(i);
+            return PG_EPOCH.plusSeconds(Math.floorDiv(micros, 1_000_000L))
+                    .plusNanos(Math.floorMod(micros, 1_000_000L) * 1000L);
+        }
+
+        private ByteBuffer value(int i, int length) {
+            if (fields[i] == null) {
+                throw new IllegalStateException("field " + i + " is NULL");
+            }
+            if (fields[i].length != length) {
+                throw new IllegalStateException("field " + i + " has " + fields[i].length + " bytes, expected " + length);
+            }
+            return ByteBuffer.wrap(fields[i]);
+        }
+    }
+
+    private PgCopyDecoder() {
+    }
+
+    /** 解出 rows 中的全部行，同时核对文件头与结束标记 */
+    public static List<Row> decode(PgCopyRows rows) throws SQLException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CopyIn copyIn = (CopyIn) Proxy.newProxyInstance(CopyIn.class.getClassLoader(), new Class<?>[]{CopyIn.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("writeToCopy") && args.length == 3) {
+                        out.write((byte[]) args[0], (Integer) args[1], (Integer) args[2]);
+                        return null;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        rows.writeTo(copyIn);
+
+        ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+        byte[] signature = new byte[SIGNATURE.length];
+        buffer.get(signature);
+        if (!Arrays.equals(SIGNATURE, signature) || buffer.getInt() != 0 || buffer.getInt() != 0) {
+            throw new IllegalStateException("bad COPY header");
+        }
+        List<Row> result = new ArrayList<>();
+        for (short count = buffer.getShort(); count != -1; count = buffer.getShort()) {
+            byte[][] fields = new byte[count][];
+            for (int i = 0; i < count; i++) {
+                int length = buffer.getInt();
+                if (length >= 0) {
+                    fields[i] = new byte[length];
+                    buffer.get(fields[i]);
+                }
+            }
+            result.add(new Row(fields));
+        }
+        if (buffer.hasRemaining()) {
+            throw new IllegalStateException(buffer.remaining() + " bytes after COPY trailer");
+        }
+        return result;
+    }
+}
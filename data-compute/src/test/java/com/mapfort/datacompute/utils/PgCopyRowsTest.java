@@ -0,0 +1,228 @@
+package com.mapfort.datacompute.utils;
+
+import org.junit.jupiter.api.Test;
+import org.postgresql.copy.CopyIn;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 按 PostgreSQL 文档 “COPY — Binary Format” 逐字节核对编码：
+ * 文件头 11 字节签名 + 4 字节标志 + 4 字节扩展区长度；每行 int16 字段数，每个字段 int32 长度（NULL 为 -1）后跟值；
+ * 结束标记为 int16 -1。日期为距 2000-01-01 的天数（int32），时间戳为距 2000-01-01 00:00 的微秒数（int64）。
+ */
+class PgCopyRowsTest {
+
+    private static final byte[] HEADER = {
+            'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xff, '\r', '\n', 0,
+            0, 0, 0, 0,
+            0, 0, 0, 0
+    };
+    private static final byte[] TRAILER = {(byte) 0xff, (byte) 0xff};
+
+    @Test
+    void emptyResultIsHeaderAndTrailer() throws SQLException {
+        PgCopyRows rows = new PgCopyRows();
+        assertArrayEquals(concat(HEADER, TRAILER), encode(rows));
+        assertEquals(0, rows.rows());
+        assertEquals(HEADER.length, rows.bytes());
+    }
+
+    @Test
+    void fixedWidthFields() throws SQLException {
+        PgCopyRows rows = new PgCopyRows();
+        rows.row(5).int4(-2).int8(1L << 40).float8(1.5).bool(true).bool(false);
+
+        ByteBuffer expected = ByteBuffer.allocate(2 + (4 + 4) + (4 + 8) + (4 + 8) + (4 + 1) * 2);
+        expected.putShort((short) 5);
+        expected.putInt(4).putInt(-2);
+        expected.putInt(8).putLong(1L << 40);
+        expected.putInt(8).putLong(Double.doubleToRawLongBits(1.5));
+        expected.putInt(1).put((byte) 1);
+        expected.putInt(1).put((byte) 0);
+        assertArrayEquals(file(expected.array()), encode(rows));
+        assertEquals(1, rows.rows());
+    }
+
+    @Test
+    void nullFieldsAreMinusOneLengthWithoutValue() throws SQLException {
+        PgCopyRows rows = new PgCopyRows();
+        rows.row(4).nul().text((String) null).date(null).timestamp(null);
+
+        ByteBuffer expected = ByteBuffer.allocate(2 + 4 * 4);
+        expected.putShort((short) 4);
+        for (int i = 0; i < 4; i++) {
+            expected.putInt(-1);
+        }
+        assertArrayEquals(file(expected.array()), encode(rows));
+    }
+
+    @Test
+    void textIsUtf8WithByteLength() throws SQLException {
+        PgCopyRows rows = new PgCopyRows();
+        // ASCII 快速路径、三字节汉字、四字节补充平面字符、空串
+        rows.row(4).text("ab").text("极热门").text("路🚗").text("");
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(0);
+        expected.write(4);
+        writeText(expected, new byte[]{'a', 'b'});
+        writeText(expected, new byte[]{
+                (byte) 0xe6, (byte) 0x9e, (byte) 0x81,
+                (byte) 0xe7, (byte) 0x83, (byte) 0xad,
+                (byte) 0xe9, (byte) 0x97, (byte) 0xa8});
+        writeText(expected, new byte[]{
+                (byte) 0xe8, (byte) 0xb7, (byte) 0xaf,
+                (byte) 0xf0, (byte) 0x9f, (byte) 0x9a, (byte) 0x97});
+        writeText(expected, new byte[0]);
+        assertArrayEquals(file(expected.toByteArray()), encode(rows));
+    }
+
+    @Test
+    void preEncodedTextMatchesStringText() throws SQLException {
+        PgCopyRows fromString = new PgCopyRows();
+        fromString.row(1).text("高");
+        PgCopyRows fromBytes = new PgCopyRows();
+        fromBytes.row(1).text("高".getBytes(StandardCharsets.UTF_8));
+        assertArrayEquals(encode(fromString), encode(fromBytes));
+    }
+
+    @Test
+    void datesCountDaysFrom2000() throws SQLException {
+        PgCopyRows rows = new PgCopyRows();
+        rows.row(4)
+                .date(LocalDate.of(2000, 1, 1))
+                .date(LocalDate.of(1999, 12, 31))
+                .date(LocalDate.of(1970, 1, 1))
+                .date(LocalDate.of(2025, 5, 1));
+
+        ByteBuffer expected = ByteBuffer.allocate(2 + 8 * 4);
+        expected.putShort((short) 4);
+        expected.putInt(4).putInt(0);
+        expected.putInt(4).putInt(-1);
+        expected.putInt(4).putInt(-10957);
+        // 2000-01-01 至 2025-05-01：25 年（含 7 个闰年）加 1 月至 4 月的 120 天
+        expected.putInt(4).putInt(25 * 365 + 7 + 120);
+        assertArrayEquals(file(expected.array()), encode(rows));
+    }
+
+    @Test
+    void timestampsCountMicrosecondsFrom2000() throws SQLException {
+        PgCopyRows rows = new PgCopyRows();
+        rows.row(4)
+                .timestamp(LocalDateTime.of(2000, 1, 1, 0, 0, 0, 123_456_000))
+                .timestamp(LocalDateTime.of(1999, 12, 31, 23, 59, 59, 500_000_000))
+                .timestamp(LocalDateTime.of(1970, 1, 1, 0, 0, 0))
+                // 微秒以下截断
+                .timestamp(LocalDateTime.of(2000, 1, 2, 0, 0, 1, 999_999_999));
+
+        ByteBuffer expected = ByteBuffer.allocate(2 + 12 * 4);
+        expected.putShort((short) 4);
+        expected.putInt(8).putLong(123_456L);
+        expected.putInt(8).putLong(-500_000L);
+        expected.putInt(8).putLong(-10957L * 86_400_000_000L);
+        expected.putInt(8).putLong(86_401_000_000L + 999_999L);
+        assertArrayEquals(file(expected.array()), encode(rows));
+    }
+
+    @Test
+    void multipleRowsAreConcatenated() throws SQLException {
+        PgCopyRows rows = new PgCopyRows();
+        rows.row(1).int4(1);
+        rows.row(2).int4(2).nul();
+
+        ByteBuffer expected = ByteBuffer.allocate((2 + 8) + (2 + 8 + 4));
+        expected.putShort((short) 1).putInt(4).putInt(1);
+        expected.putShort((short) 2).putInt(4).putInt(2).putInt(-1);
+        assertArrayEquals(file(expected.array()), encode(rows));
+        assertEquals(2, rows.rows());
+    }
+
+    /** 跨越多个 1MB 分块（含一个超过分块大小的字段）时，边编码边发送与全部留在内存中的结果逐字节相同 */
+    @Test
+    void streamingMatchesInMemoryAcrossChunks() throws SQLException {
+        char[] longText = new char[(1 << 20) + 17];
+        Arrays.fill(longText, 'x');
+        String huge = new String(longText);
+        PgBulkLoader.RowWriter writer = rows -> {
+            for (int i = 0; i < 200_000; i++) {
+                rows.row(3).int8(i).text(i % 7 == 0 ? "中" + i : "r" + i).float8(i * 0.5);
+                if (i == 100_000) {
+                    rows.row(1).text(huge);
+                }
+            }
+        };
+
+        PgCopyRows inMemory = new PgCopyRows();
+        writer.write(inMemory);
+        byte[] expected = encode(inMemory);
+
+        RecordingCopyIn streamed = new RecordingCopyIn();
+        PgCopyRows.stream(streamed.proxy(), writer);
+        assertArrayEquals(expected, streamed.bytes());
+        assertTrue(streamed.writes > 2, "数据应分多次发送");
+        assertTrue(streamed.largestWrite <= huge.length() + 4 + (1 << 20), "每次只发送一个分块");
+    }
+
+    private static byte[] encode(PgCopyRows rows) throws SQLException {
+        RecordingCopyIn copyIn = new RecordingCopyIn();
+        rows.writeTo(copyIn.proxy());
+        return copyIn.bytes();
+    }
+
+    private static byte[] file(byte[] body) {
+        return concat(concat(HEADER, body), TRAILER);
+    }
+
+    private static void writeText(ByteArrayOutputStream out, byte[] utf8) {
+        out.writeBytes(ByteBuffer.allocate(4).putInt(utf8.length).array());
+        out.writeBytes(utf8);
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    /** 只记录 writeToCopy 收到的字节；每次调用都复制一份，发送方复用缓冲区时也能核对 */
+    private static final class RecordingCopyIn {
+        private final List<byte[]> chunks = new ArrayList<>();
+        private int writes;
+        private int largestWrite;
+
+        CopyIn proxy() {
+            return (CopyIn) Proxy.newProxyInstance(CopyIn.class.getClassLoader(), new Class<?>[]{CopyIn.class},
+                    (proxy, method, args) -> {
+                        if (method.getName().equals("writeToCopy") && args.length == 3) {
+                            byte[] data = (byte[]) args[0];
+                            int offset = (Integer) args[1];
+                            int length = (Integer) args[2];
+                            chunks.add(Arrays.copyOfRange(data, offset, offset + length));
+                            writes++;
+                            largestWrite = Math.max(largestWrite, length);
+                            return null;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    });
+        }
+
+        byte[] bytes() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            chunks.forEach(out::writeBytes);
+            return out.toByteArray();
+        }
+    }
+}
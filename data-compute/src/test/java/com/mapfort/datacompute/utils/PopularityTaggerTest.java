@@ -0,0 +1,31 @@
+package com.mapfort.datacompute.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/** 阈值为 percentile_disc(0.75/0.5/0.25)，频率不低于阈值即归入该档 */
+class PopularityTaggerTest {
+
+    @Test
+    void tagsByQuartileThresholds() {
+        // 1..8 的 percentile_disc(0.75/0.5/0.25) 为 6、4、2
+        int[] frequencies = {8, 1, 6, 5, 2, 7, 3, 4};
+        assertArrayEquals(new byte[]{0, 3, 0, 1, 2, 0, 2, 1}, PopularityTagger.assign(frequencies));
+    }
+
+    @Test
+    void equalFrequenciesShareTheTopTag() {
+        assertArrayEquals(new byte[]{0, 0, 0}, PopularityTagger.assign(new int[]{5, 5, 5}));
+        assertEquals(0, PopularityTagger.assign(new int[0]).length);
+    }
+
+    @Test
+    void tagNamesAreUtf8() {
+        assertArrayEquals("极热门路段".getBytes(StandardCharsets.UTF_8), PopularityTagger.utf8((byte) 0));
+        assertArrayEquals("冷门路段".getBytes(StandardCharsets.UTF_8), PopularityTagger.utf8((byte) 3));
+    }
+}
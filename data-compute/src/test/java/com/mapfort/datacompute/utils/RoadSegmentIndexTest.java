@@ -0,0 +1,128 @@
+package com.mapfort.datacompute.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 与逐条线段扫描比对最近道路：随机线段（含负坐标）、maxDistance 恰好等于距离的边界、
+ * 只有一条线段的索引、分多次添加的多段道路，以及没有线段的索引。
+ */
+class RoadSegmentIndexTest {
+
+    @Test
+    void matchesBruteForceOnRandomRoads() {
+        SplittableRandom random = new SplittableRandom(7);
+        List<double[]> segments = new ArrayList<>();
+        RoadSegmentIndex.Builder builder = RoadSegmentIndex.builder();
+        for (long id = 1; id <= 3000; id++) {
+            // 跨越 0 经线与赤道，含负坐标
+            int n = 2 + random.nextInt(6);
+            double[] lon = new double[n];
+            double[] lat = new double[n];
+            lon[0] = random.nextDouble(-1, 1);
+            lat[0] = random.nextDouble(-1, 1);
+            for (int i = 1; i < n; i++) {
+                lon[i] = lon[i - 1] + random.nextDouble(-0.01, 0.01);
+                lat[i] = lat[i - 1] + random.nextDouble(-0.01, 0.01);
+            }
+            builder.add(id, lon, lat, n);
+            for (int i = 1; i < n; i++) {
+                segments.add(new double[]{id, lon[i - 1], lat[i - 1], lon[i], lat[i]});
+            }
+        }
+        RoadSegmentIndex index = builder.build();
+        assertEquals(3000, index.roadCount());
+        assertEquals(segments.size(), index.segmentCount());
+
+        int[] stack = index.newStack();
+        for (int q = 0; q < 5000; q++) {
+            double x = random.nextDouble(-1.1, 1.1);
+            double y = random.nextDouble(-1.1, 1.1);
+            // 很大的 maxDistance 会展开更多子树，同时检验 newStack() 的容量
+            double maxDistance = q % 3 == 0 ? 0.003 : q % 3 == 1 ? 0.05 : 10;
+            assertNearest(index, stack, segments, x, y, maxDistance);
+        }
+    }
+
+    @Test
+    void maxDistanceIsInclusive() {
+        RoadSegmentIndex index = RoadSegmentIndex.builder()
+                .add(42, new double[]{-1, 1}, new double[]{0, 0}, 2)
+                .build();
+        int[] stack = index.newStack();
+        assertEquals(1, index.segmentCount());
+        // 垂足在线段内
+        assertEquals(42, roadIdOf(index, index.nearest(0, 0.5, 0.5, stack)));
+        assertEquals(-1, index.nearest(0, 0.5, 0.4999999, stack));
+        // 最近点为端点 (1, 0)，距离 0.5
+        assertEquals(42, roadIdOf(index, index.nearest(1.5, 0, 0.5, stack)));
+        assertEquals(-1, index.nearest(1.5, 0, 0.25, stack));
+        // 负坐标一侧
+        assertEquals(42, roadIdOf(index, index.nearest(-1.25, -0.0, 0.25, stack)));
+    }
+
+    /** 同一道路分多次添加（多段线的各部件）时共用一个道路下标，部件之间不连线 */
+    @Test
+    void multiPartRoadSharesOneIndexWithoutBridging() {
+        RoadSegmentIndex index = RoadSegmentIndex.builder()
+                .add(7, new double[]{0, 1}, new double[]{0, 0}, 2)
+                .add(7, new double[]{3, 4}, new double[]{0, 0}, 2)
+                .add(8, new double[]{2, 2}, new double[]{0.3, 1}, 2)
+                .build();
+        int[] stack = index.newStack();
+        assertEquals(2, index.roadCount());
+        assertEquals(3, index.segmentCount());
+        assertEquals(7, roadIdOf(index, index.nearest(3.5, 0.1, 1, stack)));
+        // (2, 0) 位于两个部件之间：若把部件首尾相连会误判为道路 7
+        assertEquals(8, roadIdOf(index, index.nearest(2, 0, 0.5, stack)));
+        assertEquals(-1, index.nearest(2, -0.5, 0.5, stack));
+    }
+
+    @Test
+    void emptyIndexFindsNothing() {
+        RoadSegmentIndex index = RoadSegmentIndex.builder()
+                .add(1, new double[]{5}, new double[]{5}, 1)
+                .build();
+        assertEquals(0, index.segmentCount());
+        assertEquals(-1, index.nearest(5, 5, 10, index.newStack()));
+    }
+
+    private static void assertNearest(RoadSegmentIndex index, int[] stack, List<double[]> segments,
+                                      double x, double y, double maxDistance) {
+        double best = Double.POSITIVE_INFINITY;
+        for (double[] s : segments) {
+            best = Math.min(best, distance(s, x, y));
+        }
+        int found = index.nearest(x, y, maxDistance, stack);
+        if (best > maxDistance) {
+            assertEquals(-1, found, "(" + x + ", " + y + ")");
+            return;
+        }
+        // 距离并列时可能返回其中任一条，比较距离而不是 ID
+        long id = index.roadId(found);
+        double foundDistance = Double.POSITIVE_INFINITY;
+        for (double[] s : segments) {
+            if ((long) s[0] == id) {
+                foundDistance = Math.min(foundDistance, distance(s, x, y));
+            }
+        }
+        assertEquals(best, foundDistance, 1e-12, "(" + x + ", " + y + ")");
+    }
+
+    private static double distance(double[] s, double x, double y) {
+        double dx = s[3] - s[1];
+        double dy = s[4] - s[2];
+        double len2 = dx * dx + dy * dy;
+        double t = len2 == 0 ? 0 : Math.max(0, Math.min(1, ((x - s[1]) * dx + (y - s[2]) * dy) / len2));
+        return Math.hypot(s[1] + t * dx - x, s[2] + t * dy - y);
+    }
+
+    private static long roadIdOf(RoadSegmentIndex index, int road) {
+        return road < 0 ? -1 : index.roadId(road);
+    }
+}
@@ -0,0 +1,63 @@
+package com.mapfort.datacompute.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 数组文本解析：空数组、NULL 元素、负 id、[m:n]= 下标前缀，口径同 UNNEST 后忽略 NULL 再计数。
+ */
+class RoadTraversalCounterTest {
+
+    @Test
+    void emptyArrayCountsNothing() {
+        assertEquals(Map.of(), parse("{}"));
+        assertEquals(Map.of(), parse("[1:0]={}"));
+    }
+
+    @Test
+    void nullElementsAreSkipped() {
+        assertEquals(Map.of(), parse("{NULL}"));
+        assertEquals(Map.of(), parse("{NULL,NULL}"));
+        assertEquals(Map.of(5L, 1, 6L, 1), parse("{NULL,5,NULL,6,NULL}"));
+    }
+
+    @Test
+    void negativeAndLargeIds() {
+        assertEquals(Map.of(-3L, 2, 3L, 1, 0L, 1), parse("{-3,3,-3,0}"));
+        assertEquals(Map.of(Long.MAX_VALUE, 1, Long.MIN_VALUE, 1, 12345678901L, 1),
+                parse("{9223372036854775807,-9223372036854775808,12345678901}"));
+    }
+
+    @Test
+    void subscriptPrefixIsIgnored() {
+        assertEquals(Map.of(10L, 2, -20L, 1), parse("[0:2]={10,-20,10}"));
+        assertEquals(Map.of(7L, 1), parse("[-1:0]={NULL,7}"));
+    }
+
+    @Test
+    void rowsAccumulateIntoOneCounter() {
+        LongIntCounter counter = new LongIntCounter();
+        RoadTraversalCounter.addArrayText(counter, "{1,2}");
+        RoadTraversalCounter.addArrayText(counter, "{}");
+        RoadTraversalCounter.addArrayText(counter, "[2:3]={2,NULL}");
+        assertEquals(2, counter.size());
+        assertEquals(1, counter.get(1));
+        assertEquals(2, counter.get(2));
+    }
+
+    private static Map<Long, Integer> parse(String text) {
+        LongIntCounter counter = new LongIntCounter();
+        RoadTraversalCounter.addArrayText(counter, text);
+        long[] keys = counter.keys();
+        int[] counts = counter.counts();
+        Map<Long, Integer> map = new HashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            map.put(keys[i], counts[i]);
+        }
+        return map;
+    }
+}
@@ -0,0 +1,34 @@
+package com.mapfort.benchmark;
+
+import com.mapfort.mapfortservice.utils.CoordinateTransformUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/** WGS-84 → GCJ-02 单点转换吞吐 */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CoordinateTransformBenchmark {
+
+    private static final int SIZE = 4096;
+
+    private double[] lon;
+    private double[] lat;
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        lon = SyntheticData.harbinLon(SIZE);
+        lat = SyntheticData.harbinLat(SIZE);
+    }
+
+    @Benchmark
+    public double[] wgs2gcj() {
+        int i = cursor++ & (SIZE - 1);
+        return CoordinateTransformUtil.wgs2gcj(lon[i], lat[i]);
+    }
+}
@@ -0,0 +1,59 @@
+package com.mapfort.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mapfort.mapfortservice.common.Result;
+import com.mapfort.mapfortservice.entity.HeatMapPointsDTO;
+import com.mapfort.mapfortservice.utils.HeatmapBinaryCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/** 完整热力图切片的响应编码：Result 包装的 JSON 与紧凑二进制 */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeatmapSerializationBenchmark {
+
+    @Param({"5000", "50000"})
+    public int points;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private Result<List<HeatMapPointsDTO>> response;
+    private double[] lon;
+    private double[] lat;
+    private int[] intensity;
+
+    @Setup
+    public void setup() {
+        lon = SyntheticData.harbinLon(points);
+        lat = SyntheticData.harbinLat(points);
+        intensity = new int[points];
+        SplittableRandom random = new SplittableRandom(SyntheticData.SEED);
+        List<HeatMapPointsDTO> dtos = new ArrayList<>(points);
+        for (int i = 0; i < points; i++) {
+            intensity[i] = random.nextInt(1, 500);
+            HeatMapPointsDTO dto = new HeatMapPointsDTO();
+            dto.setLon(lon[i]);
+            dto.setLat(lat[i]);
+            dto.setIntensity(intensity[i]);
+            dtos.add(dto);
+        }
+        response = Result.success(dtos);
+    }
+
+    @Benchmark
+    public byte[] json() throws Exception {
+        return objectMapper.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public byte[] binary() {
+        return HeatmapBinaryCodec.encode(lon, lat, intensity, points);
+    }
+}
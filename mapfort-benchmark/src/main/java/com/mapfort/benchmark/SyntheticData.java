@@ -0,0 +1,99 @@
+package com.mapfort.benchmark;
+
+import org.springframework.util.LinkedCaseInsensitiveMap;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * 基准测试用的合成数据，固定随机种子，保证不同版本之间结果可比。
+ * 行数据的 Java 类型与 PgJDBC + queryForList 实际返回的类型一致。
+ */
+public final class SyntheticData {
+
+    public static final long SEED = 20250501L;
+
+    /** 哈尔滨主城区大致范围 */
+    private static final double MIN_LON = 126.45;
+    private static final double MAX_LON = 126.85;
+    private static final double MIN_LAT = 45.60;
+    private static final double MAX_LAT = 45.90;
+
+    private SyntheticData() {
+    }
+
+    public static double[] harbinLon(int n) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        double[] lon = new double[n];
+        for (int i = 0; i < n; i++) {
+            lon[i] = MIN_LON + random.nextDouble() * (MAX_LON - MIN_LON);
+        }
+        return lon;
+    }
+
+    public static double[] harbinLat(int n) {
+        SplittableRandom random = new SplittableRandom(SEED + 1);
+        double[] lat = new double[n];
+        for (int i = 0; i < n; i++) {
+            lat[i] = MIN_LAT + random.nextDouble() * (MAX_LAT - MIN_LAT);
+        }
+        return lat;
+    }
+
+    /** 长尾分布的路段访问频率：少数路段极热，大多数路段很冷 */
+    public static int[] roadFrequencies(int n) {
+        SplittableRandom random = new SplittableRandom(SEED + 2);
+        int[] freq = new int[n];
+        for (int i = 0; i < n; i++) {
+            double u = random.nextDouble(1e-6, 1.0);
+            freq[i] = (int) Math.min(1_000_000, Math.floor(1.0 / Math.pow(u, 1.2)));
+        }
+        return freq;
+    }
+
+    /** 模拟 GridHotspotLabelTask.queryChanged 读出的行 */
+    public static List<Map<String, Object>> hotGridRows(int n) {
+        SplittableRandom random = new SplittableRandom(SEED + 3);
+        String[] levels = {"高", "中", "低"};
+        List<Map<String, Object>> rows = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            double lon = Math.floor((MIN_LON + random.nextDouble() * (MAX_LON - MIN_LON)) / 0.001) * 0.001 + 0.0005;
+            double lat = Math.floor((MIN_LAT + random.nextDouble() * (MAX_LAT - MIN_LAT)) / 0.001) * 0.001 + 0.0005;
+            Map<String, Object> row = new LinkedCaseInsensitiveMap<>(10);
+            row.put("grid_id", Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong()));
+            row.put("pickup_count", random.nextInt(1, 500));
+            row.put("lon_center", lon);
+            row.put("lat_center", lat);
+            row.put("lon_gcj", lon + 0.0065);
+            row.put("lat_gcj", lat + 0.0024);
+            row.put("stat_hour", BigDecimal.valueOf(random.nextInt(24)));
+            row.put("is_workday", random.nextInt(7) < 5);
+            row.put("heat_level", levels[random.nextInt(levels.length)]);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /** 模拟 PickupHeatmapGridTask.queryGridStats 的结果行 */
+    public static List<Map<String, Object>> pickupGridRows(int n) {
+        SplittableRandom random = new SplittableRandom(SEED + 4);
+        LocalDate start = LocalDate.of(2025, 1, 1);
+        List<Map<String, Object>> rows = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Map<String, Object> row = new LinkedCaseInsensitiveMap<>(8);
+            row.put("grid_id", Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong()));
+            row.put("lon_center", Math.floor((MIN_LON + random.nextDouble() * (MAX_LON - MIN_LON)) / 0.001) * 0.001 + 0.0005);
+            row.put("lat_center", Math.floor((MIN_LAT + random.nextDouble() * (MAX_LAT - MIN_LAT)) / 0.001) * 0.001 + 0.0005);
+            row.put("pickup_count", (long) random.nextInt(1, 500));
+            row.put("stat_hour", BigDecimal.valueOf(random.nextInt(24)));
+            row.put("stat_date", Date.valueOf(start.plusDays(random.nextInt(31))));
+            rows.add(row);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,32 @@
+package com.mapfort.datacompute.adsUtils;
+
+import com.mapfort.benchmark.SyntheticData;
+import com.mapfort.datacompute.utils.PopularityTagger;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/** RoadPopularityStatisticsTask 的分位数计算与热度标签分配（{@link PopularityTagger}） */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class RoadPopularityStatisticsTaskBenchmark {
+
+    @Param({"100000", "1000000", "10000000"})
+    public int roads;
+
+    private int[] frequencies;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        frequencies = SyntheticData.roadFrequencies(roads);
+    }
+
+    @Benchmark
+    public byte[] assignPopularityTags() {
+        return PopularityTagger.assign(frequencies);
+    }
+}
@@ -0,0 +1,62 @@
+package com.mapfort.datacompute.dwsUtils;
+
+import com.mapfort.benchmark.SyntheticData;
+import com.mapfort.datacompute.utils.PgCopyRows;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** PickupHeatmapGridTask 把聚合结果（含 GCJ-02 换算）编码为 COPY 二进制行的开销 */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx4g"})
+public class PickupHeatmapGridBatchBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int rows;
+
+    private String[] gridId;
+    private double[] lon;
+    private double[] lat;
+    private int[] pickupCount;
+    private int[] statHour;
+    private LocalDate[] statDate;
+    private LocalDateTime now;
+
+    @Setup
+    public void setup() {
+        List<Map<String, Object>> data = SyntheticData.pickupGridRows(rows);
+        gridId = new String[rows];
+        lon = new double[rows];
+        lat = new double[rows];
+        pickupCount = new int[rows];
+        statHour = new int[rows];
+        statDate = new LocalDate[rows];
+        for (int i = 0; i < rows; i++) {
+            Map<String, Object> r = data.get(i);
+            gridId[i] = (String) r.get("grid_id");
+            lon[i] = ((Number) r.get("lon_center")).doubleValue();
+            lat[i] = ((Number) r.get("lat_center")).doubleValue();
+            pickupCount[i] = ((Number) r.get("pickup_count")).intValue();
+            statHour[i] = ((Number) r.get("stat_hour")).intValue();
+            statDate[i] = ((java.sql.Date) r.get("stat_date")).toLocalDate();
+        }
+        now = LocalDateTime.now();
+    }
+
+    @Benchmark
+    public long encodeRows() {
+        PgCopyRows copyRows = new PgCopyRows();
+        for (int i = 0; i < rows; i++) {
+            PickupHeatmapGridTask.appendRow(copyRows, gridId[i], lon[i], lat[i], pickupCount[i], statHour[i], statDate[i], now);
+        }
+        return copyRows.bytes();
+    }
+}
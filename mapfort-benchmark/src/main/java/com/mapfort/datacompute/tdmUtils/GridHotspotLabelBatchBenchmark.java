@@ -0,0 +1,69 @@
+package com.mapfort.datacompute.tdmUtils;
+
+import com.mapfort.benchmark.SyntheticData;
+import com.mapfort.datacompute.utils.PgCopyRows;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** GridHotspotLabelTask 分级并编码为 COPY 二进制行的开销 */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx4g"})
+public class GridHotspotLabelBatchBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int rows;
+
+    private final double[] quantiles = {300, 150};
+    private String[] gridId;
+    private int[] pickupCount;
+    private double[] lon;
+    private double[] lat;
+    private double[] lonGcj;
+    private double[] latGcj;
+    private int[] statHour;
+    private boolean[] workday;
+    private LocalDateTime now;
+
+    @Setup
+    public void setup() {
+        List<Map<String, Object>> data = SyntheticData.hotGridRows(rows);
+        gridId = new String[rows];
+        pickupCount = new int[rows];
+        lon = new double[rows];
+        lat = new double[rows];
+        lonGcj = new double[rows];
+        latGcj = new double[rows];
+        statHour = new int[rows];
+        workday = new boolean[rows];
+        for (int i = 0; i < rows; i++) {
+            Map<String, Object> r = data.get(i);
+            gridId[i] = (String) r.get("grid_id");
+            pickupCount[i] = ((Number) r.get("pickup_count")).intValue();
+            lon[i] = ((Number) r.get("lon_center")).doubleValue();
+            lat[i] = ((Number) r.get("lat_center")).doubleValue();
+            lonGcj[i] = ((Number) r.get("lon_gcj")).doubleValue();
+            latGcj[i] = ((Number) r.get("lat_gcj")).doubleValue();
+            statHour[i] = ((Number) r.get("stat_hour")).intValue();
+            workday[i] = (Boolean) r.get("is_workday");
+        }
+        now = LocalDateTime.now();
+    }
+
+    @Benchmark
+    public long encodeRows() {
+        PgCopyRows copyRows = new PgCopyRows();
+        for (int i = 0; i < rows; i++) {
+            GridHotspotLabelTask.appendRow(copyRows, gridId[i], GridHotspotLabelTask.level(pickupCount[i], quantiles),
+                    pickupCount[i], lon[i], lat[i], lonGcj[i], latGcj[i], statHour[i], workday[i], now);
+        }
+        return copyRows.bytes();
+    }
+}
@@ -0,0 +1,79 @@
+package com.mapfort.datacompute.utils;
+
+import com.mapfort.benchmark.SyntheticData;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/** RoadSegmentIndex 的构建与上车点最近道路查询（单线程） */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class RoadSegmentIndexBenchmark {
+
+    /** 每条合成道路的节点数与相邻节点间距（度） */
+    private static final int NODES = 8;
+    private static final double STEP = 0.001;
+
+    @Param({"20000", "100000"})
+    public int roads;
+
+    @Param({"1000000"})
+    public int points;
+
+    private double[][] roadLon;
+    private double[][] roadLat;
+    private double[] lon;
+    private double[] lat;
+    private RoadSegmentIndex index;
+    private int[] stack;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        lon = SyntheticData.harbinLon(points);
+        lat = SyntheticData.harbinLat(points);
+        // 道路起点取随机上车点附近，节点按随机转向的折线延伸
+        SplittableRandom random = new SplittableRandom(SyntheticData.SEED + 10);
+        roadLon = new double[roads][NODES];
+        roadLat = new double[roads][NODES];
+        for (int r = 0; r < roads; r++) {
+            int k = random.nextInt(points);
+            double x = lon[k] + random.nextDouble(-0.005, 0.005);
+            double y = lat[k] + random.nextDouble(-0.005, 0.005);
+            double heading = random.nextDouble(2 * Math.PI);
+            for (int i = 0; i < NODES; i++) {
+                roadLon[r][i] = x;
+                roadLat[r][i] = y;
+                heading += random.nextDouble(-0.3, 0.3);
+                x += STEP * Math.cos(heading);
+                y += STEP * Math.sin(heading);
+            }
+        }
+        index = build();
+        stack = index.newStack();
+    }
+
+    @Benchmark
+    public RoadSegmentIndex build() {
+        RoadSegmentIndex.Builder builder = RoadSegmentIndex.builder();
+        for (int r = 0; r < roads; r++) {
+            builder.add(r, roadLon[r], roadLat[r], NODES);
+        }
+        return builder.build();
+    }
+
+    @Benchmark
+    public long nearest() {
+        long matched = 0;
+        for (int i = 0; i < points; i++) {
+            if (index.nearest(lon[i], lat[i], 0.0005, stack) >= 0) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+}
@@ -0,0 +1,37 @@
+package com.mapfort.mapfortservice.common;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内缓存命中统计（mapfort.cache.requests，标签 cache、result=hit|miss），
+ * 命中率 = hit / (hit + miss)。
+ */
+@Component
+@RequiredArgsConstructor
+public class CacheMetrics {
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    public void hit(String cache) {
+        counter(cache, "hit").increment();
+    }
+
+    public void miss(String cache) {
+        counter(cache, "miss").increment();
+    }
+
+    private Counter counter(String cache, String result) {
+        return counters.computeIfAbsent(cache + '/' + result, k -> Counter.builder("mapfort.cache.requests")
+                .description("缓存请求次数")
+                .tag("cache", cache)
+                .tag("result", result)
+                .register(meterRegistry));
+    }
+}
@@ -0,0 +1,45 @@
+package com.mapfort.mapfortservice.common;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按 SQL 语句名记录 JDBC 耗时（mapfort.jdbc.query）与返回行数（mapfort.jdbc.rows）。
+ * 语句名为调用方给出的固定字符串（如 "tdm_hot_grids.load"），不能带参数值，避免标签基数膨胀。
+ */
+@Component
+@RequiredArgsConstructor
+public class JdbcMetrics {
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Meters> meters = new ConcurrentHashMap<>();
+
+    /** 从 startNanos（System.nanoTime()）起计时到现在 */
+    public void record(String statement, long startNanos, long rows) {
+        Meters m = meters.computeIfAbsent(statement, this::register);
+        m.timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        m.rows.record(rows);
+    }
+
+    private Meters register(String statement) {
+        return new Meters(
+                Timer.builder("mapfort.jdbc.query")
+                        .description("JDBC 语句耗时")
+                        .tag("statement", statement)
+                        .register(meterRegistry),
+                DistributionSummary.builder("mapfort.jdbc.rows")
+                        .description("JDBC 语句返回行数")
+                        .tag("statement", statement)
+                        .register(meterRegistry));
+    }
+
+    private record Meters(Timer timer, DistributionSummary rows) {
+    }
+}
@@ -0,0 +1,79 @@
+package com.mapfort.mapfortservice.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 数据源：主库连接池 + 可选的只读副本连接池，经 {@link ReplicaRoutingDataSource} 路由。
+ * 每个连接池使用独立的 pool-name，hikaricp.* 指标按 pool 标签区分。
+ */
+@Configuration
+@EnableConfigurationProperties(ReplicaDataSourceProperties.class)
+public class DataSourceConfig {
+
+    /** 主库连接池，spring.datasource.hikari.* 作用于此 */
+    @Bean(destroyMethod = "close")
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean(destroyMethod = "close")
+    public ReplicaRoutingDataSource replicaRoutingDataSource(HikariDataSource primaryDataSource,
+                                                             DataSourceProperties properties,
+                                                             ReplicaDataSourceProperties replicaProperties,
+                                                             MeterRegistry meterRegistry) {
+        String poolPrefix = primaryDataSource.getPoolName() == null ? "replica" : primaryDataSource.getPoolName() + "-replica";
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (int i = 0; i < replicaProperties.getReplicas().size(); i++) {
+            ReplicaDataSourceProperties.Replica replica = replicaProperties.getReplicas().get(i);
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setPoolName(poolPrefix + "-" + i);
+            dataSource.setDriverClassName(properties.getDriverClassName());
+            dataSource.setJdbcUrl(replica.getUrl());
+            dataSource.setUsername(replica.getUsername() != null ? replica.getUsername() : properties.getUsername());
+            dataSource.setPassword(replica.getPassword() != null ? replica.getPassword() : properties.getPassword());
+            dataSource.setReadOnly(true);
+            dataSource.setMaximumPoolSize(replicaProperties.getReplicaPoolSize());
+            dataSource.setConnectionTimeout(replicaProperties.getReplicaConnectionTimeoutMs());
+            // 副本不可达时不阻止启动，由健康检查决定是否参与路由
+            dataSource.setInitializationFailTimeout(-1);
+            dataSource.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            replicas.add(dataSource);
+        }
+
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(
+                primaryDataSource, replicas, replicaProperties.getValidationTimeoutSeconds());
+        for (int i = 0; i < routing.replicaCount(); i++) {
+            int index = i;
+            Gauge.builder("mapfort.datasource.replica.healthy", routing, r -> r.isHealthy(index) ? 1 : 0)
+                    .description("只读副本是否参与路由")
+                    .tag("pool", routing.replicaPoolName(index))
+                    .register(meterRegistry);
+        }
+        return routing;
+    }
+
+    /**
+     * 应用使用的数据源（JdbcTemplate、事务管理器均基于它）。
+     * 延迟到第一条语句才取物理连接，此时事务的只读标记已设置，路由才能据此选择主库或副本。
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+}
@@ -0,0 +1,36 @@
+package com.mapfort.mapfortservice.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 只读副本配置（mapfort.datasource.*）。未配置副本时所有查询仍走主库。
+ */
+@Data
+@ConfigurationProperties(prefix = "mapfort.datasource")
+public class ReplicaDataSourceProperties {
+
+    /** 只读副本列表 */
+    private List<Replica> replicas = new ArrayList<>();
+
+    /** 每个副本连接池的最大连接数 */
+    private int replicaPoolSize = 10;
+
+    /** 从副本池获取连接的超时（毫秒），超时即换下一个副本或回退主库 */
+    private long replicaConnectionTimeoutMs = 2000;
+
+    /** 健康检查时 Connection.isValid 的超时（秒） */
+    private int validationTimeoutSeconds = 2;
+
+    @Data
+    public static class Replica {
+        private String url;
+        /** 为空时沿用 spring.datasource.username */
+        private String username;
+        /** 为空时沿用 spring.datasource.password */
+        private String password;
+    }
+}
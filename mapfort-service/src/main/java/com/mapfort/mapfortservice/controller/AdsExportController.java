@@ -0,0 +1,65 @@
+package com.mapfort.mapfortservice.controller;
+
+import com.mapfort.mapfortservice.service.CsvExportService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/export")
+@RequiredArgsConstructor
+@CrossOrigin
+@Tag(name = "数据导出", description = "ADS 结果表流式导出相关接口")
+public class AdsExportController {
+
+    private final CsvExportService csvExportService;
+
+    /**
+     * 流式导出整张 ADS 表为 CSV，服务端游标分批读取，不在内存中汇总结果。
+     *
+     * @param table 表名，见 {@link CsvExportService#TABLES}
+     * @param gzip  是否 gzip 压缩输出
+     * @param limit 最多导出行数，不传表示全表
+     */
+    @GetMapping("/{table}")
+    @Operation(
+            summary = "导出ADS表csv",
+            description = "按表名流式导出 ads_road_popularity_statistics、ads_recommend_pickup_ways 等结果表，可选 gzip 压缩"
+    )
+    public void exportTable(
+            @PathVariable("table") String table,
+            @RequestParam(value = "gzip", defaultValue = "false") boolean gzip,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            HttpServletResponse response
+    ) throws IOException {
+        CsvExportService.ExportTable exportTable = CsvExportService.TABLES.get(table);
+        if (exportTable == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "不支持导出的表: " + table);
+            return;
+        }
+
+        String filename = table + (gzip ? ".csv.gz" : ".csv");
+        response.setContentType(gzip ? "application/gzip" : "text/csv");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + filename + "\"");
+
+        OutputStream out = response.getOutputStream();
+        if (gzip) {
+            out = new GZIPOutputStream(out, 64 * 1024);
+        }
+        long rows = csvExportService.exportTable(exportTable, limit, out);
+        if (out instanceof GZIPOutputStream gzipOut) {
+            gzipOut.finish();
+        }
+        out.flush();
+        log.info("Exported {} rows from {} (gzip={}).", rows, table, gzip);
+    }
+}
@@ -1,17 +1,26 @@
 package com.mapfort.mapfortservice.controller;
 
 import com.mapfort.mapfortservice.entity.HeatMapPointsDTO;
-import com.mapfort.mapfortservice.utils.CoordinateTransformUtil;
+import com.mapfort.mapfortservice.entity.HeatmapSliceDTO;
+import com.mapfort.mapfortservice.service.HeatmapSlice;
+import com.mapfort.mapfortservice.service.HeatmapSliceCache;
+import com.mapfort.mapfortservice.service.HeatmapStreamService;
+import com.mapfort.mapfortservice.service.HeatmapTileService;
+import com.mapfort.mapfortservice.utils.HeatmapBinaryCodec;
+import com.mapfort.mapfortservice.utils.MvtEncoder;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
-import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import com.mapfort.mapfortservice.common.Result;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 import static com.mapfort.mapfortservice.common.Result.success;
 
@@ -22,42 +31,253 @@ import static com.mapfort.mapfortservice.common.Result.success;
 @Tag(name = "热力图渲染", description = "热力图渲染相关接口")
 public class HeatmapQueryController {
 
-    private final JdbcTemplate jdbcTemplate;
+    private final HeatmapSliceCache heatmapSliceCache;
+    private final HeatmapTileService heatmapTileService;
+    private final HeatmapStreamService heatmapStreamService;
 
     /**
      * 查询指定星期几和小时的热力图点数据（用于周期性热力图）
      *
      * @param workday   星期几，0 = 周日，1 = 周一，... 6 = 周六
-     * @param hour  小时（0~23）
+     * @param hour  小时（0~23），超出范围时返回空列表
+     * @param minLon 视口最小经度（GCJ-02，可选，四个视口参数需同时给出）
+     * @param minLat 视口最小纬度
+     * @param maxLon 视口最大经度
+     * @param maxLat 视口最大纬度
      */
     @GetMapping
     @Operation(
             summary = "获取区域热度List",
-            description = "根据是否是工作日、当前时间获取区域热度List"
+            description = "根据是否是工作日、当前时间获取区域热度List，可选按视口矩形过滤"
     )
     public Result<List<HeatMapPointsDTO>> getHeatmapByDayAndHour(
+            @RequestParam("workday") boolean workday,
+            @RequestParam("hour") int hour,
+            @RequestParam(value = "minLon", required = false) Double minLon,
+            @RequestParam(value = "minLat", required = false) Double minLat,
+            @RequestParam(value = "maxLon", required = false) Double maxLon,
+            @RequestParam(value = "maxLat", required = false) Double maxLat
+    ) {
+        if (hour < 0 || hour >= HeatmapSliceCache.HOURS) {
+            // 与直接查询 tdm_hot_grids 时一致：没有该小时的数据，返回空列表
+            return Result.success(List.of());
+        }
+        boolean anyBound = minLon != null || minLat != null || maxLon != null || maxLat != null;
+        boolean allBounds = minLon != null && minLat != null && maxLon != null && maxLat != null;
+        if (anyBound && !allBounds) {
+            return Result.error("minLon、minLat、maxLon、maxLat 需同时提供");
+        }
+
+        HeatmapSlice slice = heatmapSliceCache.getSlice(workday, hour);
+        if (allBounds) {
+            int[] hits = slice.query(minLon, minLat, maxLon, maxLat);
+            List<HeatMapPointsDTO> result = new ArrayList<>(hits.length);
+            for (int i : hits) {
+                result.add(toDto(slice, i));
+            }
+            return Result.success(result);
+        }
+
+        List<HeatMapPointsDTO> result = new ArrayList<>(slice.size());
+        for (int i = 0; i < slice.size(); i++) {
+            result.add(toDto(slice, i));
+        }
+
+        return Result.success(result);
+    }
+
+    private static HeatMapPointsDTO toDto(HeatmapSlice slice, int i) {
+        HeatMapPointsDTO dto = new HeatMapPointsDTO();
+        dto.setLon(slice.lon(i));
+        dto.setLat(slice.lat(i));
+        dto.setIntensity(slice.intensity(i));
+        return dto;
+    }
+
+    /**
+     * 同一切片的紧凑二进制表示，由 Accept: application/x-mapfort-heatmap 选择。
+     * 坐标为相对栅格原点的定点差值编码，热度为变长整数，格式见 {@link HeatmapBinaryCodec}。
+     * 参数与列表接口相同：给出视口时只编码视口内的点，hour 超出范围时返回空切片。
+     */
+    @GetMapping(produces = HeatmapBinaryCodec.MEDIA_TYPE)
+    @Operation(
+            summary = "获取区域热度（二进制）",
+            description = "与获取区域热度List相同的数据，使用定点差值 + 变长整数的紧凑二进制编码"
+    )
+    public ResponseEntity<byte[]> getHeatmapBinary(
+            @RequestParam("workday") boolean workday,
+            @RequestParam("hour") int hour,
+            @RequestParam(value = "minLon", required = false) Double minLon,
+            @RequestParam(value = "minLat", required = false) Double minLat,
+            @RequestParam(value = "maxLon", required = false) Double maxLon,
+            @RequestParam(value = "maxLat", required = false) Double maxLat
+    ) {
+        byte[] body;
+        if (hour < 0 || hour >= HeatmapSliceCache.HOURS) {
+            // 与列表接口一致：没有该小时的数据，返回空切片
+            body = HeatmapBinaryCodec.encode(new double[0], new double[0], new int[0], 0);
+        } else {
+            boolean anyBound = minLon != null || minLat != null || maxLon != null || maxLat != null;
+            boolean allBounds = minLon != null && minLat != null && maxLon != null && maxLat != null;
+            if (anyBound && !allBounds) {
+                return ResponseEntity.badRequest().build();
+            }
+            HeatmapSlice slice = heatmapSliceCache.getSlice(workday, hour);
+            body = allBounds ? slice.binary(slice.query(minLon, minLat, maxLon, maxLat)) : slice.binary();
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(HeatmapBinaryCodec.MEDIA_TYPE))
+                .body(body);
+    }
+
+    /**
+     * 热力栅格矢量瓦片（Mapbox Vector Tile），图层名 hot_grids，
+     * 每个栅格中心为一个点要素，属性为 pickup_count 与 heat_level。
+     * 坐标与列表接口一致使用 GCJ-02。
+     */
+    @GetMapping(value = "/tiles/{z}/{x}/{y}", produces = MvtEncoder.MEDIA_TYPE)
+    @Operation(
+            summary = "获取区域热度矢量瓦片",
+            description = "根据是否是工作日、当前时间获取指定 z/x/y 瓦片内的热力栅格（MVT 编码）"
+    )
+    public ResponseEntity<byte[]> getHeatmapTile(
+            @PathVariable("z") int z,
+            @PathVariable("x") int x,
+            @PathVariable("y") int y,
             @RequestParam("workday") boolean workday,
             @RequestParam("hour") int hour
     ) {
-        String sql = """
-        SELECT lon_center AS lon, lat_center AS lat, pickup_count AS intensity
-        FROM public.tdm_hot_grids
-        WHERE is_workday = ? AND stat_hour = ?
-    """;
-
-        List<HeatMapPointsDTO> result = jdbcTemplate.query(sql, (rs, rowNum) -> {
-            double lng = rs.getDouble("lon");
-            double lat = rs.getDouble("lat");
-            int intensity = rs.getInt("intensity");
-            double[] gcj = CoordinateTransformUtil.wgs2gcj(lng, lat);
-
-            HeatMapPointsDTO dto = new HeatMapPointsDTO();
-            dto.setLon(gcj[0]);
-            dto.setLat(gcj[1]);
-            dto.setIntensity(intensity);
-            return dto;
-        }, workday, hour);
+        if (hour < 0 || hour >= HeatmapSliceCache.HOURS || z < 0 || z > HeatmapTileService.MAX_ZOOM) {
+            return ResponseEntity.badRequest().build();
+        }
+        int n = 1 << z;
+        if (x < 0 || x >= n || y < 0 || y >= n) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        byte[] body = heatmapTileService.getTile(workday, hour, z, x, y);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(MvtEncoder.MEDIA_TYPE))
+                .body(body);
+    }
 
+    /**
+     * 一次请求获取多个时段的热力图（如时间轴动画的 24 个小时），所有切片取自同一份内存快照。
+     *
+     * @param slices 时段列表，每项为 "是否工作日:小时"，如 true:8,true:9
+     */
+    @GetMapping("/bulk")
+    @Operation(
+            summary = "批量获取区域热度List",
+            description = "按多个 是否工作日:小时 时段一次性获取区域热度，例如 slices=true:0,true:1"
+    )
+    public Result<List<HeatmapSliceDTO>> getHeatmapBulk(@RequestParam("slices") List<String> slices) {
+        List<SliceKey> keys = parseSlices(slices);
+        if (keys == null) {
+            return Result.error("slices 格式应为 是否工作日:小时，小时取值范围为 0~23");
+        }
+
+        HeatmapSliceCache.Snapshot snapshot = heatmapSliceCache.current();
+        List<HeatmapSliceDTO> result = new ArrayList<>(keys.size());
+        for (SliceKey key : keys) {
+            HeatmapSlice slice = snapshot.slice(key.workday(), key.hour());
+            List<HeatMapPointsDTO> points = new ArrayList<>(slice.size());
+            for (int i = 0; i < slice.size(); i++) {
+                points.add(toDto(slice, i));
+            }
+            HeatmapSliceDTO dto = new HeatmapSliceDTO();
+            dto.setWorkday(key.workday());
+            dto.setHour(key.hour());
+            dto.setPoints(points);
+            result.add(dto);
+        }
         return Result.success(result);
     }
+
+    /** 批量接口的二进制表示：各切片的预编码结果直接拼接，格式见 {@link HeatmapBinaryCodec#encodeBulk} */
+    @GetMapping(value = "/bulk", produces = HeatmapBinaryCodec.MEDIA_TYPE)
+    @Operation(
+            summary = "批量获取区域热度（二进制）",
+            description = "与批量获取区域热度List相同的数据，使用紧凑二进制编码"
+    )
+    public ResponseEntity<byte[]> getHeatmapBulkBinary(@RequestParam("slices") List<String> slices) {
+        List<SliceKey> keys = parseSlices(slices);
+        if (keys == null) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        HeatmapSliceCache.Snapshot snapshot = heatmapSliceCache.current();
+        boolean[] workdays = new boolean[keys.size()];
+        int[] hours = new int[keys.size()];
+        byte[][] bodies = new byte[keys.size()][];
+        for (int i = 0; i < keys.size(); i++) {
+            SliceKey key = keys.get(i);
+            workdays[i] = key.workday();
+            hours[i] = key.hour();
+            bodies[i] = snapshot.slice(key.workday(), key.hour()).binary();
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(HeatmapBinaryCodec.MEDIA_TYPE))
+                .body(HeatmapBinaryCodec.encodeBulk(workdays, hours, bodies));
+    }
+
+    /**
+     * 热力图增量推送（Server-Sent Events）。连接建立后先推送 snapshot 事件（完整切片），
+     * 之后在数据刷新或整点切换时只推送 delta 事件（变化的栅格与已无数据的栅格编号）。
+     * 不传 workday、hour 时跟随服务器当前时段。
+     *
+     * @param workday 是否工作日（可选，需与 hour 同时提供）
+     * @param hour    小时（0~23，可选）
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(
+            summary = "订阅区域热度变化",
+            description = "SSE 推送：先推送完整切片（snapshot），之后只推送变化的栅格（delta）；不传时段参数则跟随当前时段"
+    )
+    public ResponseEntity<SseEmitter> streamHeatmap(
+            @RequestParam(value = "workday", required = false) Boolean workday,
+            @RequestParam(value = "hour", required = false) Integer hour
+    ) {
+        if (workday == null && hour == null) {
+            return ResponseEntity.ok(heatmapStreamService.follow());
+        }
+        if (workday == null || hour == null || hour < 0 || hour >= HeatmapSliceCache.HOURS) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(heatmapStreamService.subscribe(workday, hour));
+    }
+
+    /** 解析并按出现顺序去重，格式非法时返回 null */
+    private static List<SliceKey> parseSlices(List<String> slices) {
+        Set<SliceKey> keys = new LinkedHashSet<>();
+        for (String slice : slices) {
+            int colon = slice.indexOf(':');
+            if (colon < 0) {
+                return null;
+            }
+            String day = slice.substring(0, colon).trim();
+            boolean workday;
+            if ("true".equalsIgnoreCase(day) || "1".equals(day)) {
+                workday = true;
+            } else if ("false".equalsIgnoreCase(day) || "0".equals(day)) {
+                workday = false;
+            } else {
+                return null;
+            }
+            int hour;
+            try {
+                hour = Integer.parseInt(slice.substring(colon + 1).trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (hour < 0 || hour >= HeatmapSliceCache.HOURS) {
+                return null;
+            }
+            keys.add(new SliceKey(workday, hour));
+        }
+        return keys.isEmpty() ? null : new ArrayList<>(keys);
+    }
+
+    private record SliceKey(boolean workday, int hour) {
+    }
 }
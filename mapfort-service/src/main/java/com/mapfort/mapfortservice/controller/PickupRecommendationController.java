@@ -1,12 +1,18 @@
 package com.mapfort.mapfortservice.controller;
 
+import com.mapfort.mapfortservice.common.CacheMetrics;
 import com.mapfort.mapfortservice.common.Result;
+import com.mapfort.mapfortservice.entity.NearbyPickupRoadDTO;
 import com.mapfort.mapfortservice.entity.PickupRecommendationDTO;
+import com.mapfort.mapfortservice.service.HeatmapSliceCache;
+import com.mapfort.mapfortservice.service.NearbyPickupRoadIndex;
+import com.mapfort.mapfortservice.service.PickupRecommendationCache;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
-import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 
@@ -17,33 +23,77 @@ import java.util.List;
 @Tag(name = "上客区推荐", description = "出租车司机上客区推荐相关接口")
 public class PickupRecommendationController {
 
-    private final JdbcTemplate jdbcTemplate;
+    private static final int MAX_NEARBY_K = 50;
+    private static final double MAX_NEARBY_RADIUS = 20_000;
 
+    private final PickupRecommendationCache pickupRecommendationCache;
+    private final NearbyPickupRoadIndex nearbyPickupRoadIndex;
+    private final CacheMetrics cacheMetrics;
+
+    /**
+     * TopK 结果来自内存物化快照，响应带 ETag；
+     * 客户端携带 If-None-Match 且数据未变化时直接返回 304，不访问数据库也不返回响应体。
+     */
     @GetMapping
     @Operation(
-            summary = "获取Top5上客区域",
-            description = "根据是否是工作日、当前时间获取Top5上客区域"
+            summary = "获取TopK上客区域",
+            description = "根据是否是工作日、当前时间获取TopK上客区域（K 由 mapfort.recommend.top-k 配置，默认 5），支持 ETag 条件请求"
+    )
+    public ResponseEntity<Result<List<PickupRecommendationDTO>>> getTopRecommendations(
+            @RequestParam("workday") boolean workday,
+            @RequestParam("hour") int hour,
+            WebRequest webRequest
+    ) {
+        if (hour < 0 || hour >= HeatmapSliceCache.HOURS) {
+            // 与原先直接查表时一致：没有该小时的数据，返回空列表
+            return ResponseEntity.ok(Result.success(List.of()));
+        }
+
+        PickupRecommendationCache.Snapshot snapshot = pickupRecommendationCache.current();
+        if (webRequest.checkNotModified(snapshot.etag())) {
+            // 已设置 304 状态与 ETag 响应头
+            cacheMetrics.hit("recommend_etag");
+            return null;
+        }
+        cacheMetrics.miss("recommend_etag");
+
+        return ResponseEntity.ok()
+                .eTag(snapshot.etag())
+                .body(Result.success(snapshot.slice(workday, hour)));
+    }
+
+    /**
+     * 按司机位置推荐附近的上客道路，由内存空间索引直接应答。
+     *
+     * @param lon    司机经度（GCJ-02）
+     * @param lat    司机纬度（GCJ-02）
+     * @param radius 搜索半径（米）
+     * @param k      返回条数
+     */
+    @GetMapping("/nearby")
+    @Operation(
+            summary = "获取附近上客道路",
+            description = "根据司机位置（GCJ-02）、是否是工作日、当前时间获取半径内综合接客量与距离排序的K条上客道路"
     )
-    public Result<List<PickupRecommendationDTO>> getTopRecommendations(
+    public Result<List<NearbyPickupRoadDTO>> getNearbyRecommendations(
             @RequestParam("workday") boolean workday,
-            @RequestParam("hour") int hour
+            @RequestParam("hour") int hour,
+            @RequestParam("lon") double lon,
+            @RequestParam("lat") double lat,
+            @RequestParam(value = "radius", defaultValue = "2000") double radius,
+            @RequestParam(value = "k", defaultValue = "5") int k
     ) {
-        String sql = """
-        SELECT way_name, district_name, pickup_count
-        FROM public.ads_recommend_pickup_ways
-        WHERE is_workday = ? AND stat_hour = ?
-        ORDER BY pickup_count DESC
-        LIMIT 5
-    """;
-
-        List<PickupRecommendationDTO> result = jdbcTemplate.query(sql, (rs, rowNum) -> {
-            PickupRecommendationDTO dto = new PickupRecommendationDTO();
-            dto.setWayName(rs.getString("way_name"));
-            dto.setDistrictName(rs.getString("district_name"));
-            dto.setPickupCount(rs.getInt("pickup_count"));
-            return dto;
-        }, workday, hour);
-
-        return Result.success(result);
+        if (hour < 0 || hour >= HeatmapSliceCache.HOURS) {
+            // 与 TopK 接口、热力图接口一致：超出范围的小时没有数据，返回空列表
+            return Result.success(List.of());
+        }
+        if (radius <= 0 || radius > MAX_NEARBY_RADIUS) {
+            return Result.error("radius 取值范围为 (0, 20000] 米");
+        }
+        if (k <= 0 || k > MAX_NEARBY_K) {
+            return Result.error("k 取值范围为 1~50");
+        }
+
+        return Result.success(nearbyPickupRoadIndex.nearest(workday, hour, lon, lat, radius, k));
     }
 }
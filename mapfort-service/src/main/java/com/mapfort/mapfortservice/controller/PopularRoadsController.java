@@ -2,14 +2,23 @@ package com.mapfort.mapfortservice.controller;
 
 import com.mapfort.mapfortservice.common.Result;
 import com.mapfort.mapfortservice.entity.PopularRoadDTO;  // 你需要创建这个 DTO 类
+import com.mapfort.mapfortservice.entity.PopularRoadGeometryDTO;
+import com.mapfort.mapfortservice.entity.PopularRoadPageDTO;
+import com.mapfort.mapfortservice.service.CsvExportService;
+import com.mapfort.mapfortservice.service.PopularRoadGeometryCache;
+import com.mapfort.mapfortservice.service.PopularRoadLeaderboard;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
-import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import jakarta.servlet.http.HttpServletResponse;
 
@@ -20,7 +29,11 @@ import jakarta.servlet.http.HttpServletResponse;
 @Tag(name = "热门路段", description = "根据访问频率和热度标签获取热门路段相关接口")
 public class PopularRoadsController {
 
-    private final JdbcTemplate jdbcTemplate;
+    private static final int MAX_PAGE_SIZE = 500;
+
+    private final PopularRoadLeaderboard popularRoadLeaderboard;
+    private final PopularRoadGeometryCache popularRoadGeometryCache;
+    private final CsvExportService csvExportService;
 
     @GetMapping
     @Operation(
@@ -30,22 +43,84 @@ public class PopularRoadsController {
     public Result<List<PopularRoadDTO>> getTopPopularRoads(
             @RequestParam(value = "limit", defaultValue = "50") int limit  // 获取Top N条热门路段，默认为50条
     ) {
-        String sql = """
-        SELECT road_name, frequence, popularity_tag
-        FROM public.ads_road_popularity_statistics
-        ORDER BY frequence DESC
-        LIMIT ?
-        """;
+        // 直接取内存排行榜的前 N 条
+        return Result.success(popularRoadLeaderboard.top(limit));
+    }
+
+    @GetMapping("/page")
+    @Operation(
+            summary = "分页获取热门路段排行",
+            description = "按访问频率降序的游标分页，可按热度标签过滤；nextCursor 为空表示已到末页"
+    )
+    public Result<PopularRoadPageDTO> getPopularRoadsPage(
+            @RequestParam(value = "cursor", required = false) String cursor,  // 上一页返回的 nextCursor，首页不传
+            @RequestParam(value = "size", defaultValue = "50") int size,
+            @RequestParam(value = "tag", required = false) String tag        // 热度标签过滤
+    ) {
+        if (size <= 0 || size > MAX_PAGE_SIZE) {
+            return Result.error("size 取值范围为 1~" + MAX_PAGE_SIZE);
+        }
+        PopularRoadPageDTO page = popularRoadLeaderboard.page(cursor, size, tag);
+        if (page == null) {
+            return Result.error("cursor 无效");
+        }
+        return Result.success(page);
+    }
+
+    @GetMapping("/rank")
+    @Operation(
+            summary = "查询路段排名",
+            description = "按路名查询其在热门路段排行中的排名，同名路段取排名最高的一条"
+    )
+    public Result<PopularRoadDTO> getRoadRank(@RequestParam("roadName") String roadName) {
+        PopularRoadDTO dto = popularRoadLeaderboard.rankOf(roadName);
+        if (dto == null) {
+            return Result.error("未找到该路段");
+        }
+        return Result.success(dto);
+    }
 
-        List<PopularRoadDTO> result = jdbcTemplate.query(sql, (rs, rowNum) -> {
-            PopularRoadDTO dto = new PopularRoadDTO();
-            dto.setRoadName(rs.getString("road_name"));
-            dto.setFrequence(rs.getInt("frequence"));
-            dto.setPopularityTag(rs.getString("popularity_tag"));
-            return dto;
-        }, limit);
+    /**
+     * 热门路段几何：每个路名一条记录，折线为按缩放级别预先抽稀的 Encoded Polyline（GCJ-02），
+     * 前端按 popularityTag 着色即可整城渲染。数据未变化时支持 ETag 条件请求返回 304。
+     */
+    @GetMapping("/geometries")
+    @Operation(
+            summary = "获取热门路段几何",
+            description = "按缩放级别返回抽稀后的热门路段折线（Encoded Polyline，精度 1e-5°，GCJ-02），可按热度标签过滤"
+    )
+    public ResponseEntity<Result<List<PopularRoadGeometryDTO>>> getPopularRoadGeometries(
+            @RequestParam("zoom") int zoom,
+            @RequestParam(value = "tag", required = false) String tag,                       // 热度标签过滤
+            @RequestParam(value = "limit", required = false) Integer limit,  // 最多路名数，不传为全部
+            WebRequest webRequest
+    ) {
+        if (zoom < 0 || zoom > 22 || (limit != null && limit <= 0)) {
+            return ResponseEntity.badRequest().body(Result.error("zoom 取值范围为 0~22，limit 需大于 0"));
+        }
+
+        int effectiveZoom = popularRoadGeometryCache.effectiveZoom(zoom);
+        String etag = "\"" + DigestUtils.md5DigestAsHex((popularRoadLeaderboard.version() + "/"
+                + popularRoadGeometryCache.version() + "/z=" + effectiveZoom).getBytes(StandardCharsets.UTF_8)) + "\"";
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
 
-        return Result.success(result);
+        List<PopularRoadGeometryDTO> result = new ArrayList<>();
+        for (PopularRoadDTO road : popularRoadLeaderboard.distinctByName(tag, limit == null ? Integer.MAX_VALUE : limit)) {
+            String[] polylines = popularRoadGeometryCache.polylines(road.getRoadName(), zoom);
+            if (polylines == null || polylines.length == 0) {
+                continue;
+            }
+            PopularRoadGeometryDTO dto = new PopularRoadGeometryDTO();
+            dto.setRank(road.getRank());
+            dto.setRoadName(road.getRoadName());
+            dto.setFrequence(road.getFrequence());
+            dto.setPopularityTag(road.getPopularityTag());
+            dto.setPolylines(Arrays.asList(polylines));
+            result.add(dto);
+        }
+        return ResponseEntity.ok().eTag(etag).body(Result.success(result));
     }
 
     @GetMapping("/report")
@@ -54,22 +129,14 @@ public class PopularRoadsController {
             description = "根据热度标签和访问频率获取Top热门路段"
     )
     public void downloadReport(@RequestParam(defaultValue = "50") int limit, HttpServletResponse response) throws IOException {
-        // 查询前50热门路段数据
+        // 查询前N热门路段数据，游标流式写出，不在内存中汇总
         String sql = """
         SELECT road_name, frequence, popularity_tag
         FROM public.ads_road_popularity_statistics
         ORDER BY frequence DESC
-        LIMIT ? 
+        LIMIT ?
         """;
 
-        List<PopularRoadDTO> roads = jdbcTemplate.query(sql, (rs, rowNum) -> {
-            PopularRoadDTO dto = new PopularRoadDTO();
-            dto.setRoadName(rs.getString("road_name"));
-            dto.setFrequence(rs.getInt("frequence"));
-            dto.setPopularityTag(rs.getString("popularity_tag"));
-            return dto;
-        }, limit);
-
         // 设置响应头，标识文件类型为CSV并且为附件下载
         response.setContentType("text/csv");
         response.setHeader("Content-Disposition", "attachment; filename=\"热门路段报表.csv\"");
@@ -77,24 +144,9 @@ public class PopularRoadsController {
         // 设置字符编码为 UTF-8
         response.setCharacterEncoding("UTF-8");
 
-        // 输出 CSV 文件，确保是 UTF-8 编码
         OutputStream outputStream = response.getOutputStream();
-
-        // 加上 BOM 头，确保 Excel 识别 UTF-8 编码
-        outputStream.write(0xEF);
-        outputStream.write(0xBB);
-        outputStream.write(0xBF);  // BOM 字节顺序标记
-
-        // 使用 OutputStreamWriter 确保是 UTF-8 编码
-        Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
-        writer.write("路名,访问频率,热度标签\n");
-
-        // 写入数据
-        for (PopularRoadDTO road : roads) {
-            writer.write(String.format("%s,%d,%s\n", road.getRoadName(), road.getFrequence(), road.getPopularityTag()));
-        }
-
-        writer.flush();
+        csvExportService.export("ads_road_popularity_statistics.report", "路名,访问频率,热度标签",
+                sql, new Object[]{limit}, outputStream);
         outputStream.flush();
     }
 }
@@ -0,0 +1,19 @@
+package com.mapfort.mapfortservice.entity;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+@Data
+@Schema(description = "带栅格编号的热力点（增量推送）")
+public class HeatmapCellDTO {
+    @Schema(description = "栅格编号（0.001° 栅格列号_行号）", example = "126677_45758")
+    private String cellId;
+    @Schema(description = "经度", example = "126.67755255411943")
+    private double lon;
+    @Schema(description = "纬度", example = "45.75847358072181")
+    private double lat;
+    @Schema(description = "热度", example = "2")
+    private Integer intensity;
+    @Schema(description = "热度等级", example = "高")
+    private String heatLevel;
+}
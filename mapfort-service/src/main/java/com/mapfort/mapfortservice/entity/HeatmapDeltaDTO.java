@@ -0,0 +1,21 @@
+package com.mapfort.mapfortservice.entity;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Schema(description = "热力图推送消息：snapshot 为完整切片，delta 为相对上一条消息的变化")
+public class HeatmapDeltaDTO {
+    @Schema(description = "是否工作日", example = "true")
+    private boolean workday;
+    @Schema(description = "小时（0~23）", example = "8")
+    private int hour;
+    @Schema(description = "数据版本")
+    private String version;
+    @Schema(description = "新增或 pickup_count / heat_level 变化的栅格")
+    private List<HeatmapCellDTO> changed;
+    @Schema(description = "已无数据的栅格编号")
+    private List<String> removed;
+}
@@ -0,0 +1,17 @@
+package com.mapfort.mapfortservice.entity;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Schema(description = "单个时段的热力图数据")
+public class HeatmapSliceDTO {
+    @Schema(description = "是否工作日", example = "true")
+    private boolean workday;
+    @Schema(description = "小时（0~23）", example = "8")
+    private int hour;
+    @Schema(description = "热力点")
+    private List<HeatMapPointsDTO> points;
+}
@@ -0,0 +1,21 @@
+package com.mapfort.mapfortservice.entity;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+@Data
+@Schema(description = "附近上客道路推荐信息")
+public class NearbyPickupRoadDTO {
+    @Schema(description = "道路名", example = "江杨北路")
+    private String wayName;
+    @Schema(description = "行政区名", example = "南岗区")
+    private String districtName;
+    @Schema(description = "接客数量", example = "150")
+    private Integer pickupCount;
+    @Schema(description = "司机到道路的最短直线距离（米）", example = "420")
+    private Integer distance;
+    @Schema(description = "道路上距司机最近点（司机到道路折线的垂足或端点）的经度（GCJ-02）", example = "126.67755255411943")
+    private double lon;
+    @Schema(description = "道路上距司机最近点（司机到道路折线的垂足或端点）的纬度（GCJ-02）", example = "45.75847358072181")
+    private double lat;
+}
@@ -4,6 +4,7 @@ import lombok.Data;
 
 @Data
 public class PopularRoadDTO {
+    private int rank;               // 排名（频率相同则并列）
     private String roadName;        // 路名
     private int frequence;          // 访问频率
     private String popularityTag;   // 热度标签
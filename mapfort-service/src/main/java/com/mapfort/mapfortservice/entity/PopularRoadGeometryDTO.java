@@ -0,0 +1,14 @@
+package com.mapfort.mapfortservice.entity;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class PopularRoadGeometryDTO {
+    private int rank;               // 排名
+    private String roadName;        // 路名
+    private int frequence;          // 访问频率
+    private String popularityTag;   // 热度标签，前端据此着色
+    private List<String> polylines; // 各路段折线（GCJ-02，Google Encoded Polyline，精度 1e-5°）
+}
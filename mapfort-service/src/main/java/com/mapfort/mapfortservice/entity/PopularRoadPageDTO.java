@@ -0,0 +1,12 @@
+package com.mapfort.mapfortservice.entity;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class PopularRoadPageDTO {
+    private List<PopularRoadDTO> items;  // 本页路段
+    private String nextCursor;           // 下一页游标，为空表示已到末页
+    private int total;                   // 满足过滤条件的路段总数
+}
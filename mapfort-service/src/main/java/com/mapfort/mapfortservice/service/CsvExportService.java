@@ -0,0 +1,133 @@
+package com.mapfort.mapfortservice.service;
+
+import com.mapfort.mapfortservice.common.JdbcMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 表导出：通过服务端游标（只读事务 + fetchSize）逐批读取，边读边写 CSV 到输出流，
+ * 堆上只保留一个批次的数据，行数不设上限。
+ */
+@Slf4j
+@Component
+public class CsvExportService {
+
+    /** 可导出的 ADS 表及其列、排序 */
+    public static final Map<String, ExportTable> TABLES = Map.of(
+            "ads_road_popularity_statistics", new ExportTable(
+                    "public.ads_road_popularity_statistics",
+                    List.of("road_name", "frequence", "popularity_tag"),
+                    "frequence DESC"),
+            "ads_recommend_pickup_ways", new ExportTable(
+                    "public.ads_recommend_pickup_ways",
+                    List.of("is_workday", "stat_hour", "way_name", "district_name", "pickup_count", "last_updated"),
+                    "is_workday, stat_hour, pickup_count DESC")
+    );
+
+    private final JdbcTemplate cursorJdbcTemplate;
+    private final TransactionTemplate readOnlyTx;
+    private final JdbcMetrics jdbcMetrics;
+
+    public CsvExportService(DataSource dataSource,
+                            PlatformTransactionManager transactionManager,
+                            JdbcMetrics jdbcMetrics,
+                            @Value("${mapfort.export.fetch-size:2000}") int fetchSize) {
+        // PostgreSQL 仅在非自动提交且设置了 fetchSize 时使用游标分批拉取
+        this.cursorJdbcTemplate = new JdbcTemplate(dataSource);
+        this.cursorJdbcTemplate.setFetchSize(fetchSize);
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setReadOnly(true);
+        this.jdbcMetrics = jdbcMetrics;
+    }
+
+    /** 导出白名单中的整张表，limit 为空表示不限行数 */
+    public long exportTable(ExportTable table, Integer limit, OutputStream out) throws IOException {
+        String sql = "SELECT " + String.join(", ", table.columns())
+                + " FROM " + table.table()
+                + " ORDER BY " + table.orderBy()
+                + (limit == null ? "" : " LIMIT ?");
+        Object[] args = limit == null ? new Object[0] : new Object[]{limit};
+        return export("export." + table.table(), String.join(",", table.columns()), sql, args, out);
+    }
+
+    /**
+     * 执行查询并以 CSV 写出（UTF-8 BOM + 表头 + 数据行），返回数据行数。
+     * statement 为 JDBC 指标中的语句名。
+     * 调用方负责关闭 out（例如 gzip 流需要在此之后 finish）。
+     */
+    public long export(String statement, String header, String sql, Object[] args, OutputStream out) throws IOException {
+        // 加上 BOM 头，确保 Excel 识别 UTF-8 编码
+        out.write(0xEF);
+        out.write(0xBB);
+        out.write(0xBF);
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        writer.write(header);
+        writer.write('\n');
+
+        long[] rows = {0};
+        long start = System.nanoTime();
+        try {
+            readOnlyTx.executeWithoutResult(status -> cursorJdbcTemplate.query(sql, rs -> {
+                int columns = rs.getMetaData().getColumnCount();
+                try {
+                    for (int i = 1; i <= columns; i++) {
+                        if (i > 1) {
+                            writer.write(',');
+                        }
+                        writeField(writer, rs.getString(i));
+                    }
+                    writer.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                rows[0]++;
+            }, args));
+        } catch (UncheckedIOException e) {
+            // 客户端中途断开等写出失败，游标事务已随异常回滚
+            throw e.getCause();
+        } finally {
+            jdbcMetrics.record(statement, start, rows[0]);
+        }
+
+        writer.flush();
+        return rows[0];
+    }
+
+    /** RFC 4180：含逗号、引号或换行的字段加引号，引号转义为两个引号 */
+    private static void writeField(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    public record ExportTable(String table, List<String> columns, String orderBy) {
+    }
+}
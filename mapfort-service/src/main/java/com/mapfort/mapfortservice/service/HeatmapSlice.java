@@ -0,0 +1,91 @@
+package com.mapfort.mapfortservice.service;
+
+import com.mapfort.mapfortservice.utils.HeatmapBinaryCodec;
+import com.mapfort.mapfortservice.utils.UniformGridIndex;
+
+/**
+ * 单个 (is_workday, stat_hour) 切片的热力点数据，坐标已转换为 GCJ-02。
+ * 以并列的基本类型数组存放，构建完成后只读，可在多线程间安全共享。
+ * 构建时同时建立均匀网格索引，用于视口（矩形）查询。
+ */
+public class HeatmapSlice {
+
+    /** 索引网格边长（度），约 1 公里 */
+    private static final double INDEX_CELL_SIZE = 0.01;
+
+    private final String[] cellId;
+    private final double[] lon;
+    private final double[] lat;
+    private final int[] intensity;
+    private final String[] heatLevel;
+    private final UniformGridIndex index;
+
+    /** 二进制编码结果，首次请求时生成；并发下可能重复编码，但结果相同 */
+    private volatile byte[] binary;
+
+    public HeatmapSlice(String[] cellId, double[] lon, double[] lat, int[] intensity, String[] heatLevel) {
+        this.cellId = cellId;
+        this.lon = lon;
+        this.lat = lat;
+        this.intensity = intensity;
+        this.heatLevel = heatLevel;
+        this.index = new UniformGridIndex(lon, lat, intensity.length, INDEX_CELL_SIZE);
+    }
+
+    public int size() {
+        return intensity.length;
+    }
+
+    /**
+     * 所在 0.001° 栅格的列号_行号（由 WGS-84 栅格中心算出）。
+     * tdm_hot_grids.grid_id 含日期与小时，同一切片内可能有多行落在同一栅格，增量推送以此编号比对。
+     */
+    public String cellId(int i) {
+        return cellId[i];
+    }
+
+    public double lon(int i) {
+        return lon[i];
+    }
+
+    public double lat(int i) {
+        return lat[i];
+    }
+
+    public int intensity(int i) {
+        return intensity[i];
+    }
+
+    /** 热度等级（高 / 中 / 低） */
+    public String heatLevel(int i) {
+        return heatLevel[i];
+    }
+
+    /** 视口查询：返回落在 GCJ-02 矩形内的点下标 */
+    public int[] query(double minLon, double minLat, double maxLon, double maxLat) {
+        return index.query(minLon, minLat, maxLon, maxLat);
+    }
+
+    /** 紧凑二进制编码，见 {@link HeatmapBinaryCodec} */
+    public byte[] binary() {
+        byte[] encoded = binary;
+        if (encoded == null) {
+            encoded = HeatmapBinaryCodec.encode(lon, lat, intensity, intensity.length);
+            binary = encoded;
+        }
+        return encoded;
+    }
+
+    /** 只编码 points（如视口查询结果）中的点，不缓存 */
+    public byte[] binary(int[] points) {
+        double[] subLon = new double[points.length];
+        double[] subLat = new double[points.length];
+        int[] subIntensity = new int[points.length];
+        for (int j = 0; j < points.length; j++) {
+            subLon[j] = lon[points[j]];
+            subLat[j] = lat[points[j]];
+            subIntensity[j] = intensity[points[j]];
+        }
+        return HeatmapBinaryCodec.encode(subLon, subLat, subIntensity, points.length);
+    }
+}
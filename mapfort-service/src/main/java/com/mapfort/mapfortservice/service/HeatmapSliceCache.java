@@ -0,0 +1,177 @@
+package com.mapfort.mapfortservice.service;
+
+import com.mapfort.mapfortservice.common.JdbcMetrics;
+import com.mapfort.mapfortservice.utils.CoordinateTransformUtil;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * tdm_hot_grids 的内存快照：共 2 × 24 = 48 个切片，坐标均为 GCJ-02
+ * （优先使用 data-compute 预先写入的 lon_gcj / lat_gcj，缺失时才在加载时转换）。
+ * 后台定时探测表版本（行数 + 最后更新时间），变化时整体重建并原子替换，
+ * 接口请求直接读内存，不再访问数据库。
+ * 切片内按纬度、经度排序，使二进制编码的坐标差值尽量小。
+ * 每次替换快照后发布 {@link HeatmapSnapshotChangedEvent}，供增量推送比对新旧切片。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HeatmapSliceCache {
+
+    public static final int HOURS = 24;
+    public static final int SLICE_COUNT = 2 * HOURS;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcMetrics jdbcMetrics;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private volatile Snapshot snapshot;
+
+    /** 切片下标：非工作日 0~23，工作日 24~47 */
+    public static int sliceIndex(boolean workday, int hour) {
+        return (workday ? HOURS : 0) + hour;
+    }
+
+    /** 获取指定切片 */
+    public HeatmapSlice getSlice(boolean workday, int hour) {
+        return current().slice(workday, hour);
+    }
+
+    /** 获取当前快照；首次访问时若后台尚未加载则同步加载一次 */
+    public Snapshot current() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            reload();
+            current = snapshot;
+        }
+        return current;
+    }
+
+    /** 定时检查 tdm_hot_grids 是否有变化，有则重建全部切片 */
+    @Scheduled(fixedDelayString = "${mapfort.heatmap.refresh-interval-ms:60000}")
+    public void refresh() {
+        try {
+            Snapshot current = snapshot;
+            if (current == null || !Objects.equals(current.version(), queryVersion())) {
+                reload();
+            }
+        } catch (Exception e) {
+            log.warn("HeatmapSliceCache refresh failed, keep serving previous snapshot.", e);
+        }
+    }
+
+    private synchronized void reload() {
+        String newVersion = queryVersion();
+        if (snapshot != null && Objects.equals(snapshot.version(), newVersion)) {
+            return;
+        }
+
+        SliceBuilder[] builders = new SliceBuilder[SLICE_COUNT];
+        for (int i = 0; i < SLICE_COUNT; i++) {
+            builders[i] = new SliceBuilder();
+        }
+        // 热度等级只有少数几种取值，共享同一个 String 实例
+        Map<String, String> levels = new HashMap<>();
+
+        String sql = """
+            SELECT floor(lon_center / 0.001)::BIGINT || '_' || floor(lat_center / 0.001)::BIGINT AS cell_id,
+                   is_workday, stat_hour, lon_center AS lon, lat_center AS lat, lon_gcj, lat_gcj,
+                   pickup_count AS intensity, heat_level
+            FROM public.tdm_hot_grids
+            ORDER BY lat_center, lon_center
+        """;
+        long start = System.nanoTime();
+        jdbcTemplate.query(sql, rs -> {
+            int hour = rs.getInt("stat_hour");
+            if (hour < 0 || hour >= HOURS) {
+                return;
+            }
+            double lonGcj = rs.getDouble("lon_gcj");
+            boolean missing = rs.wasNull();
+            double latGcj = rs.getDouble("lat_gcj");
+            missing |= rs.wasNull();
+            double[] gcj = missing
+                    ? CoordinateTransformUtil.wgs2gcj(rs.getDouble("lon"), rs.getDouble("lat"))
+                    : new double[]{lonGcj, latGcj};
+            String level = rs.getString("heat_level");
+            builders[sliceIndex(rs.getBoolean("is_workday"), hour)]
+                    .add(rs.getString("cell_id"), gcj[0], gcj[1], rs.getInt("intensity"),
+                            level == null ? null : levels.computeIfAbsent(level, k -> k));
+        });
+
+        HeatmapSlice[] built = new HeatmapSlice[SLICE_COUNT];
+        int total = 0;
+        for (int i = 0; i < SLICE_COUNT; i++) {
+            built[i] = builders[i].build();
+            total += built[i].size();
+        }
+        jdbcMetrics.record("tdm_hot_grids.load", start, total);
+        Snapshot previous = snapshot;
+        snapshot = new Snapshot(built, newVersion);
+        log.info("HeatmapSliceCache reloaded. Points: {}, version: {}", total, newVersion);
+        if (previous != null) {
+            eventPublisher.publishEvent(new HeatmapSnapshotChangedEvent(previous, snapshot));
+        }
+    }
+
+    private String queryVersion() {
+        long start = System.nanoTime();
+        String version = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) || '@' || COALESCE(MAX(last_updated)::text, '') FROM public.tdm_hot_grids",
+                String.class);
+        jdbcMetrics.record("tdm_hot_grids.version", start, 1);
+        return version;
+    }
+
+    /** 一次完整加载的 48 个切片及其版本，整体不可变 */
+    public record Snapshot(HeatmapSlice[] slices, String version) {
+        public HeatmapSlice slice(boolean workday, int hour) {
+            return slices[sliceIndex(workday, hour)];
+        }
+    }
+
+    /** 切片构建器：可扩容的基本类型数组 */
+    private static class SliceBuilder {
+        private String[] cellId = new String[256];
+        private double[] lon = new double[256];
+        private double[] lat = new double[256];
+        private int[] intensity = new int[256];
+        private String[] heatLevel = new String[256];
+        private int size;
+
+        void add(String cell, double x, double y, int value, String level) {
+            if (size == intensity.length) {
+                int capacity = size << 1;
+                cellId = Arrays.copyOf(cellId, capacity);
+                lon = Arrays.copyOf(lon, capacity);
+                lat = Arrays.copyOf(lat, capacity);
+                intensity = Arrays.copyOf(intensity, capacity);
+                heatLevel = Arrays.copyOf(heatLevel, capacity);
+            }
+            cellId[size] = cell;
+            lon[size] = x;
+            lat[size] = y;
+            intensity[size] = value;
+            heatLevel[size] = level;
+            size++;
+        }
+
+        HeatmapSlice build() {
+            return new HeatmapSlice(
+                    Arrays.copyOf(cellId, size),
+                    Arrays.copyOf(lon, size),
+                    Arrays.copyOf(lat, size),
+                    Arrays.copyOf(intensity, size),
+                    Arrays.copyOf(heatLevel, size));
+        }
+    }
+}
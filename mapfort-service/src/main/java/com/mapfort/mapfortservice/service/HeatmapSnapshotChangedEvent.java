@@ -0,0 +1,8 @@
+package com.mapfort.mapfortservice.service;
+
+/**
+ * tdm_hot_grids 内存快照被替换（表数据刷新）时发布，携带新旧两份快照。
+ * 首次加载不发布。
+ */
+public record HeatmapSnapshotChangedEvent(HeatmapSliceCache.Snapshot previous, HeatmapSliceCache.Snapshot current) {
+}
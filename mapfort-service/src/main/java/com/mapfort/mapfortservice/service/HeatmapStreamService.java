@@ -0,0 +1,396 @@
+package com.mapfort.mapfortservice.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mapfort.mapfortservice.entity.HeatmapCellDTO;
+import com.mapfort.mapfortservice.entity.HeatmapDeltaDTO;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntSupplier;
+
+/**
+ * 热力图 SSE 推送。订阅后先收到完整切片（event: snapshot），
+ * 之后只收到 pickup_count 或 heat_level 变化的栅格（event: delta）：
+ * <ul>
+ *   <li>tdm_hot_grids 刷新、内存快照被替换时，推送各切片新旧快照的差异；</li>
+ *   <li>跟随当前时段的订阅在整点推送上一小时切片到新小时切片的差异。</li>
+ * </ul>
+ * 推送以栅格为单位（同一切片内同一栅格的多行合并：热度求和，热度等级取热度最大的一行），
+ * 每个切片的消息只计算、序列化一次，再写给该切片的全部订阅者。
+ * <p>
+ * 每个订阅者有一个有界的待发送队列，由推送线程池按序写出；计算差异、入队都不会等待客户端，
+ * 跟不上（队列已满）的客户端直接断开，由浏览器 EventSource 重连后重新拿 snapshot。
+ * 推送线程数与线程池的任务队列均有上限，线程池也排不下时同样按跟不上处理。
+ * subscriptionLock 只保护订阅集合的增删与快照版本检查，保证每个订阅者先收到 snapshot 再收到 delta；
+ * 快照变化与整点切换两个推送方法互斥，只为保证 delta 的入队顺序。
+ */
+@Slf4j
+@Component
+public class HeatmapStreamService {
+
+    private final HeatmapSliceCache heatmapSliceCache;
+    private final ObjectMapper objectMapper;
+    private final long timeoutMs;
+    private final ZoneId zone;
+    private final int queueCapacity;
+    /** 写出各订阅者队列的线程；每个订阅者同一时刻最多占一个线程，卡住的客户端不影响其他线程 */
+    private final ThreadPoolExecutor sender;
+
+    private final Object subscriptionLock = new Object();
+    /** 固定时段的订阅者，按切片下标分组 */
+    private final List<Set<Subscriber>> subscribers = new ArrayList<>(HeatmapSliceCache.SLICE_COUNT);
+    /** 跟随当前时段的订阅者 */
+    private final Set<Subscriber> followers = new CopyOnWriteArraySet<>();
+    /** followers 当前所在的切片下标，在 subscriptionLock 内修改 */
+    private volatile int followSlice;
+
+    public HeatmapStreamService(HeatmapSliceCache heatmapSliceCache,
+                                ObjectMapper objectMapper,
+                                MeterRegistry meterRegistry,
+                                @Value("${mapfort.heatmap.stream.timeout-ms:1800000}") long timeoutMs,
+                                @Value("${mapfort.heatmap.stream.zone:Asia/Shanghai}") String zone,
+                                @Value("${mapfort.heatmap.stream.queue-capacity:64}") int queueCapacity,
+                                @Value("${mapfort.heatmap.stream.sender-threads:32}") int senderThreads,
+                                @Value("${mapfort.heatmap.stream.sender-queue-capacity:1024}") int senderQueueCapacity) {
+        this.heatmapSliceCache = heatmapSliceCache;
+        this.objectMapper = objectMapper;
+        this.timeoutMs = timeoutMs;
+        this.zone = ZoneId.of(zone);
+        this.queueCapacity = Math.max(1, queueCapacity);
+        int threads = Math.max(1, senderThreads);
+        this.sender = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(Math.max(1, senderQueueCapacity)),
+                new CustomizableThreadFactory("heatmap-stream-"));
+        this.sender.allowCoreThreadTimeOut(true);
+        for (int i = 0; i < HeatmapSliceCache.SLICE_COUNT; i++) {
+            subscribers.add(new CopyOnWriteArraySet<>());
+        }
+        this.followSlice = currentSlice();
+        Gauge.builder("mapfort.heatmap.stream.subscribers", this, HeatmapStreamService::subscriberCount)
+                .description("热力图推送订阅数")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sender.shutdownNow();
+    }
+
+    /** 订阅固定时段 */
+    public SseEmitter subscribe(boolean workday, int hour) {
+        int slice = HeatmapSliceCache.sliceIndex(workday, hour);
+        return register(subscribers.get(slice), () -> slice);
+    }
+
+    /** 订阅当前时段，整点自动切换到下一小时 */
+    public SseEmitter follow() {
+        return register(followers, () -> followSlice);
+    }
+
+    /**
+     * 在锁外计算 snapshot 消息，锁内确认快照与时段未变后入队并加入订阅集合；
+     * 期间快照被替换或整点切换时重新计算，避免漏掉这次变化的 delta。
+     */
+    private SseEmitter register(Set<Subscriber> group, IntSupplier sliceOf) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Subscriber subscriber = new Subscriber(emitter, group);
+        emitter.onCompletion(subscriber::closed);
+        emitter.onTimeout(subscriber::closed);
+        emitter.onError(e -> subscriber.closed());
+
+        while (true) {
+            HeatmapSliceCache.Snapshot snapshot = heatmapSliceCache.current();
+            int slice = sliceOf.getAsInt();
+            Set<ResponseBodyEmitter.DataWithMediaType> payload =
+                    event("snapshot", message(slice, snapshot.version(), diff(null, snapshot.slices()[slice])));
+            synchronized (subscriptionLock) {
+                if (heatmapSliceCache.current() == snapshot && sliceOf.getAsInt() == slice) {
+                    subscriber.offer(payload);
+                    group.add(subscriber);
+                    return emitter;
+                }
+            }
+        }
+    }
+
+    /** 快照替换后推送各切片的变化（在 HeatmapSliceCache 刷新线程中执行，只计算与入队） */
+    @EventListener
+    public synchronized void onSnapshotChanged(HeatmapSnapshotChangedEvent event) {
+        List<List<Subscriber>> fixed = new ArrayList<>(HeatmapSliceCache.SLICE_COUNT);
+        List<Subscriber> following;
+        int follow;
+        synchronized (subscriptionLock) {
+            for (Set<Subscriber> group : subscribers) {
+                fixed.add(List.copyOf(group));
+            }
+            following = List.copyOf(followers);
+            follow = followSlice;
+        }
+
+        HeatmapSlice[] previous = event.previous().slices();
+        HeatmapSlice[] current = event.current().slices();
+        for (int slice = 0; slice < HeatmapSliceCache.SLICE_COUNT; slice++) {
+            List<Subscriber> targets = slice == follow ? concat(fixed.get(slice), following) : fixed.get(slice);
+            if (targets.isEmpty()) {
+                continue;
+            }
+            Delta delta = diff(previous[slice], current[slice]);
+            if (!delta.isEmpty()) {
+                broadcast(targets, event("delta", message(slice, event.current().version(), delta)));
+            }
+        }
+    }
+
+    /** 整点切换跟随订阅的时段 */
+    @Scheduled(cron = "0 0 * * * *", zone = "${mapfort.heatmap.stream.zone:Asia/Shanghai}")
+    public synchronized void rollover() {
+        int next = currentSlice();
+        int previous;
+        List<Subscriber> following;
+        synchronized (subscriptionLock) {
+            previous = followSlice;
+            if (next == previous) {
+                return;
+            }
+            followSlice = next;
+            following = List.copyOf(followers);
+        }
+        if (following.isEmpty()) {
+            return;
+        }
+        try {
+            HeatmapSliceCache.Snapshot snapshot = heatmapSliceCache.current();
+            Delta delta = diff(snapshot.slices()[previous], snapshot.slices()[next]);
+            broadcast(following, event("delta", message(next, snapshot.version(), delta)));
+        } catch (Exception e) {
+            log.warn("HeatmapStreamService rollover push failed.", e);
+        }
+    }
+
+    /** 定期发送注释行，保持代理连接并及早清理已断开的客户端 */
+    @Scheduled(fixedDelayString = "${mapfort.heatmap.stream.heartbeat-ms:30000}")
+    public void heartbeat() {
+        Set<ResponseBodyEmitter.DataWithMediaType> payload = SseEmitter.event().comment("ping").build();
+        for (Set<Subscriber> group : subscribers) {
+            broadcast(group, payload);
+        }
+        broadcast(followers, payload);
+    }
+
+    /** 只入队，不等待客户端 */
+    private static void broadcast(Collection<Subscriber> targets, Set<ResponseBodyEmitter.DataWithMediaType> payload) {
+        for (Subscriber subscriber : targets) {
+            subscriber.offer(payload);
+        }
+    }
+
+    private static List<Subscriber> concat(List<Subscriber> a, List<Subscriber> b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return a.isEmpty() ? b : a;
+        }
+        List<Subscriber> all = new ArrayList<>(a.size() + b.size());
+        all.addAll(a);
+        all.addAll(b);
+        return all;
+    }
+
+    /** 消息体只序列化一次，得到的事件可重复写给多个订阅者 */
+    private Set<ResponseBodyEmitter.DataWithMediaType> event(String name, HeatmapDeltaDTO message) {
+        try {
+            return SseEmitter.event()
+                    .name(name)
+                    .data(objectMapper.writeValueAsString(message), MediaType.APPLICATION_JSON)
+                    .build();
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static HeatmapDeltaDTO message(int slice, String version, Delta delta) {
+        HeatmapDeltaDTO dto = new HeatmapDeltaDTO();
+        dto.setWorkday(slice >= HeatmapSliceCache.HOURS);
+        dto.setHour(slice % HeatmapSliceCache.HOURS);
+        dto.setVersion(version);
+        dto.setChanged(delta.changed());
+        dto.setRemoved(delta.removed());
+        return dto;
+    }
+
+    /** 计算 before → after 的栅格差异；before 为 null 时返回 after 的全部栅格 */
+    static Delta diff(HeatmapSlice before, HeatmapSlice after) {
+        Map<String, HeatmapCellDTO> old = before == null ? Map.of() : cells(before);
+        Map<String, HeatmapCellDTO> now = cells(after);
+
+        List<HeatmapCellDTO> changed = new ArrayList<>();
+        for (HeatmapCellDTO cell : now.values()) {
+            HeatmapCellDTO prev = old.get(cell.getCellId());
+            if (prev == null
+                    || !Objects.equals(prev.getIntensity(), cell.getIntensity())
+                    || !Objects.equals(prev.getHeatLevel(), cell.getHeatLevel())) {
+                changed.add(cell);
+            }
+        }
+        List<String> removed = new ArrayList<>();
+        for (String cellId : old.keySet()) {
+            if (!now.containsKey(cellId)) {
+                removed.add(cellId);
+            }
+        }
+        return new Delta(changed, removed);
+    }
+
+    /** 按栅格合并切片内的点：热度求和，热度等级取热度最大的一行 */
+    private static Map<String, HeatmapCellDTO> cells(HeatmapSlice slice) {
+        Map<String, HeatmapCellDTO> cells = new LinkedHashMap<>(slice.size() * 2);
+        Map<String, Integer> maxRow = new HashMap<>();
+        for (int i = 0; i < slice.size(); i++) {
+            String cellId = slice.cellId(i);
+            HeatmapCellDTO cell = cells.get(cellId);
+            if (cell == null) {
+                cell = new HeatmapCellDTO();
+                cell.setCellId(cellId);
+                cell.setLon(slice.lon(i));
+                cell.setLat(slice.lat(i));
+                cell.setIntensity(0);
+                cells.put(cellId, cell);
+            }
+            cell.setIntensity(cell.getIntensity() + slice.intensity(i));
+            Integer max = maxRow.get(cellId);
+            if (max == null || slice.intensity(i) > max) {
+                maxRow.put(cellId, slice.intensity(i));
+                cell.setHeatLevel(slice.heatLevel(i));
+            }
+        }
+        return cells;
+    }
+
+    /** 当前时刻对应的切片（周一至周五为工作日，与 data-compute 的 is_workday 口径一致） */
+    private int currentSlice() {
+        LocalDateTime now = LocalDateTime.now(zone);
+        DayOfWeek day = now.getDayOfWeek();
+        boolean workday = day != DayOfWeek.SATURDAY && day != DayOfWeek.SUNDAY;
+        return HeatmapSliceCache.sliceIndex(workday, now.getHour());
+    }
+
+    private int subscriberCount() {
+        int count = followers.size();
+        for (Set<Subscriber> group : subscribers) {
+            count += group.size();
+        }
+        return count;
+    }
+
+    /** 一个 SSE 连接及其待发送队列；同一时刻最多一个推送线程在写它，保证事件按入队顺序送达 */
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private final Set<Subscriber> group;
+        private final BlockingQueue<Set<ResponseBodyEmitter.DataWithMediaType>> queue =
+                new ArrayBlockingQueue<>(queueCapacity);
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile boolean closed;
+
+        Subscriber(SseEmitter emitter, Set<Subscriber> group) {
+            this.emitter = emitter;
+            this.group = group;
+        }
+
+        /** 入队并安排写出；队列已满说明客户端跟不上，断开它而不是等待 */
+        void offer(Set<ResponseBodyEmitter.DataWithMediaType> payload) {
+            if (closed) {
+                return;
+            }
+            if (!queue.offer(payload)) {
+                log.debug("HeatmapStreamService dropping slow subscriber, {} events pending.", queue.size());
+                closed();
+                // 正在写出时由 drain 在 send 返回后结束连接，complete 不在这里等待 send
+                if (draining.compareAndSet(false, true)) {
+                    emitter.complete();
+                }
+                return;
+            }
+            if (draining.compareAndSet(false, true)) {
+                schedule();
+            }
+        }
+
+        /** 调用方已持有 draining；线程池排不下时释放它并断开客户端 */
+        private void schedule() {
+            try {
+                sender.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                log.debug("HeatmapStreamService sender saturated, dropping subscriber.");
+                closed();
+                emitter.complete();
+            }
+        }
+
+        private void drain() {
+            try {
+                Set<ResponseBodyEmitter.DataWithMediaType> payload;
+                while (!closed && (payload = queue.poll()) != null) {
+                    emitter.send(payload);
+                }
+            } catch (IOException | IllegalStateException e) {
+                // 客户端已断开或连接已结束
+                closed();
+                emitter.completeWithError(e);
+                return;
+            } finally {
+                draining.set(false);
+            }
+            if (closed) {
+                // 写出期间因队列溢出被断开
+                emitter.complete();
+                return;
+            }
+            // 释放 draining 后又有新事件入队的情况
+            if (!queue.isEmpty() && draining.compareAndSet(false, true)) {
+                schedule();
+            }
+        }
+
+        /** 标记为已关闭并移出订阅集合，之后入队的事件直接丢弃 */
+        void closed() {
+            closed = true;
+            queue.clear();
+            group.remove(this);
+        }
+    }
+
+    record Delta(List<HeatmapCellDTO> changed, List<String> removed) {
+        boolean isEmpty() {
+            return changed.isEmpty() && removed.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.mapfort.mapfortservice.service;
+
+import com.mapfort.mapfortservice.common.CacheMetrics;
+import com.mapfort.mapfortservice.utils.MvtEncoder;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 热力栅格矢量瓦片：从内存切片裁剪出单张瓦片内的栅格中心点并编码为 MVT，
+ * 结果放入有界 LRU 缓存。缓存键带切片快照版本，数据刷新后旧瓦片自然淘汰。
+ */
+@Component
+public class HeatmapTileService {
+
+    public static final String LAYER_NAME = "hot_grids";
+    public static final int MAX_ZOOM = 22;
+
+    /** 瓦片四周保留的缓冲像素，避免热力渲染在瓦片边缘被截断 */
+    private static final int BUFFER = 64;
+
+    private static final String CACHE_NAME = "heatmap_tile";
+
+    private final HeatmapSliceCache heatmapSliceCache;
+    private final CacheMetrics cacheMetrics;
+    private final Map<String, byte[]> tiles;
+
+    public HeatmapTileService(HeatmapSliceCache heatmapSliceCache,
+                              CacheMetrics cacheMetrics,
+                              MeterRegistry meterRegistry,
+                              @Value("${mapfort.heatmap.tile-cache-size:2048}") int tileCacheSize) {
+        this.heatmapSliceCache = heatmapSliceCache;
+        this.cacheMetrics = cacheMetrics;
+        this.tiles = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                return size() > tileCacheSize;
+            }
+        };
+        Gauge.builder("mapfort.cache.size", tiles, t -> {
+                    synchronized (t) {
+                        return t.size();
+                    }
+                })
+                .description("缓存条目数")
+                .tag("cache", CACHE_NAME)
+                .register(meterRegistry);
+    }
+
+    public byte[] getTile(boolean workday, int hour, int z, int x, int y) {
+        HeatmapSliceCache.Snapshot snapshot = heatmapSliceCache.current();
+        String key = snapshot.version() + '/' + workday + '/' + hour + '/' + z + '/' + x + '/' + y;
+
+        byte[] tile;
+        synchronized (tiles) {
+            tile = tiles.get(key);
+        }
+        if (tile != null) {
+            cacheMetrics.hit(CACHE_NAME);
+            return tile;
+        }
+        cacheMetrics.miss(CACHE_NAME);
+
+        tile = buildTile(snapshot.slice(workday, hour), z, x, y);
+        synchronized (tiles) {
+            tiles.put(key, tile);
+        }
+        return tile;
+    }
+
+    private byte[] buildTile(HeatmapSlice slice, int z, int x, int y) {
+        int extent = MvtEncoder.DEFAULT_EXTENT;
+        double west = MvtEncoder.tileLon(x, z);
+        double east = MvtEncoder.tileLon(x + 1, z);
+        double north = MvtEncoder.tileLat(y, z);
+        double south = MvtEncoder.tileLat(y + 1, z);
+        double padLon = (east - west) * BUFFER / extent;
+        double padLat = (north - south) * BUFFER / extent;
+
+        MvtEncoder.PointLayer layer = new MvtEncoder.PointLayer(LAYER_NAME, extent);
+        for (int i : slice.query(west - padLon, south - padLat, east + padLon, north + padLat)) {
+            layer.point(MvtEncoder.tileX(slice.lon(i), z, x, extent), MvtEncoder.tileY(slice.lat(i), z, y, extent))
+                    .tag("pickup_count", slice.intensity(i))
+                    .tag("heat_level", slice.heatLevel(i));
+        }
+        return MvtEncoder.encodeTile(layer);
+    }
+}
@@ -0,0 +1,387 @@
+package com.mapfort.mapfortservice.service;
+
+import com.mapfort.mapfortservice.common.JdbcMetrics;
+import com.mapfort.mapfortservice.entity.NearbyPickupRoadDTO;
+import com.mapfort.mapfortservice.utils.CoordinateTransformUtil;
+import com.mapfort.mapfortservice.utils.UniformGridIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 附近上客道路索引：ads_recommend_pickup_ways 的道路与 dwd_roads 几何按路名关联，
+ * 道路的每条线段（GCJ-02）切成不超过 MAX_PIECE_LENGTH 的小段，按小段中点建均匀网格索引；
+ * 每个 (is_workday, stat_hour) 切片保存各道路的接客量。
+ * 快照整体不可变并通过 volatile 引用发布，查询无锁，只分配 K 大小的结果数组。
+ */
+@Slf4j
+@Component
+public class NearbyPickupRoadIndex {
+
+    private static final double METERS_PER_DEGREE = 111_320d;
+    /** 索引网格边长（度），约 1 公里 */
+    private static final double INDEX_CELL_SIZE = 0.01;
+    /** 线段切分后每小段的最大长度（度，约 100–200 米）；小段上任一点距其中点不超过一半长度，查询矩形按此外扩 */
+    private static final double MAX_PIECE_LENGTH = 0.002;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcMetrics jdbcMetrics;
+    private final double distanceDecay;
+
+    private volatile Snapshot snapshot;
+
+    public NearbyPickupRoadIndex(JdbcTemplate jdbcTemplate,
+                                 JdbcMetrics jdbcMetrics,
+                                 @Value("${mapfort.recommend.nearby.distance-decay-m:500}") double distanceDecay) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.jdbcMetrics = jdbcMetrics;
+        this.distanceDecay = distanceDecay;
+    }
+
+    /**
+     * 查询司机附近的 K 条最佳上客道路。
+     * 排序分值 = 接客量 / (1 + 距离 / distanceDecay)，距离为司机到道路折线的最短距离（到各线段的垂足或端点）。
+     *
+     * @param lon    司机经度（GCJ-02）
+     * @param lat    司机纬度（GCJ-02）
+     * @param radius 搜索半径（米）
+     * @param k      返回条数
+     */
+    public List<NearbyPickupRoadDTO> nearest(boolean workday, int hour, double lon, double lat, double radius, int k) {
+        Snapshot current = current();
+        int[] counts = current.pickupCount[HeatmapSliceCache.sliceIndex(workday, hour)];
+        String[] districts = current.district[HeatmapSliceCache.sliceIndex(workday, hour)];
+
+        double cosLat = Math.cos(Math.toRadians(lat));
+        double dLat = radius / METERS_PER_DEGREE;
+        double dLon = radius / (METERS_PER_DEGREE * Math.max(cosLat, 1e-6));
+
+        TopK top = new TopK(k);
+        double margin = MAX_PIECE_LENGTH / 2;
+        current.index.forEachCandidate(lon - dLon - margin, lat - dLat - margin, lon + dLon + margin, lat + dLat + margin, i -> {
+            int road = current.pieceRoad[i];
+            int count = counts[road];
+            if (count <= 0) {
+                return;
+            }
+            // 以司机为原点的局部平面坐标（米）中求到线段 ab 的最近点
+            double ax = (current.ax[i] - lon) * cosLat * METERS_PER_DEGREE;
+            double ay = (current.ay[i] - lat) * METERS_PER_DEGREE;
+            double dx = (current.bx[i] - current.ax[i]) * cosLat * METERS_PER_DEGREE;
+            double dy = (current.by[i] - current.ay[i]) * METERS_PER_DEGREE;
+            double t = projection(ax, ay, dx, dy);
+            double px = ax + t * dx;
+            double py = ay + t * dy;
+            double distance = Math.sqrt(px * px + py * py);
+            if (distance > radius) {
+                return;
+            }
+            top.offer(road, count / (1 + distance / distanceDecay), distance,
+                    current.ax[i] + t * (current.bx[i] - current.ax[i]),
+                    current.ay[i] + t * (current.by[i] - current.ay[i]));
+        });
+        top.sort();
+
+        List<NearbyPickupRoadDTO> result = new ArrayList<>(top.size);
+        for (int j = 0; j < top.size; j++) {
+            int road = top.road[j];
+            NearbyPickupRoadDTO dto = new NearbyPickupRoadDTO();
+            dto.setWayName(current.roadNames[road]);
+            dto.setDistrictName(districts[road]);
+            dto.setPickupCount(counts[road]);
+            dto.setDistance((int) Math.round(top.distance[j]));
+            dto.setLon(top.lon[j]);
+            dto.setLat(top.lat[j]);
+            result.add(dto);
+        }
+        return result;
+    }
+
+    /** 原点在线段 a + t·d（t ∈ [0, 1]）上的垂足参数，垂足落在线段外时取较近的端点 */
+    static double projection(double ax, double ay, double dx, double dy) {
+        double lengthSquared = dx * dx + dy * dy;
+        if (lengthSquared == 0) {
+            return 0;
+        }
+        double t = -(ax * dx + ay * dy) / lengthSquared;
+        return t < 0 ? 0 : Math.min(t, 1);
+    }
+
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            reload();
+            current = snapshot;
+        }
+        return current;
+    }
+
+    @Scheduled(fixedDelayString = "${mapfort.recommend.refresh-interval-ms:60000}")
+    public void refresh() {
+        try {
+            Snapshot current = snapshot;
+            if (current == null || !Objects.equals(current.version, queryVersion())) {
+                reload();
+            }
+        } catch (Exception e) {
+            log.warn("NearbyPickupRoadIndex refresh failed, keep serving previous snapshot.", e);
+        }
+    }
+
+    private synchronized void reload() {
+        String newVersion = queryVersion();
+        if (snapshot != null && Objects.equals(snapshot.version, newVersion)) {
+            return;
+        }
+
+        // 1. 推荐表中出现过的道路，按路名编号
+        Map<String, Integer> roadIds = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        List<Object[]> rows = new ArrayList<>();
+        long start = System.nanoTime();
+        jdbcTemplate.query("""
+            SELECT is_workday, stat_hour, way_name, district_name, pickup_count
+            FROM public.ads_recommend_pickup_ways
+            WHERE way_name IS NOT NULL
+        """, rs -> {
+            String name = rs.getString("way_name");
+            int road = roadIds.computeIfAbsent(name, n -> {
+                names.add(n);
+                return names.size() - 1;
+            });
+            rows.add(new Object[]{rs.getBoolean("is_workday"), rs.getInt("stat_hour"), road,
+                    rs.getString("district_name"), rs.getInt("pickup_count")});
+        });
+        jdbcMetrics.record("ads_recommend_pickup_ways.load", start, rows.size());
+
+        // 2. 每个切片各道路的接客量（跨行政区求和），行政区取接客量最大的一个
+        int roadCount = names.size();
+        int[][] pickupCount = new int[HeatmapSliceCache.SLICE_COUNT][roadCount];
+        int[][] districtMax = new int[HeatmapSliceCache.SLICE_COUNT][roadCount];
+        String[][] district = new String[HeatmapSliceCache.SLICE_COUNT][roadCount];
+        for (Object[] row : rows) {
+            int hour = (Integer) row[1];
+            if (hour < 0 || hour >= HeatmapSliceCache.HOURS) {
+                continue;
+            }
+            int slice = HeatmapSliceCache.sliceIndex((Boolean) row[0], hour);
+            int road = (Integer) row[2];
+            int count = (Integer) row[4];
+            pickupCount[slice][road] += count;
+            if (district[slice][road] == null || count > districtMax[slice][road]) {
+                districtMax[slice][road] = count;
+                district[slice][road] = (String) row[3];
+            }
+        }
+
+        // 3. 这些道路的几何节点按顺序转换为 GCJ-02，相邻节点连成线段（多部件几何按部件断开）
+        PieceBuilder pieces = new PieceBuilder();
+        start = System.nanoTime();
+        jdbcTemplate.query("""
+            SELECT r.gid,
+                   CASE WHEN array_length(dp.path, 1) > 1 THEN dp.path[1] ELSE 0 END AS part,
+                   r.tags::jsonb ->> 'name' AS way_name,
+                   ST_X(dp.geom) AS lon,
+                   ST_Y(dp.geom) AS lat
+            FROM public.dwd_roads r
+            CROSS JOIN LATERAL ST_DumpPoints(r.geom) dp
+            WHERE r.tags::jsonb ->> 'name' IN (SELECT DISTINCT way_name FROM public.ads_recommend_pickup_ways)
+            ORDER BY r.gid, dp.path
+        """, rs -> {
+            Integer road = roadIds.get(rs.getString("way_name"));
+            if (road != null) {
+                double[] gcj = CoordinateTransformUtil.wgs2gcj(rs.getDouble("lon"), rs.getDouble("lat"));
+                pieces.vertex(rs.getLong("gid"), rs.getInt("part"), road, gcj[0], gcj[1]);
+            }
+        });
+        pieces.endLine();
+        jdbcMetrics.record("dwd_roads.recommend_points", start, pieces.vertices);
+
+        snapshot = new Snapshot(newVersion, names.toArray(new String[0]), pieces, pickupCount, district);
+        log.info("NearbyPickupRoadIndex reloaded. Roads: {}, vertices: {}, pieces: {}, version: {}",
+                roadCount, pieces.vertices, pieces.size, newVersion);
+    }
+
+    private String queryVersion() {
+        long start = System.nanoTime();
+        String version = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) || '@' || COALESCE(MAX(last_updated)::text, '') FROM public.ads_recommend_pickup_ways",
+                String.class);
+        jdbcMetrics.record("ads_recommend_pickup_ways.version", start, 1);
+        return version;
+    }
+
+    /** 一次完整加载的索引，构建后只读 */
+    private static class Snapshot {
+        final String version;
+        final String[] roadNames;
+        /** 第 i 个小段的两个端点 (ax, ay) - (bx, by) 及所属道路 */
+        final double[] ax;
+        final double[] ay;
+        final double[] bx;
+        final double[] by;
+        final int[] pieceRoad;
+        final UniformGridIndex index;
+        final int[][] pickupCount;
+        final String[][] district;
+
+        Snapshot(String version, String[] roadNames, PieceBuilder pieces, int[][] pickupCount, String[][] district) {
+            this.version = version;
+            this.roadNames = roadNames;
+            this.ax = Arrays.copyOf(pieces.ax, pieces.size);
+            this.ay = Arrays.copyOf(pieces.ay, pieces.size);
+            this.bx = Arrays.copyOf(pieces.bx, pieces.size);
+            this.by = Arrays.copyOf(pieces.by, pieces.size);
+            this.pieceRoad = Arrays.copyOf(pieces.road, pieces.size);
+            double[] midLon = new double[pieces.size];
+            double[] midLat = new double[pieces.size];
+            for (int i = 0; i < pieces.size; i++) {
+                midLon[i] = (ax[i] + bx[i]) / 2;
+                midLat[i] = (ay[i] + by[i]) / 2;
+            }
+            this.index = new UniformGridIndex(midLon, midLat, pieces.size, INDEX_CELL_SIZE);
+            this.pickupCount = pickupCount;
+            this.district = district;
+        }
+    }
+
+    /** 按顺序接收折线节点，相邻节点之间的线段切成不超过 MAX_PIECE_LENGTH 的小段 */
+    private static class PieceBuilder {
+        double[] ax = new double[1024];
+        double[] ay = new double[1024];
+        double[] bx = new double[1024];
+        double[] by = new double[1024];
+        int[] road = new int[1024];
+        int size;
+        int vertices;
+
+        /** 当前折线：(gid, part) 及上一个节点 */
+        private long lineGid;
+        private int linePart;
+        private int lineRoad = -1;
+        private int lineVertices;
+        private double lastX;
+        private double lastY;
+
+        void vertex(long gid, int part, int roadId, double x, double y) {
+            vertices++;
+            if (lineRoad < 0 || gid != lineGid || part != linePart) {
+                endLine();
+                lineGid = gid;
+                linePart = part;
+                lineRoad = roadId;
+            } else {
+                addSegment(lastX, lastY, x, y, roadId);
+            }
+            lastX = x;
+            lastY = y;
+            lineVertices++;
+        }
+
+        /** 结束当前折线；只有一个节点的折线按长度为 0 的小段保留，道路仍可被找到 */
+        void endLine() {
+            if (lineRoad >= 0 && lineVertices == 1) {
+                add(lastX, lastY, lastX, lastY, lineRoad);
+            }
+            lineRoad = -1;
+            lineVertices = 0;
+        }
+
+        private void addSegment(double x0, double y0, double x1, double y1, int roadId) {
+            double length = Math.hypot(x1 - x0, y1 - y0);
+            int n = Math.max(1, (int) Math.ceil(length / MAX_PIECE_LENGTH));
+            for (int j = 0; j < n; j++) {
+                double t0 = (double) j / n;
+                double t1 = (double) (j + 1) / n;
+                add(x0 + t0 * (x1 - x0), y0 + t0 * (y1 - y0),
+                        j == n - 1 ? x1 : x0 + t1 * (x1 - x0), j == n - 1 ? y1 : y0 + t1 * (y1 - y0), roadId);
+            }
+        }
+
+        private void add(double x0, double y0, double x1, double y1, int roadId) {
+            if (size == road.length) {
+                int capacity = size << 1;
+                ax = Arrays.copyOf(ax, capacity);
+                ay = Arrays.copyOf(ay, capacity);
+                bx = Arrays.copyOf(bx, capacity);
+                by = Arrays.copyOf(by, capacity);
+                road = Arrays.copyOf(road, capacity);
+            }
+            ax[size] = x0;
+            ay[size] = y0;
+            bx[size] = x1;
+            by[size] = y1;
+            road[size] = roadId;
+            size++;
+        }
+    }
+
+    /** 按道路去重的定长 TopK，k 很小，线性查找即可；同时记下每条道路上距司机最近的点 */
+    private static class TopK {
+        final int[] road;
+        final double[] score;
+        final double[] distance;
+        final double[] lon;
+        final double[] lat;
+        int size;
+
+        TopK(int k) {
+            road = new int[k];
+            score = new double[k];
+            distance = new double[k];
+            lon = new double[k];
+            lat = new double[k];
+        }
+
+        void offer(int r, double s, double d, double x, double y) {
+            int min = -1;
+            for (int j = 0; j < size; j++) {
+                if (road[j] == r) {
+                    if (s > score[j]) {
+                        set(j, r, s, d, x, y);
+                    }
+                    return;
+                }
+                if (min < 0 || score[j] < score[min]) {
+                    min = j;
+                }
+            }
+            if (size < road.length) {
+                set(size++, r, s, d, x, y);
+            } else if (min >= 0 && s > score[min]) {
+                set(min, r, s, d, x, y);
+            }
+        }
+
+        private void set(int j, int r, double s, double d, double x, double y) {
+            road[j] = r;
+            score[j] = s;
+            distance[j] = d;
+            lon[j] = x;
+            lat[j] = y;
+        }
+
+        /** 按分值降序插入排序 */
+        void sort() {
+            for (int i = 1; i < size; i++) {
+                int r = road[i];
+                double s = score[i], d = distance[i], x = lon[i], y = lat[i];
+                int j = i - 1;
+                while (j >= 0 && score[j] < s) {
+                    set(j + 1, road[j], score[j], distance[j], lon[j], lat[j]);
+                    j--;
+                }
+                set(j + 1, r, s, d, x, y);
+            }
+        }
+    }
+}
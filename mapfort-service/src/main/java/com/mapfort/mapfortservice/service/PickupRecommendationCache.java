@@ -0,0 +1,128 @@
+package com.mapfort.mapfortservice.service;
+
+import com.mapfort.mapfortservice.common.JdbcMetrics;
+import com.mapfort.mapfortservice.entity.PickupRecommendationDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * ads_recommend_pickup_ways 的 TopK 物化结果：每个 (is_workday, stat_hour) 预先排好前 K 条。
+ * 只在 PickupRecommendationTask 重跑后（行数或最后更新时间变化）重新加载，
+ * 每份快照带一个由表版本派生的 ETag，供客户端条件请求返回 304。
+ */
+@Slf4j
+@Component
+public class PickupRecommendationCache {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcMetrics jdbcMetrics;
+    private final int topK;
+
+    private volatile Snapshot snapshot;
+
+    public PickupRecommendationCache(JdbcTemplate jdbcTemplate,
+                                     JdbcMetrics jdbcMetrics,
+                                     @Value("${mapfort.recommend.top-k:5}") int topK) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.jdbcMetrics = jdbcMetrics;
+        this.topK = topK;
+    }
+
+    public int topK() {
+        return topK;
+    }
+
+    /** 获取当前快照；首次访问时若后台尚未加载则同步加载一次 */
+    public Snapshot current() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            reload();
+            current = snapshot;
+        }
+        return current;
+    }
+
+    @Scheduled(fixedDelayString = "${mapfort.recommend.refresh-interval-ms:60000}")
+    public void refresh() {
+        try {
+            Snapshot current = snapshot;
+            if (current == null || !Objects.equals(current.version(), queryVersion())) {
+                reload();
+            }
+        } catch (Exception e) {
+            log.warn("PickupRecommendationCache refresh failed, keep serving previous snapshot.", e);
+        }
+    }
+
+    private synchronized void reload() {
+        String newVersion = queryVersion();
+        if (snapshot != null && Objects.equals(snapshot.version(), newVersion)) {
+            return;
+        }
+
+        List<List<PickupRecommendationDTO>> slices = new ArrayList<>(HeatmapSliceCache.SLICE_COUNT);
+        for (int i = 0; i < HeatmapSliceCache.SLICE_COUNT; i++) {
+            slices.add(new ArrayList<>(topK));
+        }
+
+        String sql = """
+            SELECT is_workday, stat_hour, way_name, district_name, pickup_count
+            FROM (
+                SELECT *, ROW_NUMBER() OVER (
+                    PARTITION BY is_workday, stat_hour ORDER BY pickup_count DESC
+                ) AS rn
+                FROM public.ads_recommend_pickup_ways
+            ) t
+            WHERE rn <= ?
+            ORDER BY is_workday, stat_hour, rn
+        """;
+        long start = System.nanoTime();
+        long[] rows = {0};
+        jdbcTemplate.query(sql, rs -> {
+            rows[0]++;
+            int hour = rs.getInt("stat_hour");
+            if (hour < 0 || hour >= HeatmapSliceCache.HOURS) {
+                return;
+            }
+            PickupRecommendationDTO dto = new PickupRecommendationDTO();
+            dto.setWayName(rs.getString("way_name"));
+            dto.setDistrictName(rs.getString("district_name"));
+            dto.setPickupCount(rs.getInt("pickup_count"));
+            slices.get(HeatmapSliceCache.sliceIndex(rs.getBoolean("is_workday"), hour)).add(dto);
+        }, topK);
+        jdbcMetrics.record("ads_recommend_pickup_ways.top_k", start, rows[0]);
+
+        for (int i = 0; i < slices.size(); i++) {
+            slices.set(i, List.copyOf(slices.get(i)));
+        }
+        String etag = "\"" + DigestUtils.md5DigestAsHex(
+                (newVersion + "/k=" + topK).getBytes(StandardCharsets.UTF_8)) + "\"";
+        snapshot = new Snapshot(slices, newVersion, etag);
+        log.info("PickupRecommendationCache reloaded. Top-{}, version: {}", topK, newVersion);
+    }
+
+    private String queryVersion() {
+        long start = System.nanoTime();
+        String version = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) || '@' || COALESCE(MAX(last_updated)::text, '') FROM public.ads_recommend_pickup_ways",
+                String.class);
+        jdbcMetrics.record("ads_recommend_pickup_ways.version", start, 1);
+        return version;
+    }
+
+    /** 一次完整加载的 48 个 TopK 列表，整体不可变 */
+    public record Snapshot(List<List<PickupRecommendationDTO>> slices, String version, String etag) {
+        public List<PickupRecommendationDTO> slice(boolean workday, int hour) {
+            return slices.get(HeatmapSliceCache.sliceIndex(workday, hour));
+        }
+    }
+}
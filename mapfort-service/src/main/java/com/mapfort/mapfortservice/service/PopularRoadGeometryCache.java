@@ -0,0 +1,233 @@
+package com.mapfort.mapfortservice.service;
+
+import com.mapfort.mapfortservice.common.JdbcMetrics;
+import com.mapfort.mapfortservice.utils.CoordinateTransformUtil;
+import com.mapfort.mapfortservice.utils.PolylineUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 热门路段几何缓存：ads_road_popularity_statistics 中出现的路名关联 dwd_roads.geom（转换为 GCJ-02），
+ * 按若干缩放级别分别做 Douglas-Peucker 抽稀并编码为 Encoded Polyline，加载时一次算好。
+ * 某一级别的容差为该级别下 tolerancePx 个像素对应的度数；小于容差的零碎路段在该级别直接省略。
+ */
+@Slf4j
+@Component
+public class PopularRoadGeometryCache {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcMetrics jdbcMetrics;
+    private final int[] zoomLevels;
+    private final double tolerancePx;
+
+    private volatile Snapshot snapshot;
+
+    public PopularRoadGeometryCache(JdbcTemplate jdbcTemplate,
+                                    JdbcMetrics jdbcMetrics,
+                                    @Value("${mapfort.popular-roads.geometry.zoom-levels:10,12,14,16}") int[] zoomLevels,
+                                    @Value("${mapfort.popular-roads.geometry.tolerance-px:1}") double tolerancePx) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.jdbcMetrics = jdbcMetrics;
+        this.zoomLevels = zoomLevels.clone();
+        Arrays.sort(this.zoomLevels);
+        this.tolerancePx = tolerancePx;
+    }
+
+    /**
+     * 取路名在指定缩放级别下的编码折线（每段一条）；没有几何时返回 null。
+     * 使用不超过 zoom 的最大预计算级别，zoom 低于最小级别时使用最小级别。
+     */
+    public String[] polylines(String roadName, int zoom) {
+        Snapshot current = current();
+        String[][] byLevel = current.polylines.get(roadName);
+        return byLevel == null ? null : byLevel[levelIndex(zoom)];
+    }
+
+    /** 实际使用的预计算级别 */
+    public int effectiveZoom(int zoom) {
+        return zoomLevels[levelIndex(zoom)];
+    }
+
+    public String version() {
+        return current().version;
+    }
+
+    private int levelIndex(int zoom) {
+        int level = 0;
+        while (level + 1 < zoomLevels.length && zoomLevels[level + 1] <= zoom) {
+            level++;
+        }
+        return level;
+    }
+
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            reload();
+            current = snapshot;
+        }
+        return current;
+    }
+
+    @Scheduled(fixedDelayString = "${mapfort.popular-roads.refresh-interval-ms:60000}")
+    public void refresh() {
+        try {
+            Snapshot current = snapshot;
+            if (current == null || !Objects.equals(current.version, queryVersion())) {
+                reload();
+            }
+        } catch (Exception e) {
+            log.warn("PopularRoadGeometryCache refresh failed, keep serving previous snapshot.", e);
+        }
+    }
+
+    private synchronized void reload() {
+        String newVersion = queryVersion();
+        if (snapshot != null && Objects.equals(snapshot.version, newVersion)) {
+            return;
+        }
+
+        // 1. 热门路名对应的全部路段节点，按路段、分段、节点顺序读出
+        Map<String, List<double[][]>> parts = new HashMap<>();
+        PartBuilder part = new PartBuilder();
+        long[] rows = {0};
+        long start = System.nanoTime();
+        jdbcTemplate.query("""
+            SELECT r.tags::jsonb ->> 'name' AS road_name, r.gid, d.path[1] AS part,
+                   ST_X(p.geom) AS lon, ST_Y(p.geom) AS lat
+            FROM public.dwd_roads r
+            CROSS JOIN LATERAL ST_Dump(r.geom) d
+            CROSS JOIN LATERAL ST_DumpPoints(d.geom) p
+            WHERE r.tags::jsonb ->> 'name' IN (SELECT DISTINCT road_name FROM public.ads_road_popularity_statistics)
+            ORDER BY r.gid, d.path[1], p.path[1]
+        """, rs -> {
+            rows[0]++;
+            String name = rs.getString("road_name");
+            long gid = rs.getLong("gid");
+            int partNo = rs.getInt("part");
+            if (!part.sameAs(name, gid, partNo)) {
+                part.flushTo(parts);
+                part.start(name, gid, partNo);
+            }
+            double[] gcj = CoordinateTransformUtil.wgs2gcj(rs.getDouble("lon"), rs.getDouble("lat"));
+            part.add(gcj[0], gcj[1]);
+        });
+        part.flushTo(parts);
+        jdbcMetrics.record("dwd_roads.popular_geometries", start, rows[0]);
+
+        // 2. 每个级别抽稀并编码
+        double[] tolerances = new double[zoomLevels.length];
+        for (int level = 0; level < zoomLevels.length; level++) {
+            tolerances[level] = PolylineUtil.tolerance(zoomLevels[level], tolerancePx);
+        }
+        Map<String, String[][]> polylines = new HashMap<>(parts.size() * 2);
+        long vertices = 0;
+        long kept = 0;
+        for (Map.Entry<String, List<double[][]>> entry : parts.entrySet()) {
+            String[][] byLevel = new String[zoomLevels.length][];
+            for (int level = 0; level < zoomLevels.length; level++) {
+                List<String> encoded = new ArrayList<>(entry.getValue().size());
+                for (double[][] line : entry.getValue()) {
+                    double[] lon = line[0];
+                    double[] lat = line[1];
+                    if (level == 0) {
+                        vertices += lon.length;
+                    }
+                    if (lon.length < 2 || extent(lon, lat) < tolerances[level]) {
+                        continue;
+                    }
+                    int[] indices = PolylineUtil.simplify(lon, lat, 0, lon.length, tolerances[level]);
+                    if (level == zoomLevels.length - 1) {
+                        kept += indices.length;
+                    }
+                    encoded.add(PolylineUtil.encode(lon, lat, indices));
+                }
+                byLevel[level] = encoded.toArray(new String[0]);
+            }
+            polylines.put(entry.getKey(), byLevel);
+        }
+
+        snapshot = new Snapshot(newVersion, polylines);
+        log.info("PopularRoadGeometryCache reloaded. Roads: {}, vertices: {}, kept at z{}: {}, version: {}",
+                polylines.size(), vertices, zoomLevels[zoomLevels.length - 1], kept, newVersion);
+    }
+
+    /** 几何只依赖热门路名集合（dwd_roads 视为静态） */
+    private String queryVersion() {
+        long start = System.nanoTime();
+        String version = jdbcTemplate.queryForObject("""
+            SELECT COUNT(*) || '@' || COALESCE(SUM(hashtext(road_name)::BIGINT), 0)
+            FROM (SELECT DISTINCT road_name FROM public.ads_road_popularity_statistics) t
+        """, String.class);
+        jdbcMetrics.record("ads_road_popularity_statistics.names_version", start, 1);
+        return version;
+    }
+
+    /** 外包矩形对角线长度（度，经度按纬度余弦缩放） */
+    private static double extent(double[] lon, double[] lat) {
+        double minLon = Double.POSITIVE_INFINITY, minLat = Double.POSITIVE_INFINITY;
+        double maxLon = Double.NEGATIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < lon.length; i++) {
+            minLon = Math.min(minLon, lon[i]);
+            maxLon = Math.max(maxLon, lon[i]);
+            minLat = Math.min(minLat, lat[i]);
+            maxLat = Math.max(maxLat, lat[i]);
+        }
+        double dx = (maxLon - minLon) * Math.cos(Math.toRadians(minLat));
+        double dy = maxLat - minLat;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /** 一次完整加载的结果：路名 → [级别][分段] 编码折线 */
+    private record Snapshot(String version, Map<String, String[][]> polylines) {
+    }
+
+    /** 按行读出节点时累积当前分段 */
+    private static class PartBuilder {
+        private String name;
+        private long gid;
+        private int part;
+        private double[] lon = new double[256];
+        private double[] lat = new double[256];
+        private int size;
+
+        boolean sameAs(String otherName, long otherGid, int otherPart) {
+            return size > 0 && gid == otherGid && part == otherPart && Objects.equals(name, otherName);
+        }
+
+        void start(String newName, long newGid, int newPart) {
+            name = newName;
+            gid = newGid;
+            part = newPart;
+            size = 0;
+        }
+
+        void add(double x, double y) {
+            if (size == lon.length) {
+                lon = Arrays.copyOf(lon, size << 1);
+                lat = Arrays.copyOf(lat, size << 1);
+            }
+            lon[size] = x;
+            lat[size] = y;
+            size++;
+        }
+
+        void flushTo(Map<String, List<double[][]>> parts) {
+            if (size > 0 && name != null) {
+                parts.computeIfAbsent(name, k -> new ArrayList<>())
+                        .add(new double[][]{Arrays.copyOf(lon, size), Arrays.copyOf(lat, size)});
+            }
+            size = 0;
+        }
+    }
+}
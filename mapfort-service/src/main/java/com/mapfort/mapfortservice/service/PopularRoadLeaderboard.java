@@ -0,0 +1,312 @@
+package com.mapfort.mapfortservice.service;
+
+import com.mapfort.mapfortservice.common.JdbcMetrics;
+import com.mapfort.mapfortservice.entity.PopularRoadDTO;
+import com.mapfort.mapfortservice.entity.PopularRoadPageDTO;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * ads_road_popularity_statistics 的内存排行榜：按 (frequence 降序, road_name 升序) 预排序，
+ * 以并列数组存放，另为每个热度标签预建下标数组、为路名建排名索引。
+ * 分页使用游标（最后一条的排序键），与数据刷新无关，不存在 OFFSET 扫描；全部查询不访问数据库。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PopularRoadLeaderboard {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcMetrics jdbcMetrics;
+
+    private volatile Snapshot snapshot;
+
+    /** 前 limit 条 */
+    public List<PopularRoadDTO> top(int limit) {
+        Snapshot current = current();
+        int n = Math.min(Math.max(limit, 0), current.size());
+        List<PopularRoadDTO> result = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            result.add(current.toDto(i));
+        }
+        return result;
+    }
+
+    /**
+     * 游标分页。
+     *
+     * @param cursor 上一页返回的 nextCursor，为空表示第一页
+     * @param size   每页条数
+     * @param tag    热度标签过滤，为空表示不过滤
+     * @return 游标无法解析时返回 null
+     */
+    public PopularRoadPageDTO page(String cursor, int size, String tag) {
+        Snapshot current = current();
+        int[] positions = tag == null ? null : current.byTag.getOrDefault(tag, new int[0]);
+        int total = positions == null ? current.size() : positions.length;
+
+        int from = 0;
+        if (cursor != null && !cursor.isEmpty()) {
+            Cursor after = Cursor.decode(cursor);
+            if (after == null) {
+                return null;
+            }
+            from = current.firstAfter(positions, total, after);
+        }
+
+        int to = Math.min(from + size, total);
+        List<PopularRoadDTO> items = new ArrayList<>(Math.max(to - from, 0));
+        for (int j = from; j < to; j++) {
+            items.add(current.toDto(positions == null ? j : positions[j]));
+        }
+
+        PopularRoadPageDTO page = new PopularRoadPageDTO();
+        page.setItems(items);
+        page.setTotal(total);
+        if (to < total && to > from) {
+            int last = positions == null ? to - 1 : positions[to - 1];
+            page.setNextCursor(current.cursorAt(positions, to - 1, last).encode());
+        }
+        return page;
+    }
+
+    /**
+     * 按排名顺序列出各路名排名最高的一条（同名路段只保留一条）。
+     *
+     * @param tag   热度标签过滤，为空表示不过滤
+     * @param limit 最多条数
+     */
+    public List<PopularRoadDTO> distinctByName(String tag, int limit) {
+        Snapshot current = current();
+        List<PopularRoadDTO> result = new ArrayList<>();
+        for (int i = 0; i < current.size() && result.size() < limit; i++) {
+            if (current.byName.get(current.names[i]) != i) {
+                continue;
+            }
+            if (tag == null || tag.equals(current.tags[i])) {
+                result.add(current.toDto(i));
+            }
+        }
+        return result;
+    }
+
+    /** 当前数据版本 */
+    public String version() {
+        return current().version;
+    }
+
+    /** 按路名查排名，同名路段取排名最高的一条；不存在时返回 null */
+    public PopularRoadDTO rankOf(String roadName) {
+        Snapshot current = current();
+        Integer i = current.byName.get(roadName);
+        return i == null ? null : current.toDto(i);
+    }
+
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            reload();
+            current = snapshot;
+        }
+        return current;
+    }
+
+    @Scheduled(fixedDelayString = "${mapfort.popular-roads.refresh-interval-ms:60000}")
+    public void refresh() {
+        try {
+            Snapshot current = snapshot;
+            if (current == null || !Objects.equals(current.version, queryVersion())) {
+                reload();
+            }
+        } catch (Exception e) {
+            log.warn("PopularRoadLeaderboard refresh failed, keep serving previous snapshot.", e);
+        }
+    }
+
+    private synchronized void reload() {
+        String newVersion = queryVersion();
+        if (snapshot != null && Objects.equals(snapshot.version, newVersion)) {
+            return;
+        }
+
+        RowBuilder rows = new RowBuilder();
+        // 热度标签只有少数几种取值，共享同一个 String 实例
+        Map<String, String> tagPool = new HashMap<>();
+        long start = System.nanoTime();
+        // 路名使用 "C" 排序规则（按字符编码比较），与游标比较所用的 String.compareTo 一致
+        jdbcTemplate.query("""
+            SELECT road_name, frequence, popularity_tag
+            FROM public.ads_road_popularity_statistics
+            WHERE road_name IS NOT NULL
+            ORDER BY frequence DESC, road_name COLLATE "C"
+        """, rs -> {
+            String tag = rs.getString("popularity_tag");
+            rows.add(rs.getString("road_name"), rs.getInt("frequence"),
+                    tag == null ? null : tagPool.computeIfAbsent(tag, k -> k));
+        });
+        jdbcMetrics.record("ads_road_popularity_statistics.leaderboard", start, rows.size);
+
+        snapshot = new Snapshot(newVersion,
+                Arrays.copyOf(rows.names, rows.size),
+                Arrays.copyOf(rows.frequence, rows.size),
+                Arrays.copyOf(rows.tags, rows.size));
+        log.info("PopularRoadLeaderboard reloaded. Roads: {}, version: {}", rows.size, newVersion);
+    }
+
+    /** 表无更新时间列，以行数 + 频次和 + 内容哈希和作为版本 */
+    private String queryVersion() {
+        long start = System.nanoTime();
+        String version = jdbcTemplate.queryForObject("""
+            SELECT COUNT(*) || '@' || COALESCE(SUM(frequence::BIGINT), 0)
+                   || '@' || COALESCE(SUM(hashtext(road_name || '|' || COALESCE(popularity_tag, ''))::BIGINT), 0)
+            FROM public.ads_road_popularity_statistics
+        """, String.class);
+        jdbcMetrics.record("ads_road_popularity_statistics.version", start, 1);
+        return version;
+    }
+
+    /** 一次完整加载的排行榜，构建后只读 */
+    private static class Snapshot {
+        final String version;
+        final String[] names;
+        final int[] frequence;
+        final String[] tags;
+        /** 并列排名：1 + 频次严格更高的路段数 */
+        final int[] rank;
+        final Map<String, int[]> byTag;
+        final Map<String, Integer> byName;
+
+        Snapshot(String version, String[] names, int[] frequence, String[] tags) {
+            this.version = version;
+            this.names = names;
+            this.frequence = frequence;
+            this.tags = tags;
+
+            int n = names.length;
+            rank = new int[n];
+            Map<String, Integer> tagCounts = new HashMap<>();
+            byName = new HashMap<>(n * 2);
+            for (int i = 0; i < n; i++) {
+                rank[i] = i > 0 && frequence[i] == frequence[i - 1] ? rank[i - 1] : i + 1;
+                byName.putIfAbsent(names[i], i);
+                if (tags[i] != null) {
+                    tagCounts.merge(tags[i], 1, Integer::sum);
+                }
+            }
+            byTag = new HashMap<>();
+            Map<String, Integer> filled = new HashMap<>();
+            tagCounts.forEach((tag, count) -> byTag.put(tag, new int[count]));
+            for (int i = 0; i < n; i++) {
+                if (tags[i] != null) {
+                    int k = filled.merge(tags[i], 1, Integer::sum) - 1;
+                    byTag.get(tags[i])[k] = i;
+                }
+            }
+        }
+
+        int size() {
+            return names.length;
+        }
+
+        PopularRoadDTO toDto(int i) {
+            PopularRoadDTO dto = new PopularRoadDTO();
+            dto.setRank(rank[i]);
+            dto.setRoadName(names[i]);
+            dto.setFrequence(frequence[i]);
+            dto.setPopularityTag(tags[i]);
+            return dto;
+        }
+
+        /** 排序键比较：frequence 降序，路名升序 */
+        int compare(int i, int freq, String name) {
+            if (frequence[i] != freq) {
+                return frequence[i] > freq ? -1 : 1;
+            }
+            return names[i].compareTo(name);
+        }
+
+        /** 列表（positions 为 null 表示全表）中第 j 项及其之前与之同键的条数，用于游标 */
+        Cursor cursorAt(int[] positions, int j, int i) {
+            int skip = 1;
+            while (j - skip >= 0 && compare(positions == null ? j - skip : positions[j - skip], frequence[i], names[i]) == 0) {
+                skip++;
+            }
+            return new Cursor(frequence[i], names[i], skip);
+        }
+
+        /** 游标之后第一项在列表中的下标（二分查找） */
+        int firstAfter(int[] positions, int total, Cursor after) {
+            int lo = 0;
+            int hi = total;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compare(positions == null ? mid : positions[mid], after.frequence, after.roadName) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            // 跳过同键中已返回的部分
+            return Math.min(lo + after.skip, total);
+        }
+    }
+
+    private static class RowBuilder {
+        String[] names = new String[1024];
+        int[] frequence = new int[1024];
+        String[] tags = new String[1024];
+        int size;
+
+        void add(String name, int freq, String tag) {
+            if (size == names.length) {
+                int capacity = size << 1;
+                names = Arrays.copyOf(names, capacity);
+                frequence = Arrays.copyOf(frequence, capacity);
+                tags = Arrays.copyOf(tags, capacity);
+            }
+            names[size] = name;
+            frequence[size] = freq;
+            tags[size] = tag;
+            size++;
+        }
+    }
+
+    /** 分页游标：上一页最后一条的排序键，以及同键条目中已返回的条数 */
+    private record Cursor(int frequence, String roadName, int skip) {
+
+        String encode() {
+            String raw = frequence + ":" + skip + ":" + roadName;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int first = raw.indexOf(':');
+                int second = raw.indexOf(':', first + 1);
+                if (first < 0 || second < 0) {
+                    return null;
+                }
+                int skip = Integer.parseInt(raw.substring(first + 1, second));
+                if (skip < 0) {
+                    return null;
+                }
+                return new Cursor(Integer.parseInt(raw.substring(0, first)), raw.substring(second + 1), skip);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+}
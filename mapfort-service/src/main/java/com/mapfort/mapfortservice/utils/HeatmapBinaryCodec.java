@@ -0,0 +1,141 @@
+package com.mapfort.mapfortservice.utils;
+
+import java.util.Arrays;
+
+/**
+ * 热力点紧凑二进制编码（Accept: application/x-mapfort-heatmap）。
+ *
+ * <pre>
+ * magic      4 字节 "MFH1"
+ * count      uvarint 点数
+ * originLon  svarint 栅格原点经度，单位 1e-6°
+ * originLat  svarint 栅格原点纬度，单位 1e-6°
+ * 每个点：
+ *   dLon       svarint 相对上一点（首点相对原点）的经度差，单位 1e-6°
+ *   dLat       svarint 相对上一点（首点相对原点）的纬度差，单位 1e-6°
+ *   intensity  uvarint 热度
+ * </pre>
+ * svarint 为 zigzag 后的 LEB128 变长整数，与 protobuf 的 sint32 一致。
+ * 原点取最小经纬度向下对齐到 0.001° 栅格（与 PickupHeatmapGridTask 的栅格一致）。
+ *
+ * <p>多切片批量响应（{@link #encodeBulk}）：
+ * <pre>
+ * magic      4 字节 "MFB1"
+ * count      uvarint 切片数
+ * 每个切片：
+ *   workday    1 字节，1 = 工作日
+ *   hour       1 字节
+ *   length     uvarint 切片编码长度
+ *   body       length 字节，即上面的单切片编码
+ * </pre>
+ */
+public class HeatmapBinaryCodec {
+
+    public static final String MEDIA_TYPE = "application/x-mapfort-heatmap";
+
+    /** 定点量化比例：1e-6° 约 0.1 米 */
+    public static final double SCALE = 1_000_000d;
+
+    /** 0.001° 栅格边长，单位 1e-6° */
+    private static final int GRID_UNITS = 1_000;
+    private static final byte[] MAGIC = {'M', 'F', 'H', '1'};
+    private static final byte[] BULK_MAGIC = {'M', 'F', 'B', '1'};
+
+    public static byte[] encode(double[] lon, double[] lat, int[] intensity, int size) {
+        double minLon = Double.POSITIVE_INFINITY;
+        double minLat = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            minLon = Math.min(minLon, lon[i]);
+            minLat = Math.min(minLat, lat[i]);
+        }
+        // 先量化再按整数对齐：直接对 minLon / 0.001 取 floor 时，恰在栅格线上的点会因浮点误差落到下一格
+        int originLon = size == 0 ? 0 : Math.floorDiv(quantize(minLon), GRID_UNITS) * GRID_UNITS;
+        int originLat = size == 0 ? 0 : Math.floorDiv(quantize(minLat), GRID_UNITS) * GRID_UNITS;
+
+        // 每点最多 5 + 5 + 5 字节
+        Buffer out = new Buffer(4 + 15 + size * 15);
+        out.writeBytes(MAGIC);
+        out.writeUVarint(size);
+        out.writeSVarint(originLon);
+        out.writeSVarint(originLat);
+
+        int prevLon = originLon;
+        int prevLat = originLat;
+        for (int i = 0; i < size; i++) {
+            int x = quantize(lon[i]);
+            int y = quantize(lat[i]);
+            out.writeSVarint(x - prevLon);
+            out.writeSVarint(y - prevLat);
+            out.writeUVarint(Math.max(intensity[i], 0));
+            prevLon = x;
+            prevLat = y;
+        }
+        return out.toByteArray();
+    }
+
+    /** 将已编码的多个切片拼为一个批量响应，bodies 与 workdays、hours 一一对应 */
+    public static byte[] encodeBulk(boolean[] workdays, int[] hours, byte[][] bodies) {
+        int capacity = 4 + 5;
+        for (byte[] body : bodies) {
+            capacity += 2 + 5 + body.length;
+        }
+        Buffer out = new Buffer(capacity);
+        out.writeBytes(BULK_MAGIC);
+        out.writeUVarint(bodies.length);
+        for (int i = 0; i < bodies.length; i++) {
+            out.writeByte(workdays[i] ? 1 : 0);
+            out.writeByte(hours[i]);
+            out.writeUVarint(bodies[i].length);
+            out.writeBytes(bodies[i]);
+        }
+        return out.toByteArray();
+    }
+
+    private static int quantize(double degree) {
+        return (int) Math.round(degree * SCALE);
+    }
+
+    /** 简单的可扩容字节缓冲区，避免 ByteArrayOutputStream 的同步开销 */
+    private static class Buffer {
+        private byte[] bytes;
+        private int size;
+
+        Buffer(int capacity) {
+            bytes = new byte[Math.max(capacity, 16)];
+        }
+
+        void writeBytes(byte[] src) {
+            ensure(src.length);
+            System.arraycopy(src, 0, bytes, size, src.length);
+            size += src.length;
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            bytes[size++] = (byte) value;
+        }
+
+        void writeSVarint(int value) {
+            writeUVarint((value << 1) ^ (value >> 31));
+        }
+
+        void writeUVarint(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length << 1, size + extra));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.mapfort.mapfortservice.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mapbox Vector Tile (v2.1) 编码器，只实现点要素，足够输出热力栅格中心点。
+ * 直接写 protobuf 线格式，不依赖 protobuf 运行时。
+ */
+public class MvtEncoder {
+
+    public static final String MEDIA_TYPE = "application/vnd.mapbox-vector-tile";
+    public static final int DEFAULT_EXTENT = 4096;
+
+    private static final int WIRE_VARINT = 0;
+    private static final int WIRE_LEN = 2;
+
+    private static final int GEOM_POINT = 1;
+    private static final int CMD_MOVE_TO_ONE = (1 & 0x7) | (1 << 3);
+
+    /** 经度 → 瓦片内像素坐标（Web Mercator），可能落在 [0, extent) 之外 */
+    public static int tileX(double lon, int z, int x, int extent) {
+        double n = 1 << z;
+        return (int) Math.floor(((lon + 180.0) / 360.0 * n - x) * extent);
+    }
+
+    /** 纬度 → 瓦片内像素坐标（Web Mercator），可能落在 [0, extent) 之外 */
+    public static int tileY(double lat, int z, int y, int extent) {
+        double n = 1 << z;
+        double rad = Math.toRadians(lat);
+        double ty = (1.0 - Math.log(Math.tan(rad) + 1.0 / Math.cos(rad)) / Math.PI) / 2.0 * n;
+        return (int) Math.floor((ty - y) * extent);
+    }
+
+    /** 瓦片左边界经度 */
+    public static double tileLon(int x, int z) {
+        return x / (double) (1 << z) * 360.0 - 180.0;
+    }
+
+    /** 瓦片上边界纬度 */
+    public static double tileLat(int y, int z) {
+        double n = Math.PI - 2.0 * Math.PI * y / (1 << z);
+        return Math.toDegrees(Math.atan(Math.sinh(n)));
+    }
+
+    /** 将若干图层拼成一张瓦片 */
+    public static byte[] encodeTile(PointLayer... layers) {
+        ProtoWriter tile = new ProtoWriter(256);
+        for (PointLayer layer : layers) {
+            tile.writeMessage(3, layer.encode());
+        }
+        return tile.toByteArray();
+    }
+
+    /** 点图层构建器：属性键、值按出现顺序去重编号 */
+    public static class PointLayer {
+        private final String name;
+        private final int extent;
+        private final List<String> keys = new ArrayList<>();
+        private final Map<String, Integer> keyIndex = new HashMap<>();
+        private final List<Object> values = new ArrayList<>();
+        private final Map<Object, Integer> valueIndex = new HashMap<>();
+        private final ProtoWriter features = new ProtoWriter(1024);
+
+        private final ProtoWriter feature = new ProtoWriter(32);
+        private int[] tags = new int[8];
+        private int tagCount;
+        private int pendingX;
+        private int pendingY;
+        private boolean pending;
+
+        public PointLayer(String name, int extent) {
+            this.name = name;
+            this.extent = extent;
+        }
+
+        /** 开始一个新的点要素，随后可调用 tag 追加属性 */
+        public PointLayer point(int x, int y) {
+            flush();
+            pendingX = x;
+            pendingY = y;
+            pending = true;
+            return this;
+        }
+
+        public PointLayer tag(String key, long value) {
+            return addTag(key, value);
+        }
+
+        public PointLayer tag(String key, String value) {
+            return value == null ? this : addTag(key, value);
+        }
+
+        private PointLayer addTag(String key, Object value) {
+            if (tagCount + 2 > tags.length) {
+                tags = Arrays.copyOf(tags, tags.length << 1);
+            }
+            tags[tagCount++] = keyIndex.computeIfAbsent(key, k -> {
+                keys.add(k);
+                return keys.size() - 1;
+            });
+            tags[tagCount++] = valueIndex.computeIfAbsent(value, v -> {
+                values.add(v);
+                return values.size() - 1;
+            });
+            return this;
+        }
+
+        private void flush() {
+            if (!pending) {
+                return;
+            }
+            feature.reset();
+            feature.writePackedVarints(2, tags, tagCount);
+            feature.writeTag(3, WIRE_VARINT);
+            feature.writeVarint(GEOM_POINT);
+            feature.writePackedVarints(4, new int[]{CMD_MOVE_TO_ONE, zigzag(pendingX), zigzag(pendingY)}, 3);
+            features.writeMessage(2, feature);
+            tagCount = 0;
+            pending = false;
+        }
+
+        ProtoWriter encode() {
+            flush();
+            ProtoWriter layer = new ProtoWriter(features.size() + 256);
+            layer.writeTag(15, WIRE_VARINT);
+            layer.writeVarint(2);
+            layer.writeString(1, name);
+            layer.writeRaw(features);
+            for (String key : keys) {
+                layer.writeString(3, key);
+            }
+            ProtoWriter value = new ProtoWriter(16);
+            for (Object v : values) {
+                value.reset();
+                if (v instanceof String s) {
+                    value.writeString(1, s);
+                } else {
+                    value.writeTag(4, WIRE_VARINT);
+                    value.writeVarint((Long) v);
+                }
+                layer.writeMessage(4, value);
+            }
+            layer.writeTag(5, WIRE_VARINT);
+            layer.writeVarint(extent);
+            return layer;
+        }
+    }
+
+    private static int zigzag(int v) {
+        return (v << 1) ^ (v >> 31);
+    }
+
+    /** 最小化的 protobuf 写出器 */
+    static class ProtoWriter {
+        private byte[] buf;
+        private int size;
+
+        ProtoWriter(int capacity) {
+            buf = new byte[Math.max(capacity, 16)];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void reset() {
+            size = 0;
+        }
+
+        void writeTag(int field, int wireType) {
+            writeVarint(((long) field << 3) | wireType);
+        }
+
+        void writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[size++] = (byte) value;
+        }
+
+        void writeString(int field, String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeTag(field, WIRE_LEN);
+            writeVarint(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, size, bytes.length);
+            size += bytes.length;
+        }
+
+        void writeMessage(int field, ProtoWriter message) {
+            writeTag(field, WIRE_LEN);
+            writeVarint(message.size);
+            writeRaw(message);
+        }
+
+        void writeRaw(ProtoWriter other) {
+            ensure(other.size);
+            System.arraycopy(other.buf, 0, buf, size, other.size);
+            size += other.size;
+        }
+
+        void writePackedVarints(int field, int[] values, int count) {
+            int length = 0;
+            for (int i = 0; i < count; i++) {
+                length += varintSize(values[i] & 0xFFFFFFFFL);
+            }
+            writeTag(field, WIRE_LEN);
+            writeVarint(length);
+            for (int i = 0; i < count; i++) {
+                writeVarint(values[i] & 0xFFFFFFFFL);
+            }
+        }
+
+        private static int varintSize(long value) {
+            int n = 1;
+            while ((value & ~0x7FL) != 0) {
+                value >>>= 7;
+                n++;
+            }
+            return n;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, size + extra));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, size);
+        }
+    }
+}
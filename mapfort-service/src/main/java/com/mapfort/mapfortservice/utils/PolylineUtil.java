@@ -0,0 +1,116 @@
+package com.mapfort.mapfortservice.utils;
+
+/**
+ * 折线简化与编码：
+ * <ul>
+ *   <li>{@link #simplify}：Douglas-Peucker 抽稀，经度按纬度余弦缩放后在局部平面上计算点到线段的距离；</li>
+ *   <li>{@link #encode}：Google Encoded Polyline（精度 1e-5°，纬度在前），
+ *       各前端地图库均有现成解码器。</li>
+ * </ul>
+ */
+public class PolylineUtil {
+
+    /** 编码精度：1e-5° 约 1 米 */
+    public static final double SCALE = 100_000d;
+
+    /**
+     * 对 [from, to) 区间内的点做 Douglas-Peucker 抽稀，返回保留点的下标（升序，含首尾）。
+     *
+     * @param tolerance 允许偏差（度，按纬度方向计）
+     */
+    public static int[] simplify(double[] lon, double[] lat, int from, int to, double tolerance) {
+        int n = to - from;
+        if (n <= 2) {
+            int[] all = new int[n];
+            for (int i = 0; i < n; i++) {
+                all[i] = from + i;
+            }
+            return all;
+        }
+
+        double cosLat = Math.cos(Math.toRadians(lat[from]));
+        double tolerance2 = tolerance * tolerance;
+        boolean[] keep = new boolean[n];
+        keep[0] = true;
+        keep[n - 1] = true;
+
+        // 显式栈代替递归，避免长折线栈溢出
+        int[] stack = new int[2 * n];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = n - 1;
+        int kept = 2;
+        while (top > 0) {
+            int end = stack[--top];
+            int start = stack[--top];
+            double maxDist2 = -1;
+            int split = -1;
+            for (int i = start + 1; i < end; i++) {
+                double d2 = segmentDistance2(lon, lat, from + i, from + start, from + end, cosLat);
+                if (d2 > maxDist2) {
+                    maxDist2 = d2;
+                    split = i;
+                }
+            }
+            if (split >= 0 && maxDist2 > tolerance2) {
+                keep[split] = true;
+                kept++;
+                stack[top++] = start;
+                stack[top++] = split;
+                stack[top++] = split;
+                stack[top++] = end;
+            }
+        }
+
+        int[] result = new int[kept];
+        for (int i = 0, k = 0; i < n; i++) {
+            if (keep[i]) {
+                result[k++] = from + i;
+            }
+        }
+        return result;
+    }
+
+    /** zoom 级别下 pixels 个像素对应的度数（256 像素瓦片，赤道处），用作该级别的抽稀容差 */
+    public static double tolerance(int zoom, double pixels) {
+        return pixels * 360d / (256d * (1L << zoom));
+    }
+
+    /** 按给定下标顺序编码为 Google Encoded Polyline */
+    public static String encode(double[] lon, double[] lat, int[] indices) {
+        StringBuilder sb = new StringBuilder(indices.length * 8);
+        long prevLat = 0;
+        long prevLon = 0;
+        for (int i : indices) {
+            long y = Math.round(lat[i] * SCALE);
+            long x = Math.round(lon[i] * SCALE);
+            writeSigned(sb, y - prevLat);
+            writeSigned(sb, x - prevLon);
+            prevLat = y;
+            prevLon = x;
+        }
+        return sb.toString();
+    }
+
+    private static void writeSigned(StringBuilder sb, long value) {
+        long v = value < 0 ? ~(value << 1) : value << 1;
+        while (v >= 0x20) {
+            sb.append((char) ((0x20 | (v & 0x1f)) + 63));
+            v >>= 5;
+        }
+        sb.append((char) (v + 63));
+    }
+
+    /** 点 p 到线段 ab 的距离平方（度²，经度已按 cosLat 缩放） */
+    private static double segmentDistance2(double[] lon, double[] lat, int p, int a, int b, double cosLat) {
+        double ax = lon[a] * cosLat, ay = lat[a];
+        double bx = lon[b] * cosLat, by = lat[b];
+        double px = lon[p] * cosLat, py = lat[p];
+        double dx = bx - ax, dy = by - ay;
+        double len2 = dx * dx + dy * dy;
+        double t = len2 == 0 ? 0 : Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / len2));
+        double ex = ax + t * dx - px;
+        double ey = ay + t * dy - py;
+        return ex * ex + ey * ey;
+    }
+}
@@ -0,0 +1,165 @@
+package com.mapfort.mapfortservice.utils;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * 点数据的均匀网格空间索引（CSR 布局）：
+ * cellStart[c] ~ cellStart[c + 1] 为第 c 个网格内点的下标在 items 中的区间。
+ * 构建后只读，查询无锁；矩形查询先计数再填充，只分配结果数组。
+ * <p>
+ * 网格范围取经纬度各自去掉两端 1% 后的区间，坐标缺失形成的 (0, 0) 等少量离群点不会把网格撑大，
+ * 这些点归入最近的边缘网格，查询结果不受影响（行列号的截断是单调的，矩形内的点一定落在被扫描的网格中）。
+ */
+public class UniformGridIndex {
+
+    /** 单轴最多网格数，防止范围过大时网格数过多 */
+    private static final int MAX_CELLS_PER_AXIS = 1024;
+    /** 确定网格范围时两端各去掉的点数比例 */
+    private static final double OUTLIER_FRACTION = 0.01;
+    /** 点数达到该值才去掉两端离群点，点很少时网格本身很小，不值得排序 */
+    private static final int MIN_POINTS_FOR_TRIM = 100;
+
+    private final double[] lon;
+    private final double[] lat;
+    private final double originLon;
+    private final double originLat;
+    private final double cellSize;
+    private final int cols;
+    private final int rows;
+    private final int[] cellStart;
+    private final int[] items;
+
+    /**
+     * @param lon          点经度
+     * @param lat          点纬度
+     * @param size         点数
+     * @param minCellSize  最小网格边长（度）
+     */
+    public UniformGridIndex(double[] lon, double[] lat, int size, double minCellSize) {
+        this.lon = lon;
+        this.lat = lat;
+
+        double[] lonRange = range(lon, size);
+        double[] latRange = range(lat, size);
+        double minLon = lonRange[0], maxLon = lonRange[1];
+        double minLat = latRange[0], maxLat = latRange[1];
+
+        double span = Math.max(maxLon - minLon, maxLat - minLat);
+        this.cellSize = Math.max(minCellSize, span / MAX_CELLS_PER_AXIS);
+        this.originLon = minLon;
+        this.originLat = minLat;
+        this.cols = Math.max(1, (int) ((maxLon - minLon) / cellSize) + 1);
+        this.rows = Math.max(1, (int) ((maxLat - minLat) / cellSize) + 1);
+
+        // 计数 -> 前缀和 -> 回填
+        int[] start = new int[cols * rows + 1];
+        for (int i = 0; i < size; i++) {
+            start[cellOf(lon[i], lat[i]) + 1]++;
+        }
+        for (int c = 0; c < cols * rows; c++) {
+            start[c + 1] += start[c];
+        }
+        int[] cursor = new int[cols * rows];
+        int[] sorted = new int[size];
+        for (int i = 0; i < size; i++) {
+            int c = cellOf(lon[i], lat[i]);
+            sorted[start[c] + cursor[c]++] = i;
+        }
+        this.cellStart = start;
+        this.items = sorted;
+    }
+
+    /** 返回落在矩形内（含边界）的点下标，按网格顺序排列 */
+    public int[] query(double minLon, double minLat, double maxLon, double maxLat) {
+        int c0 = col(minLon), c1 = col(maxLon);
+        int r0 = row(minLat), r1 = row(maxLat);
+        if (c0 > c1 || r0 > r1) {
+            return new int[0];
+        }
+
+        int count = 0;
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * cols + c;
+                for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                    if (inside(items[k], minLon, minLat, maxLon, maxLat)) {
+                        count++;
+                    }
+                }
+            }
+        }
+
+        int[] result = new int[count];
+        int n = 0;
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * cols + c;
+                for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                    if (inside(items[k], minLon, minLat, maxLon, maxLat)) {
+                        result[n++] = items[k];
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /** 遍历矩形所覆盖网格内的全部点（候选点，可能略超出矩形），不做精确过滤 */
+    public void forEachCandidate(double minLon, double minLat, double maxLon, double maxLat, IntConsumer action) {
+        int c0 = col(minLon), c1 = col(maxLon);
+        int r0 = row(minLat), r1 = row(maxLat);
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * cols + c;
+                for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                    action.accept(items[k]);
+                }
+            }
+        }
+    }
+
+    /** 网格边长（度） */
+    double cellSize() {
+        return cellSize;
+    }
+
+    /** 坐标的 [下界, 上界]：点数足够时去掉两端各 OUTLIER_FRACTION 的点，没有点时为 [0, 0] */
+    private static double[] range(double[] values, int size) {
+        if (size == 0) {
+            return new double[]{0, 0};
+        }
+        if (size < MIN_POINTS_FOR_TRIM) {
+            double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < size; i++) {
+                min = Math.min(min, values[i]);
+                max = Math.max(max, values[i]);
+            }
+            return new double[]{min, max};
+        }
+        double[] sorted = Arrays.copyOf(values, size);
+        Arrays.sort(sorted);
+        int trim = Math.max(1, (int) (size * OUTLIER_FRACTION));
+        return new double[]{sorted[trim], sorted[size - 1 - trim]};
+    }
+
+    private boolean inside(int i, double minLon, double minLat, double maxLon, double maxLat) {
+        return lon[i] >= minLon && lon[i] <= maxLon && lat[i] >= minLat && lat[i] <= maxLat;
+    }
+
+    private int cellOf(double x, double y) {
+        return row(y) * cols + col(x);
+    }
+
+    private int col(double x) {
+        return clamp((int) Math.floor((x - originLon) / cellSize), cols);
+    }
+
+    private int row(double y) {
+        return clamp((int) Math.floor((y - originLat) / cellSize), rows);
+    }
+
+    private static int clamp(int v, int n) {
+        return v < 0 ? 0 : Math.min(v, n - 1);
+    }
+}
@@ -0,0 +1,62 @@
+package com.mapfort.mapfortservice.controller;
+
+import com.mapfort.mapfortservice.common.Result;
+import com.mapfort.mapfortservice.entity.HeatMapPointsDTO;
+import com.mapfort.mapfortservice.service.HeatmapSlice;
+import com.mapfort.mapfortservice.service.HeatmapSliceCache;
+import com.mapfort.mapfortservice.utils.HeatmapBinaryCodec;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/** 同一 URL 的列表与二进制两种表示对 hour 越界和视口参数的处理一致 */
+class HeatmapQueryControllerTest {
+
+    private static final byte[] EMPTY_SLICE = HeatmapBinaryCodec.encode(new double[0], new double[0], new int[0], 0);
+
+    private HeatmapQueryController controller;
+    private HeatmapSlice slice;
+
+    @BeforeEach
+    void setUp() {
+        double[] lon = {126.60, 126.65, 126.70, 126.75};
+        double[] lat = {45.70, 45.75, 45.80, 45.85};
+        slice = new HeatmapSlice(new String[]{"a", "b", "c", "d"}, lon, lat, new int[]{1, 2, 3, 4},
+                new String[]{"低", "中", "高", "高"});
+        HeatmapSliceCache cache = mock(HeatmapSliceCache.class);
+        when(cache.getSlice(true, 8)).thenReturn(slice);
+        controller = new HeatmapQueryController(cache, null, null);
+    }
+
+    @Test
+    void outOfRangeHourIsEmptyInBothRepresentations() {
+        Result<List<HeatMapPointsDTO>> json = controller.getHeatmapByDayAndHour(true, 24, null, null, null, null);
+        assertTrue(json.getData().isEmpty());
+
+        ResponseEntity<byte[]> binary = controller.getHeatmapBinary(true, -1, null, null, null, null);
+        assertEquals(200, binary.getStatusCode().value());
+        assertArrayEquals(EMPTY_SLICE, binary.getBody());
+    }
+
+    @Test
+    void viewportFiltersTheBinarySlice() {
+        Result<List<HeatMapPointsDTO>> json = controller.getHeatmapByDayAndHour(true, 8, 126.62, 45.72, 126.72, 45.82);
+        assertEquals(2, json.getData().size());
+
+        byte[] binary = controller.getHeatmapBinary(true, 8, 126.62, 45.72, 126.72, 45.82).getBody();
+        assertArrayEquals(slice.binary(new int[]{1, 2}), binary);
+        // 点数（MFH1 之后的第一个 uvarint）与列表接口一致
+        assertEquals(2, binary[4]);
+
+        assertArrayEquals(slice.binary(), controller.getHeatmapBinary(true, 8, null, null, null, null).getBody());
+        assertEquals(400, controller.getHeatmapBinary(true, 8, 126.62, null, null, null).getStatusCode().value());
+    }
+}
@@ -0,0 +1,105 @@
+package com.mapfort.mapfortservice.service;
+
+import com.mapfort.mapfortservice.entity.HeatmapCellDTO;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 推送差异按栅格计算：同一栅格的多行合并（热度求和，等级取热度最大的一行，并列时取先出现的），
+ * 只有热度或等级变化才算 changed，消失的栅格进入 removed；snapshot 即与空切片的差异。
+ */
+class HeatmapStreamServiceTest {
+
+    @Test
+    void snapshotMergesRowsOfTheSameCell() {
+        HeatmapSlice slice = slice(
+                row("a", 1.0, 2.0, 3, "低"),
+                row("b", 5.0, 6.0, 1, "低"),
+                row("a", 1.1, 2.1, 7, "高"),
+                row("a", 1.2, 2.2, 7, "中"),
+                row("c", 9.0, 9.0, 0, null));
+
+        HeatmapStreamService.Delta delta = HeatmapStreamService.diff(null, slice);
+        assertEquals(List.of(), delta.removed());
+        List<HeatmapCellDTO> cells = delta.changed();
+        assertEquals(List.of("a", "b", "c"), cells.stream().map(HeatmapCellDTO::getCellId).toList());
+
+        HeatmapCellDTO a = cells.get(0);
+        assertEquals(17, a.getIntensity());
+        // 热度 7 的两行并列，取先出现的一行的等级
+        assertEquals("高", a.getHeatLevel());
+        // 坐标取该栅格的第一行
+        assertEquals(1.0, a.getLon());
+        assertEquals(2.0, a.getLat());
+        assertEquals(1, cells.get(1).getIntensity());
+        assertEquals(0, cells.get(2).getIntensity());
+        assertEquals(null, cells.get(2).getHeatLevel());
+    }
+
+    @Test
+    void onlyIntensityOrLevelChangesAreReported() {
+        HeatmapSlice before = slice(
+                row("same", 1, 1, 2, "低"),
+                row("same", 1, 1, 3, "中"),
+                row("moved", 2, 2, 4, "中"),
+                row("hotter", 3, 3, 4, "中"),
+                row("relabel", 4, 4, 4, "中"),
+                row("gone", 5, 5, 1, "低"));
+        HeatmapSlice after = slice(
+                row("new", 6, 6, 1, "低"),
+                // 合并后合计与等级均未变，行数不同也不算变化
+                row("same", 1, 1, 5, "中"),
+                // 只有坐标变化不推送
+                row("moved", 2.5, 2.5, 4, "中"),
+                row("hotter", 3, 3, 2, "中"),
+                row("hotter", 3, 3, 3, "中"),
+                row("relabel", 4, 4, 4, "高"));
+
+        HeatmapStreamService.Delta delta = HeatmapStreamService.diff(before, after);
+        // changed 按新切片中栅格首次出现的顺序
+        assertEquals(List.of("new", "hotter", "relabel"), delta.changed().stream().map(HeatmapCellDTO::getCellId).toList());
+        assertEquals(5, delta.changed().get(1).getIntensity());
+        assertEquals("高", delta.changed().get(2).getHeatLevel());
+        assertEquals(List.of("gone"), delta.removed());
+    }
+
+    @Test
+    void identicalAndEmptySlicesProduceNoDelta() {
+        HeatmapSlice slice = slice(row("a", 1, 1, 1, "低"), row("b", 2, 2, 2, "中"));
+        HeatmapSlice copy = slice(row("b", 2, 2, 2, "中"), row("a", 1, 1, 1, "低"));
+        assertTrue(HeatmapStreamService.diff(slice, copy).isEmpty());
+        assertTrue(HeatmapStreamService.diff(null, slice()).isEmpty());
+
+        HeatmapStreamService.Delta cleared = HeatmapStreamService.diff(slice, slice());
+        assertEquals(List.of(), cleared.changed());
+        assertEquals(List.of("a", "b"), cleared.removed());
+    }
+
+    private record Row(String cellId, double lon, double lat, int intensity, String heatLevel) {
+    }
+
+    private static Row row(String cellId, double lon, double lat, int intensity, String heatLevel) {
+        return new Row(cellId, lon, lat, intensity, heatLevel);
+    }
+
+    private static HeatmapSlice slice(Row... rows) {
+        int n = rows.length;
+        String[] cellId = new String[n];
+        double[] lon = new double[n];
+        double[] lat = new double[n];
+        int[] intensity = new int[n];
+        String[] heatLevel = new String[n];
+        for (int i = 0; i < n; i++) {
+            cellId[i] = rows[i].cellId();
+            lon[i] = rows[i].lon();
+            lat[i] = rows[i].lat();
+            intensity[i] = rows[i].intensity();
+            heatLevel[i] = rows[i].heatLevel();
+        }
+        return new HeatmapSlice(cellId, lon, lat, intensity, heatLevel);
+    }
+}
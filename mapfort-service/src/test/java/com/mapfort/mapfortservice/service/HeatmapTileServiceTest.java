@@ -0,0 +1,103 @@
+package com.mapfort.mapfortservice.service;
+
+import com.mapfort.mapfortservice.common.CacheMetrics;
+import com.mapfort.mapfortservice.utils.MvtDecoder;
+import com.mapfort.mapfortservice.utils.MvtEncoder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/** 瓦片裁剪：瓦片内与四周 64 像素缓冲区内的点输出，缓冲区外的点不输出，坐标按 extent 换算 */
+class HeatmapTileServiceTest {
+
+    private static final int Z = 14;
+    private static final int EXTENT = MvtEncoder.DEFAULT_EXTENT;
+
+    @Test
+    void clipsToTilePlusBuffer() {
+        int x = (int) ((126.6 + 180) / 360 * (1 << Z));
+        double rad = Math.toRadians(45.75);
+        int y = (int) ((1 - Math.log(Math.tan(rad) + 1 / Math.cos(rad)) / Math.PI) / 2 * (1 << Z));
+        double west = MvtEncoder.tileLon(x, Z);
+        double east = MvtEncoder.tileLon(x + 1, Z);
+        double north = MvtEncoder.tileLat(y, Z);
+        double south = MvtEncoder.tileLat(y + 1, Z);
+        double midLat = (north + south) / 2;
+        double midLon = (west + east) / 2;
+        double pixelLon = (east - west) / EXTENT;
+        double pixelLat = (north - south) / EXTENT;
+
+        // 名称 -> {经度, 纬度}；缓冲区为 64 像素
+        Map<String, double[]> points = new HashMap<>();
+        points.put("center", new double[]{midLon, midLat});
+        points.put("westEdge", new double[]{west, midLat});
+        points.put("westBuffer", new double[]{west - 40 * pixelLon, midLat});
+        points.put("westOutside", new double[]{west - 80 * pixelLon, midLat});
+        points.put("eastBuffer", new double[]{east + 40 * pixelLon, midLat});
+        points.put("eastOutside", new double[]{east + 80 * pixelLon, midLat});
+        points.put("northBuffer", new double[]{midLon, north + 40 * pixelLat});
+        points.put("northOutside", new double[]{midLon, north + 80 * pixelLat});
+        points.put("southBuffer", new double[]{midLon, south - 40 * pixelLat});
+        points.put("southOutside", new double[]{midLon, south - 80 * pixelLat});
+        points.put("far", new double[]{0, 0});
+
+        String[] names = points.keySet().toArray(new String[0]);
+        double[] lon = new double[names.length];
+        double[] lat = new double[names.length];
+        int[] intensity = new int[names.length];
+        String[] level = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            lon[i] = points.get(names[i])[0];
+            lat[i] = points.get(names[i])[1];
+            intensity[i] = i;
+            level[i] = names[i];
+        }
+        HeatmapSlice[] slices = new HeatmapSlice[HeatmapSliceCache.SLICE_COUNT];
+        HeatmapSlice empty = new HeatmapSlice(new String[0], new double[0], new double[0], new int[0], new String[0]);
+        Arrays.fill(slices, empty);
+        slices[HeatmapSliceCache.sliceIndex(true, 8)] = new HeatmapSlice(names, lon, lat, intensity, level);
+
+        HeatmapSliceCache cache = mock(HeatmapSliceCache.class);
+        when(cache.current()).thenReturn(new HeatmapSliceCache.Snapshot(slices, "v1"));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        HeatmapTileService service = new HeatmapTileService(cache, new CacheMetrics(registry), registry, 16);
+
+        List<MvtDecoder.Layer> layers = MvtDecoder.decode(service.getTile(true, 8, Z, x, y));
+        assertEquals(1, layers.size());
+        MvtDecoder.Layer layer = layers.get(0);
+        assertEquals(HeatmapTileService.LAYER_NAME, layer.name());
+        assertEquals(EXTENT, layer.extent());
+
+        Map<String, int[]> decoded = new HashMap<>();
+        for (MvtDecoder.Feature feature : layer.features()) {
+            decoded.put((String) feature.properties().get("heat_level"), feature.points().get(0));
+        }
+        assertEquals(Set.of("center", "westEdge", "westBuffer", "eastBuffer", "northBuffer", "southBuffer"),
+                decoded.keySet());
+
+        assertPixel(EXTENT / 2, decoded.get("center")[0]);
+        assertEquals(0, decoded.get("westEdge")[0]);
+        assertPixel(-40, decoded.get("westBuffer")[0]);
+        assertPixel(EXTENT + 40, decoded.get("eastBuffer")[0]);
+        // 纬度方向按线性像素外扩，Mercator 下与像素只近似成正比
+        assertPixel(-40, decoded.get("northBuffer")[1]);
+        assertPixel(EXTENT + 40, decoded.get("southBuffer")[1]);
+        for (int[] p : decoded.values()) {
+            assertTrue(p[0] >= -64 && p[0] <= EXTENT + 64 && p[1] >= -64 && p[1] <= EXTENT + 64);
+        }
+    }
+
+    private static void assertPixel(int expected, int actual) {
+        assertTrue(Math.abs(expected - actual) <= 1, "expected " + expected + " got " + actual);
+    }
+}
@@ -0,0 +1,133 @@
+package com.mapfort.mapfortservice.service;
+
+import com.mapfort.mapfortservice.common.JdbcMetrics;
+import com.mapfort.mapfortservice.entity.PopularRoadDTO;
+import com.mapfort.mapfortservice.entity.PopularRoadPageDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 游标分页：含大量 (frequence, road_name) 完全相同的行（同名路段的不同 way），
+ * 不论页大小、是否按标签过滤，逐页拼接的结果都与整表顺序一致，不跳过也不重复。
+ */
+class PopularRoadLeaderboardTest {
+
+    private static final String[] TAGS = {"极热门路段", "热门路段", "普通路段", "冷门路段"};
+
+    private final List<Row> rows = new ArrayList<>();
+    private PopularRoadLeaderboard leaderboard;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // 同一路名、同一频次的行成组出现，组内标签交替，按标签过滤后同键行在原表中不相邻
+        String[] names = {"中山路", "中央大街", "学府路", "红旗大街", "长江路"};
+        int[] frequencies = {500, 500, 300, 300, 300, 120, 7};
+        int seq = 0;
+        for (int f : frequencies) {
+            for (String name : names) {
+                int copies = 1 + (seq++ % 4);
+                for (int c = 0; c < copies; c++) {
+                    rows.add(new Row(name, f, TAGS[(c + f) % TAGS.length]));
+                }
+            }
+        }
+        rows.add(new Row("无标签路", 120, null));
+        rows.add(new Row("无标签路", 120, null));
+        // 与 SQL 的 ORDER BY frequence DESC, road_name COLLATE "C" 一致，同键行保持插入顺序
+        rows.sort(Comparator.comparingInt(Row::frequence).reversed().thenComparing(Row::name));
+
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.queryForObject(anyString(), eq(String.class))).thenReturn("v1");
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (Row row : rows) {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getString("road_name")).thenReturn(row.name());
+                when(rs.getInt("frequence")).thenReturn(row.frequence());
+                when(rs.getString("popularity_tag")).thenReturn(row.tag());
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+        leaderboard = new PopularRoadLeaderboard(jdbcTemplate, new JdbcMetrics(new SimpleMeterRegistry()));
+    }
+
+    @Test
+    void pagesWithoutTagCoverEveryRowOnce() {
+        List<String> expected = rows.stream().map(Row::key).toList();
+        for (int size = 1; size <= 9; size++) {
+            assertEquals(expected, pageThrough(null, size), "page size " + size);
+        }
+    }
+
+    @Test
+    void pagesWithTagCoverEveryTaggedRowOnce() {
+        for (String tag : TAGS) {
+            List<String> expected = rows.stream().filter(r -> tag.equals(r.tag())).map(Row::key).toList();
+            assertTrue(expected.size() > 5, tag);
+            for (int size = 1; size <= 9; size++) {
+                assertEquals(expected, pageThrough(tag, size), tag + " page size " + size);
+            }
+        }
+    }
+
+    @Test
+    void totalAndRanksFollowTies() {
+        PopularRoadPageDTO first = leaderboard.page(null, 3, null);
+        assertEquals(rows.size(), first.getTotal());
+        assertEquals(1, first.getItems().get(0).getRank());
+        PopularRoadPageDTO unknownTag = leaderboard.page(null, 10, "不存在的标签");
+        assertEquals(0, unknownTag.getTotal());
+        assertTrue(unknownTag.getItems().isEmpty());
+        assertNull(unknownTag.getNextCursor());
+        assertNull(leaderboard.page("not a cursor!", 10, null));
+    }
+
+    /** 逐页取完，返回各条的 (frequence, road_name, tag)，并核对每页条数与 total */
+    private List<String> pageThrough(String tag, int size) {
+        List<String> seen = new ArrayList<>();
+        String cursor = null;
+        int total = -1;
+        for (int guard = 0; guard <= rows.size(); guard++) {
+            PopularRoadPageDTO page = leaderboard.page(cursor, size, tag);
+            assertNotNull(page);
+            total = page.getTotal();
+            for (PopularRoadDTO dto : page.getItems()) {
+                seen.add(dto.getFrequence() + "|" + dto.getRoadName() + "|" + dto.getPopularityTag());
+            }
+            cursor = page.getNextCursor();
+            if (cursor == null) {
+                break;
+            }
+            assertEquals(size, page.getItems().size());
+        }
+        assertNull(cursor, "paging did not terminate");
+        assertEquals(total, seen.size());
+        return seen;
+    }
+
+    private record Row(String name, int frequence, String tag) {
+        String key() {
+            return frequence + "|" + name + "|" + tag;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.mapfort.mapfortservice.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 按类注释中的 MFH1 / MFB1 格式独立解码，核对往返结果：
+ * 负增量、恰在 0.001° 栅格线上的点、空切片以及多切片批量帧。
+ */
+class HeatmapBinaryCodecTest {
+
+    @Test
+    void emptySliceIsHeaderOnly() {
+        byte[] encoded = HeatmapBinaryCodec.encode(new double[0], new double[0], new int[0], 0);
+        assertArrayEquals(new byte[]{'M', 'F', 'H', '1', 0, 0, 0}, encoded);
+        Slice slice = new Reader(encoded).slice();
+        assertEquals(0, slice.lon.length);
+    }
+
+    /** 点按经纬度递减排列，除首点外每个增量都为负，zigzag 后仍能还原 */
+    @Test
+    void negativeDeltasRoundTrip() {
+        double[] lon = {126.7123456, 126.6501, 126.5, 126.4999994};
+        double[] lat = {45.8123456, 45.7501, 45.6, 45.5999994};
+        int[] intensity = {3, 0, 300, 70000};
+        Slice slice = roundTrip(lon, lat, intensity);
+        assertQuantized(lon, slice.lon);
+        assertQuantized(lat, slice.lat);
+        assertArrayEquals(intensity, slice.intensity);
+        assertEquals(126_499_000, slice.originLon);
+        assertEquals(45_599_000, slice.originLat);
+    }
+
+    /** 最小经纬度恰在栅格线上时原点就是该点，首点增量为 0；遍历一段范围覆盖 x / 0.001 的浮点误差 */
+    @Test
+    void pointsOnGridOriginStartAtZeroDelta() {
+        for (int i = 126_000; i < 127_000; i++) {
+            double lon = i / 1000.0;
+            double lat = (i - 80_000) / 1000.0;
+            Slice slice = roundTrip(new double[]{lon, lon + 0.001}, new double[]{lat, lat}, new int[]{1, 2});
+            assertEquals(i * 1000, slice.originLon, "lon " + lon);
+            assertEquals((i - 80_000) * 1000, slice.originLat, "lat " + lat);
+            assertEquals(0, slice.firstDeltaLon);
+            assertEquals(0, slice.firstDeltaLat);
+            assertQuantized(new double[]{lon, lon + 0.001}, slice.lon);
+        }
+    }
+
+    /** 西经 / 南纬的负坐标向下对齐到栅格，负热度按 0 编码 */
+    @Test
+    void negativeCoordinatesAndIntensity() {
+        double[] lon = {-0.0005, -73.9855};
+        double[] lat = {-33.8688, 0.0};
+        Slice slice = roundTrip(lon, lat, new int[]{-5, 7});
+        assertEquals(-73_986_000, slice.originLon);
+        assertEquals(-33_869_000, slice.originLat);
+        assertQuantized(lon, slice.lon);
+        assertQuantized(lat, slice.lat);
+        assertArrayEquals(new int[]{0, 7}, slice.intensity);
+    }
+
+    @Test
+    void bulkFrameCarriesEachSlice() {
+        byte[] empty = HeatmapBinaryCodec.encode(new double[0], new double[0], new int[0], 0);
+        byte[] small = HeatmapBinaryCodec.encode(new double[]{126.6}, new double[]{45.7}, new int[]{9}, 1);
+        // 足够多的点使切片长度超过 127 字节，长度字段需两个字节
+        int n = 100;
+        double[] lon = new double[n];
+        double[] lat = new double[n];
+        int[] intensity = new int[n];
+        for (int i = 0; i < n; i++) {
+            lon[i] = 126.5 + (i % 2 == 0 ? i : -i) * 0.0123;
+            lat[i] = 45.7 - i * 0.0071;
+            intensity[i] = i * 1000;
+        }
+        byte[] large = HeatmapBinaryCodec.encode(lon, lat, intensity, n);
+        assertTrue(large.length > 127);
+
+        byte[] bulk = HeatmapBinaryCodec.encodeBulk(new boolean[]{true, false, true}, new int[]{0, 23, 8},
+                new byte[][]{empty, small, large});
+        Reader reader = new Reader(bulk);
+        assertEquals("MFB1", reader.magic());
+        assertEquals(3, reader.uvarint());
+
+        assertEquals(1, reader.u8());
+        assertEquals(0, reader.u8());
+        assertArrayEquals(empty, reader.bytes(reader.uvarint()));
+
+        assertEquals(0, reader.u8());
+        assertEquals(23, reader.u8());
+        assertArrayEquals(small, reader.bytes(reader.uvarint()));
+
+        assertEquals(1, reader.u8());
+        assertEquals(8, reader.u8());
+        Slice slice = new Reader(reader.bytes(reader.uvarint())).slice();
+        assertQuantized(lon, slice.lon);
+        assertQuantized(lat, slice.lat);
+        assertArrayEquals(intensity, slice.intensity);
+        assertEquals(bulk.length, reader.position);
+    }
+
+    private static Slice roundTrip(double[] lon, double[] lat, int[] intensity) {
+        Reader reader = new Reader(HeatmapBinaryCodec.encode(lon, lat, intensity, lon.length));
+        Slice slice = reader.slice();
+        assertEquals(reader.data.length, reader.position, "no trailing bytes");
+        return slice;
+    }
+
+    private static void assertQuantized(double[] expected, int[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(Math.round(expected[i] * HeatmapBinaryCodec.SCALE), actual[i], "index " + i);
+        }
+    }
+
+    private record Slice(int originLon, int originLat, int firstDeltaLon, int firstDeltaLat,
+                         int[] lon, int[] lat, int[] intensity) {
+    }
+
+    private static final class Reader {
+        final byte[] data;
+        int position;
+
+        Reader(byte[] data) {
+            this.data = data;
+        }
+
+        Slice slice() {
+            assertEquals("MFH1", magic());
+            int count = uvarint();
+            int originLon = svarint();
+            int originLat = svarint();
+            int[] lon = new int[count];
+            int[] lat = new int[count];
+            int[] intensity = new int[count];
+            List<int[]> deltas = new ArrayList<>();
+            int x = originLon;
+            int y = originLat;
+            for (int i = 0; i < count; i++) {
+                int dx = svarint();
+                int dy = svarint();
+                deltas.add(new int[]{dx, dy});
+                x += dx;
+                y += dy;
+                lon[i] = x;
+                lat[i] = y;
+                intensity[i] = uvarint();
+            }
+            return new Slice(originLon, originLat,
+                    count == 0 ? 0 : deltas.get(0)[0], count == 0 ? 0 : deltas.get(0)[1], lon, lat, intensity);
+        }
+
+        String magic() {
+            return new String(bytes(4), StandardCharsets.US_ASCII);
+        }
+
+        int u8() {
+            return data[position++] & 0xFF;
+        }
+
+        byte[] bytes(int length) {
+            byte[] result = new byte[length];
+            System.arraycopy(data, position, result, 0, length);
+            position += length;
+            return result;
+        }
+
+        int uvarint() {
+            int result = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = u8();
+                result |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+        }
+
+        int svarint() {
+            int zigzag = uvarint();
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+    }
+}
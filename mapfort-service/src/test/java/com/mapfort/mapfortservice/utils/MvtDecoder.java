@@ -0,0 +1,164 @@
+package com.mapfort.mapfortservice.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 测试用的 MVT 解码器，按 vector_tile.proto（v2.1）逐字段读取 protobuf 线格式，
+ * 与 {@link MvtEncoder} 的实现互相独立。只支持点要素，遇到未知字段或线格式直接报错。
+ */
+public final class MvtDecoder {
+
+    public record Layer(int version, String name, int extent, List<String> keys, List<Object> values,
+                        List<Feature> features) {
+    }
+
+    /** geometry 已还原为绝对坐标，properties 按 tags 解析为键值 */
+    public record Feature(int type, List<int[]> points, Map<String, Object> properties) {
+    }
+
+    private final byte[] data;
+    private int position;
+    private final int end;
+
+    private MvtDecoder(byte[] data, int position, int end) {
+        this.data = data;
+        this.position = position;
+        this.end = end;
+    }
+
+    public static List<Layer> decode(byte[] tile) {
+        MvtDecoder reader = new MvtDecoder(tile, 0, tile.length);
+        List<Layer> layers = new ArrayList<>();
+        while (reader.position < reader.end) {
+            int key = (int) reader.varint();
+            expect(key, 3, 2);
+            layers.add(reader.message().layer());
+        }
+        return layers;
+    }
+
+    private Layer layer() {
+        int version = 1;
+        String name = null;
+        int extent = 4096;
+        List<String> keys = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        List<MvtDecoder> rawFeatures = new ArrayList<>();
+        while (position < end) {
+            int key = (int) varint();
+            switch (key >>> 3) {
+                case 15 -> { expect(key, 15, 0); version = (int) varint(); }
+                case 1 -> { expect(key, 1, 2); name = string(); }
+                case 2 -> { expect(key, 2, 2); rawFeatures.add(message()); }
+                case 3 -> { expect(key, 3, 2); keys.add(string()); }
+                case 4 -> { expect(key, 4, 2); values.add(message().value()); }
+                case 5 -> { expect(key, 5, 0); extent = (int) varint(); }
+                default -> throw new IllegalStateException("unexpected layer field " + (key >>> 3));
+            }
+        }
+        List<Feature> features = new ArrayList<>();
+        for (MvtDecoder raw : rawFeatures) {
+            features.add(raw.feature(keys, values));
+        }
+        return new Layer(version, name, extent, keys, values, features);
+    }
+
+    private Object value() {
+        Object value = null;
+        while (position < end) {
+            int key = (int) varint();
+            switch (key >>> 3) {
+                case 1 -> { expect(key, 1, 2); value = string(); }
+                case 4 -> { expect(key, 4, 0); value = varint(); }
+                case 5 -> { expect(key, 5, 0); value = varint(); }
+                case 6 -> { expect(key, 6, 0); long z = varint(); value = (z >>> 1) ^ -(z & 1); }
+                default -> throw new IllegalStateException("unexpected value field " + (key >>> 3));
+            }
+        }
+        return value;
+    }
+
+    private Feature feature(List<String> keys, List<Object> values) {
+        int type = 0;
+        List<Long> tags = new ArrayList<>();
+        List<Long> geometry = new ArrayList<>();
+        while (position < end) {
+            int key = (int) varint();
+            switch (key >>> 3) {
+                case 2 -> { expect(key, 2, 2); message().packed(tags); }
+                case 3 -> { expect(key, 3, 0); type = (int) varint(); }
+                case 4 -> { expect(key, 4, 2); message().packed(geometry); }
+                default -> throw new IllegalStateException("unexpected feature field " + (key >>> 3));
+            }
+        }
+        Map<String, Object> properties = new LinkedHashMap<>();
+        for (int i = 0; i < tags.size(); i += 2) {
+            properties.put(keys.get(tags.get(i).intValue()), values.get(tags.get(i + 1).intValue()));
+        }
+        // 命令整数：低 3 位为命令（1 = MoveTo），其余为重复次数；参数为相对游标的 zigzag 增量
+        List<int[]> points = new ArrayList<>();
+        int x = 0;
+        int y = 0;
+        int i = 0;
+        while (i < geometry.size()) {
+            long command = geometry.get(i++);
+            if ((command & 0x7) != 1) {
+                throw new IllegalStateException("only MoveTo is expected for points: " + command);
+            }
+            for (long c = command >>> 3; c > 0; c--) {
+                x += zigzag(geometry.get(i++));
+                y += zigzag(geometry.get(i++));
+                points.add(new int[]{x, y});
+            }
+        }
+        return new Feature(type, points, properties);
+    }
+
+    private void packed(List<Long> into) {
+        while (position < end) {
+            into.add(varint());
+        }
+    }
+
+    private MvtDecoder message() {
+        int length = (int) varint();
+        MvtDecoder sub = new MvtDecoder(data, position, position + length);
+        position += length;
+        return sub;
+    }
+
+    private String string() {
+        int length = (int) varint();
+        String s = new String(data, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return s;
+    }
+
+    private long varint() {
+        long result = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (position >= end) {
+                throw new IllegalStateException("truncated varint");
+            }
+            int b = data[position++] & 0xFF;
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+    }
+
+    private static int zigzag(long value) {
+        return (int) ((value >>> 1) ^ -(value & 1));
+    }
+
+    private static void expect(int key, int field, int wireType) {
+        if (key != (field << 3 | wireType)) {
+            throw new IllegalStateException("field " + field + " expected wire type " + wireType + ", got key " + key);
+        }
+    }
+}
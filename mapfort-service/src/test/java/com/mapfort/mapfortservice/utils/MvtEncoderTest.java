@@ -0,0 +1,118 @@
+package com.mapfort.mapfortservice.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 单点瓦片逐字节核对 protobuf 编码；多点瓦片用独立的 {@link MvtDecoder} 解码核对；
+ * 另核对 Web Mercator 像素坐标（extent）换算在瓦片边界上的取值。
+ */
+class MvtEncoderTest {
+
+    private static final int MAX_ZOOM = 22;
+
+    /** 手工按 vector_tile.proto 拼出的字节：layer{version=2, name="t", feature{tags=[0,0], type=POINT, geometry=[MoveTo(1), 1, 2]}, keys=["a"], values=[{int_value=5}], extent=4096} */
+    @Test
+    void onePointTileBytes() {
+        byte[] tile = MvtEncoder.encodeTile(new MvtEncoder.PointLayer("t", 4096).point(1, 2).tag("a", 5));
+        byte[] expected = {
+                0x1A, 28,                                   // Tile.layers，长度 28
+                0x78, 0x02,                                 // version = 2
+                0x0A, 0x01, 't',                            // name
+                0x12, 11,                                   // features，长度 11
+                0x12, 0x02, 0x00, 0x00,                     //   tags（packed）
+                0x18, 0x01,                                 //   type = POINT
+                0x22, 0x03, 0x09, 0x02, 0x04,               //   geometry：MoveTo(1)、zigzag(1)、zigzag(2)
+                0x1A, 0x01, 'a',                            // keys
+                0x22, 0x02, 0x20, 0x05,                     // values：int_value = 5
+                0x28, (byte) 0x80, 0x20                     // extent = 4096
+        };
+        assertArrayEquals(expected, tile);
+    }
+
+    @Test
+    void manyPointTileDecodes() {
+        int n = 5000;
+        MvtEncoder.PointLayer layer = new MvtEncoder.PointLayer("hot_grids", 4096);
+        for (int i = 0; i < n; i++) {
+            // 含缓冲区内的负坐标与超出 extent 的坐标
+            layer.point(i % 4224 - 64, 4159 - i % 4224)
+                    .tag("pickup_count", i % 300)
+                    .tag("heat_level", i % 3 == 0 ? "高" : i % 3 == 1 ? "中" : null);
+        }
+        List<MvtDecoder.Layer> layers = MvtDecoder.decode(MvtEncoder.encodeTile(layer));
+        assertEquals(1, layers.size());
+        MvtDecoder.Layer decoded = layers.get(0);
+        assertEquals(2, decoded.version());
+        assertEquals("hot_grids", decoded.name());
+        assertEquals(4096, decoded.extent());
+        // 键、值去重编号：2 个键，300 个计数值加 2 个等级
+        assertEquals(List.of("pickup_count", "heat_level"), decoded.keys());
+        assertEquals(302, decoded.values().size());
+        assertEquals(n, decoded.features().size());
+        for (int i = 0; i < n; i++) {
+            MvtDecoder.Feature feature = decoded.features().get(i);
+            assertEquals(1, feature.type());
+            assertEquals(1, feature.points().size());
+            assertArrayEquals(new int[]{i % 4224 - 64, 4159 - i % 4224}, feature.points().get(0));
+            Map<String, Object> properties = feature.properties();
+            assertEquals((long) (i % 300), properties.get("pickup_count"));
+            assertEquals(i % 3 == 0 ? "高" : i % 3 == 1 ? "中" : null, properties.get("heat_level"));
+            assertEquals(i % 3 == 2 ? 1 : 2, properties.size());
+        }
+    }
+
+    @Test
+    void emptyLayerKeepsHeader() {
+        MvtDecoder.Layer layer = MvtDecoder.decode(MvtEncoder.encodeTile(new MvtEncoder.PointLayer("empty", 512))).get(0);
+        assertEquals("empty", layer.name());
+        assertEquals(512, layer.extent());
+        assertTrue(layer.features().isEmpty());
+    }
+
+    /** z = 0 时整张世界地图为一张瓦片：经度 -180 / 0 / 180 对应 0 / extent/2 / extent，赤道在正中 */
+    @Test
+    void worldTileExtent() {
+        assertEquals(0, MvtEncoder.tileX(-180, 0, 0, 4096));
+        assertEquals(2048, MvtEncoder.tileX(0, 0, 0, 4096));
+        assertEquals(4096, MvtEncoder.tileX(180, 0, 0, 4096));
+        assertEquals(2048, MvtEncoder.tileY(0, 0, 0, 4096));
+        assertEquals(0, MvtEncoder.tileY(0, 1, 1, 4096));
+        assertEquals(85.0511287798, MvtEncoder.tileLat(0, 0), 1e-9);
+        assertEquals(-85.0511287798, MvtEncoder.tileLat(1, 0), 1e-9);
+    }
+
+    /**
+     * 哈尔滨附近各级瓦片：西边界映射为 0、东边界为 extent（属于右侧瓦片），相邻瓦片的坐标相差 extent；
+     * 纬度经 log/atan 往返存在浮点误差，上下边界允许 1 像素偏差。
+     */
+    @Test
+    void tileEdgesMapToZeroAndExtent() {
+        int extent = 4096;
+        for (int z = 1; z <= MAX_ZOOM; z++) {
+            int n = 1 << z;
+            int x = (int) ((126.6 + 180) / 360 * n);
+            double rad = Math.toRadians(45.75);
+            int y = (int) ((1 - Math.log(Math.tan(rad) + 1 / Math.cos(rad)) / Math.PI) / 2 * n);
+
+            assertEquals(0, MvtEncoder.tileX(MvtEncoder.tileLon(x, z), z, x, extent), "z " + z);
+            assertEquals(extent, MvtEncoder.tileX(MvtEncoder.tileLon(x + 1, z), z, x, extent), "z " + z);
+            assertEquals(0, MvtEncoder.tileY(MvtEncoder.tileLat(y, z), z, y, extent), 1, "z " + z);
+            assertEquals(extent, MvtEncoder.tileY(MvtEncoder.tileLat(y + 1, z), z, y, extent), 1, "z " + z);
+
+            double lon = (MvtEncoder.tileLon(x, z) + MvtEncoder.tileLon(x + 1, z)) / 2;
+            double lat = (MvtEncoder.tileLat(y, z) + MvtEncoder.tileLat(y + 1, z)) / 2;
+            int px = MvtEncoder.tileX(lon, z, x, extent);
+            int py = MvtEncoder.tileY(lat, z, y, extent);
+            assertTrue(px >= 0 && px < extent && py >= 0 && py < extent, "z " + z);
+            assertEquals(px - extent, MvtEncoder.tileX(lon, z, x + 1, extent), 1, "z " + z);
+            assertEquals(py + extent, MvtEncoder.tileY(lat, z, y - 1, extent), 1, "z " + z);
+        }
+    }
+}
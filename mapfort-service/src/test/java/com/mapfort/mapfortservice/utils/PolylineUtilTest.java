@@ -0,0 +1,178 @@
+package com.mapfort.mapfortservice.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Encoded Polyline 对照 Google 文档中的参考向量并往返解码；Douglas-Peucker 在各缩放级别的容差下
+ * 检查保留点、抽掉点的偏差上限，以及容差越小保留点越多（包含关系）。
+ */
+class PolylineUtilTest {
+
+    /** 与 mapfort.popular-roads.geometry.zoom-levels 的默认值一致 */
+    private static final int[] ZOOMS = {10, 12, 14, 16};
+
+    @Test
+    void encodesGoogleReferenceVector() {
+        double[] lat = {38.5, 40.7, 43.252};
+        double[] lon = {-120.2, -120.95, -126.453};
+        assertEquals("_p~iF~ps|U_ulLnnqC_mqNvxq`@", PolylineUtil.encode(lon, lat, new int[]{0, 1, 2}));
+        // 只编码选中的下标，差分基于上一个被编码的点
+        assertEquals("_p~iF~ps|U_c_\\fhde@", PolylineUtil.encode(lon, lat, new int[]{0, 2}));
+        assertEquals("", PolylineUtil.encode(lon, lat, new int[0]));
+        assertEquals("??", PolylineUtil.encode(new double[]{0}, new double[]{0}, new int[]{0}));
+    }
+
+    @Test
+    void encodedPolylineRoundTrips() {
+        SplittableRandom random = new SplittableRandom(9);
+        int n = 1000;
+        double[] lon = new double[n];
+        double[] lat = new double[n];
+        int[] indices = new int[n];
+        for (int i = 0; i < n; i++) {
+            // 全球范围的大跨度与哈尔滨附近的小步长交替
+            lon[i] = i % 2 == 0 ? random.nextDouble(-180, 180) : 126.6 + random.nextDouble(-0.01, 0.01);
+            lat[i] = i % 2 == 0 ? random.nextDouble(-85, 85) : 45.75 + random.nextDouble(-0.01, 0.01);
+            indices[i] = i;
+        }
+        double[][] decoded = decode(PolylineUtil.encode(lon, lat, indices));
+        assertEquals(n, decoded[0].length);
+        for (int i = 0; i < n; i++) {
+            assertEquals(Math.round(lon[i] * PolylineUtil.SCALE), Math.round(decoded[0][i] * PolylineUtil.SCALE));
+            assertEquals(Math.round(lat[i] * PolylineUtil.SCALE), Math.round(decoded[1][i] * PolylineUtil.SCALE));
+        }
+    }
+
+    @Test
+    void toleranceIsOnePixelAtEachZoom() {
+        // 360° / (256 px * 2^zoom)
+        assertEquals(360d / 262_144, PolylineUtil.tolerance(10, 1));
+        assertEquals(360d / 1_048_576, PolylineUtil.tolerance(12, 1));
+        assertEquals(360d / 4_194_304, PolylineUtil.tolerance(14, 1));
+        assertEquals(360d / 16_777_216, PolylineUtil.tolerance(16, 1));
+        assertEquals(2 * PolylineUtil.tolerance(16, 1), PolylineUtil.tolerance(15, 1));
+        assertEquals(3 * PolylineUtil.tolerance(14, 1), PolylineUtil.tolerance(14, 3));
+    }
+
+    @Test
+    void bumpIsKeptOnlyWhereItExceedsTheTolerance() {
+        // 纬度方向 2 个 z12 像素的凸起：z10 下只有半个像素，被抽掉；z12 及以上保留
+        double bump = 2 * PolylineUtil.tolerance(12, 1);
+        double[] lon = {126.60, 126.64, 126.68};
+        double[] lat = {45.75, 45.75 + bump, 45.75};
+        assertArrayEquals(new int[]{0, 2}, PolylineUtil.simplify(lon, lat, 0, 3, PolylineUtil.tolerance(10, 1)));
+        for (int zoom : new int[]{12, 14, 16}) {
+            assertArrayEquals(new int[]{0, 1, 2}, PolylineUtil.simplify(lon, lat, 0, 3, PolylineUtil.tolerance(zoom, 1)),
+                    "z" + zoom);
+        }
+    }
+
+    @Test
+    void longitudeOffsetsAreScaledByLatitude() {
+        // 南北向直线上经度偏 1.2 倍容差，按 cos(45.75°) ≈ 0.70 缩放后不足容差
+        double tolerance = PolylineUtil.tolerance(14, 1);
+        double[] lon = {126.6, 126.6 + 1.2 * tolerance, 126.6};
+        double[] lat = {45.70, 45.75, 45.80};
+        assertArrayEquals(new int[]{0, 2}, PolylineUtil.simplify(lon, lat, 0, 3, tolerance));
+        // 东西向直线上纬度偏同样多则保留
+        assertArrayEquals(new int[]{0, 1, 2}, PolylineUtil.simplify(
+                new double[]{126.55, 126.60, 126.65}, new double[]{45.75, 45.75 + 1.2 * tolerance, 45.75}, 0, 3, tolerance));
+    }
+
+    @Test
+    void shortAndCollinearRanges() {
+        double[] lon = {1, 2, 3, 4, 5, 6};
+        double[] lat = {1, 1, 1, 1, 1, 1};
+        assertArrayEquals(new int[0], PolylineUtil.simplify(lon, lat, 2, 2, 0));
+        assertArrayEquals(new int[]{3}, PolylineUtil.simplify(lon, lat, 3, 4, 0));
+        assertArrayEquals(new int[]{3, 4}, PolylineUtil.simplify(lon, lat, 3, 5, 0));
+        // 共线点在容差 0 下也会抽掉（偏差 0 不大于容差）
+        assertArrayEquals(new int[]{1, 5}, PolylineUtil.simplify(lon, lat, 1, 6, 0));
+    }
+
+    @Test
+    void randomWalkStaysWithinToleranceAtEachZoom() {
+        SplittableRandom random = new SplittableRandom(13);
+        int n = 2000, from = 100, to = 1900;
+        double[] lon = new double[n];
+        double[] lat = new double[n];
+        lon[0] = 126.6;
+        lat[0] = 45.75;
+        for (int i = 1; i < n; i++) {
+            lon[i] = lon[i - 1] + random.nextDouble(-1e-4, 3e-4);
+            lat[i] = lat[i - 1] + random.nextDouble(-2e-4, 2e-4);
+        }
+        double cosLat = Math.cos(Math.toRadians(lat[from]));
+
+        boolean[] coarser = null;
+        for (int zoom : ZOOMS) {
+            double tolerance = PolylineUtil.tolerance(zoom, 1);
+            int[] kept = PolylineUtil.simplify(lon, lat, from, to, tolerance);
+            assertEquals(from, kept[0]);
+            assertEquals(to - 1, kept[kept.length - 1]);
+            boolean[] keep = new boolean[n];
+            for (int k = 0; k < kept.length; k++) {
+                keep[kept[k]] = true;
+                if (k > 0) {
+                    assertTrue(kept[k] > kept[k - 1], "indices ascend");
+                    // 抽掉的点到所在简化线段的距离不超过容差
+                    for (int i = kept[k - 1] + 1; i < kept[k]; i++) {
+                        double d = distance(lon, lat, i, kept[k - 1], kept[k], cosLat);
+                        assertTrue(d <= tolerance, "z" + zoom + " point " + i + " off by " + d);
+                    }
+                }
+            }
+            // 级别越高（容差越小），保留点集合包含低级别的保留点
+            if (coarser != null) {
+                for (int i = 0; i < n; i++) {
+                    assertTrue(!coarser[i] || keep[i], "z" + zoom + " dropped " + i);
+                }
+            }
+            coarser = keep;
+        }
+    }
+
+    private static double distance(double[] lon, double[] lat, int p, int a, int b, double cosLat) {
+        double ax = lon[a] * cosLat, ay = lat[a];
+        double dx = lon[b] * cosLat - ax, dy = lat[b] - ay;
+        double px = lon[p] * cosLat, py = lat[p];
+        double t = Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / (dx * dx + dy * dy)));
+        return Math.hypot(ax + t * dx - px, ay + t * dy - py);
+    }
+
+    /** 按 Google 文档解码，返回 {lon[], lat[]} */
+    private static double[][] decode(String encoded) {
+        double[] lon = new double[encoded.length()];
+        double[] lat = new double[encoded.length()];
+        int n = 0;
+        long y = 0, x = 0;
+        int[] pos = {0};
+        while (pos[0] < encoded.length()) {
+            y += readSigned(encoded, pos);
+            x += readSigned(encoded, pos);
+            lat[n] = y / PolylineUtil.SCALE;
+            lon[n] = x / PolylineUtil.SCALE;
+            n++;
+        }
+        return new double[][]{Arrays.copyOf(lon, n), Arrays.copyOf(lat, n)};
+    }
+
+    private static long readSigned(String encoded, int[] pos) {
+        long result = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = encoded.charAt(pos[0]++) - 63;
+            result |= (long) (b & 0x1f) << shift;
+            shift += 5;
+        } while (b >= 0x20);
+        return (result & 1) != 0 ? ~(result >> 1) : result >> 1;
+    }
+}
@@ -0,0 +1,102 @@
+package com.mapfort.mapfortservice.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** 矩形查询与逐点过滤结果一致；坐标缺失形成的 (0, 0) 离群点不会把网格撑大 */
+class UniformGridIndexTest {
+
+    private static final double CELL = 0.01;
+
+    @Test
+    void outliersDoNotStretchTheGrid() {
+        int n = 20_000;
+        double[] lon = new double[n];
+        double[] lat = new double[n];
+        fillHarbin(lon, lat, new SplittableRandom(1));
+        // 坐标缺失被写成 (0, 0) 的点，以及一个远在南半球的点
+        for (int i = 0; i < 50; i++) {
+            lon[i * 7] = 0;
+            lat[i * 7] = 0;
+        }
+        lon[3] = -70;
+        lat[3] = -40;
+
+        UniformGridIndex index = new UniformGridIndex(lon, lat, n, CELL);
+        assertEquals(CELL, index.cellSize());
+        assertQueriesMatchScan(index, lon, lat, n);
+    }
+
+    @Test
+    void smallAndEmptyInputs() {
+        UniformGridIndex empty = new UniformGridIndex(new double[0], new double[0], 0, CELL);
+        assertEquals(0, empty.query(-180, -90, 180, 90).length);
+
+        double[] lon = {126.6, 0, 126.7};
+        double[] lat = {45.7, 0, 45.8};
+        UniformGridIndex small = new UniformGridIndex(lon, lat, 3, CELL);
+        assertArrayEquals(new int[]{1}, small.query(-1, -1, 1, 1));
+        assertQueriesMatchScan(small, lon, lat, 3);
+    }
+
+    @Test
+    void queriesMatchScanWithoutOutliers() {
+        int n = 5_000;
+        double[] lon = new double[n];
+        double[] lat = new double[n];
+        fillHarbin(lon, lat, new SplittableRandom(2));
+        assertQueriesMatchScan(new UniformGridIndex(lon, lat, n, CELL), lon, lat, n);
+    }
+
+    private static void fillHarbin(double[] lon, double[] lat, SplittableRandom random) {
+        for (int i = 0; i < lon.length; i++) {
+            lon[i] = random.nextDouble(126.4, 126.9);
+            lat[i] = random.nextDouble(45.5, 45.95);
+        }
+    }
+
+    /** 各种矩形（含整体在网格外、覆盖离群点、横跨网格边界）下，查询结果与逐点扫描一致，候选遍历不漏点 */
+    private static void assertQueriesMatchScan(UniformGridIndex index, double[] lon, double[] lat, int n) {
+        SplittableRandom random = new SplittableRandom(3);
+        List<double[]> rects = new ArrayList<>(List.of(
+                new double[]{-180, -90, 180, 90},
+                new double[]{-1, -1, 1, 1},
+                new double[]{-71, -41, -69, -39},
+                new double[]{126.39, 45.49, 126.41, 45.51},
+                new double[]{126.89, 45.94, 127.5, 46.5},
+                new double[]{10, 10, 20, 20}));
+        for (int i = 0; i < 200; i++) {
+            double x = random.nextDouble(126.3, 127.0);
+            double y = random.nextDouble(45.4, 46.0);
+            double w = random.nextDouble(0, 0.1);
+            rects.add(new double[]{x, y, x + w, y + w});
+        }
+        for (double[] r : rects) {
+            int[] expected = scan(lon, lat, n, r);
+            int[] actual = index.query(r[0], r[1], r[2], r[3]);
+            Arrays.sort(actual);
+            assertArrayEquals(expected, actual, Arrays.toString(r));
+
+            boolean[] seen = new boolean[n];
+            index.forEachCandidate(r[0], r[1], r[2], r[3], i -> seen[i] = true);
+            for (int i : expected) {
+                assertTrue(seen[i], "candidate " + i + " in " + Arrays.toString(r));
+            }
+        }
+    }
+
+    private static int[] scan(double[] lon, double[] lat, int n, double[] r) {
+        return IntStream.range(0, n)
+                .filter(i -> lon[i] >= r[0] && lon[i] <= r[2] && lat[i] >= r[1] && lat[i] <= r[3])
+                .toArray();
+    }
+}